@@ -3,6 +3,7 @@ plugins {
 	id("org.springframework.boot") version "3.4.5"
 	id("io.spring.dependency-management") version "1.1.7"
 	id("org.graalvm.buildtools.native") version "0.10.6"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.cmdzen"
@@ -53,3 +54,30 @@ dependencyManagement {
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+graalvmNative {
+	binaries {
+		named("main") {
+			imageName.set("cmdzen")
+			mainClass.set("io.cmdzen.cli.CmdzenCliApplication")
+			buildArgs.addAll("--no-fallback", "-march=compatibility", "--enable-url-protocols=http,https", "-H:+AddAllCharsets")
+		}
+	}
+	metadataRepository {
+		enabled.set(true)
+	}
+}
+
+jmh {
+	jmhVersion.set("1.37")
+	benchmarkMode.set(listOf("thrpt"))
+	timeUnit.set("s")
+	fork.set(1)
+	warmupIterations.set(3)
+	iterations.set(5)
+	jvmArgs.set(listOf("-Xms4g", "-Xmx4g")) // room for the 100 MB captures and their copies
+	profilers.set(listOf("gc"))
+	resultFormat.set("JSON")
+	// ./gradlew jmh -Pjmh.includes=CaptureParsing
+	(findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+}
@@ -1,8 +1,94 @@
 #!/bin/bash
+# Builds and installs cmdzen.
+#
+# Prefers a GraalVM native binary (fast start-up, no JVM needed at run time) when
+# native-image is available; otherwise installs the Spring Boot jar with a launcher.
+#
+#   ./install.sh           native if possible, JVM otherwise
+#   ./install.sh --jvm     force the JVM install
+set -euo pipefail
 
-export JAR_FILE_PATH="build/libs/cmdzen-cli*.jar"
-echo "alias cmdzen="JAR_FILE_PATH"" >> ~/.bashrc
+cd "$(dirname "$0")"
 
-while [ $string1 == $string2 ]; do
-    
-done
\ No newline at end of file
+BIN_DIR="${CMDZEN_BIN_DIR:-$HOME/.local/bin}"
+SHARE_DIR="${CMDZEN_SHARE_DIR:-$HOME/.local/share/cmdzen}"
+MODE="auto"
+[ "${1:-}" = "--jvm" ] && MODE="jvm"
+
+mkdir -p "$BIN_DIR" "$SHARE_DIR"
+
+have_native_image() {
+    command -v native-image >/dev/null 2>&1 ||
+        { [ -n "${GRAALVM_HOME:-}" ] && [ -x "$GRAALVM_HOME/bin/native-image" ]; }
+}
+
+if [ "$MODE" = "auto" ] && have_native_image; then
+    echo "Building native image..."
+    ./gradlew --quiet nativeCompile
+    install -m 0755 build/native/nativeCompile/cmdzen "$BIN_DIR/cmdzen"
+    echo "Installed native binary to $BIN_DIR/cmdzen"
+else
+    echo "native-image not found (or --jvm given); installing the JVM build..."
+    ./gradlew --quiet bootJar
+    JAR=$(ls build/libs/cmdzen-cli-*.jar | grep -v -- '-plain' | head -n 1)
+
+    # Unpack into a CDS-friendly layout (class data sharing can't map nested jars).
+    APP_DIR="$SHARE_DIR/app"
+    rm -rf "$APP_DIR"
+    java -Djarmode=tools -jar "$JAR" extract --destination "$APP_DIR" >/dev/null
+    APP_JAR="$APP_DIR/$(basename "$JAR")"
+
+    # Flags for a process that lives well under a second: C1 only, serial GC, small stacks,
+    # plus the lazy-init Spring profile. Training runs use the same flags so the archive matches.
+    JVM_OPTS="-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xss512k -Dspring.profiles.active=faststart"
+
+    # The training run takes a real solve path (rules, log scan, context probes, prompt building,
+    # the AI and HTTP clients) so the archive holds those classes too, not just the context.
+    # It asks an endpoint nobody listens on, from a throw-away home: nothing leaves the machine
+    # and none of the user's keys, cache or state are used.
+    TRAIN_DIR=$(mktemp -d)
+    trap 'rm -rf "$TRAIN_DIR"' EXIT
+    echo "src/main.c:3:5: error: use of undeclared identifier 'x'" > "$TRAIN_DIR/build.log"
+    train() {
+        (cd "$TRAIN_DIR" && env -i HOME="$TRAIN_DIR" PATH="$PATH" \
+            OPENROUTER_ENDPOINT=http://127.0.0.1:9/v1/chat/completions OPENROUTER_API_KEY=training \
+            java $JVM_OPTS "$@" -jar "$APP_JAR" solve --no-cache --log "$TRAIN_DIR/build.log") >/dev/null 2>&1 || true
+    }
+
+    JAVA_MAJOR=$(java -XshowSettings:properties -version 2>&1 | awk -F'= ' '/java.specification.version/ {print $2}')
+    if [ "${JAVA_MAJOR%%.*}" -ge 24 ] 2>/dev/null; then
+        # JDK 24+: Leyden AOT cache (classes loaded and linked ahead of time)
+        echo "Training AOT cache..."
+        train -XX:AOTMode=record -XX:AOTConfiguration="$SHARE_DIR/cmdzen.aotconf"
+        java $JVM_OPTS -XX:AOTMode=create -XX:AOTConfiguration="$SHARE_DIR/cmdzen.aotconf" \
+             -XX:AOTCache="$SHARE_DIR/cmdzen.aot" -jar "$APP_JAR" >/dev/null
+        CACHE_OPTS="-XX:AOTCache=$SHARE_DIR/cmdzen.aot"
+    else
+        # Older JDKs: dynamic AppCDS archive of the classes the training run loaded
+        echo "Training AppCDS archive..."
+        train -XX:ArchiveClassesAtExit="$SHARE_DIR/cmdzen.jsa"
+        CACHE_OPTS="-XX:SharedArchiveFile=$SHARE_DIR/cmdzen.jsa"
+    fi
+
+    cat > "$BIN_DIR/cmdzen" <<LAUNCHER
+#!/bin/sh
+exec java $JVM_OPTS $CACHE_OPTS -jar "$APP_JAR" "\$@"
+LAUNCHER
+    chmod 0755 "$BIN_DIR/cmdzen"
+    echo "Installed JVM launcher to $BIN_DIR/cmdzen"
+fi
+
+# 'cmdzen alias' rewrites the line that references $CMDZEN_PATH, so keep that shape.
+case "$(basename "${SHELL:-bash}")" in
+    zsh) RC="$HOME/.zshrc" ;;
+    ksh) RC="$HOME/.kshrc" ;;
+    *)   RC="$HOME/.bashrc" ;;
+esac
+if ! grep -q 'CMDZEN_PATH=' "$RC" 2>/dev/null; then
+    {
+        echo ""
+        echo "export CMDZEN_PATH=\"$BIN_DIR/cmdzen\""
+        echo "alias cmdzen=\"\$CMDZEN_PATH\""
+    } >> "$RC"
+    echo "Added cmdzen to $RC; run 'source $RC' or open a new terminal."
+fi
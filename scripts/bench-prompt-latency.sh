@@ -0,0 +1,65 @@
+#!/bin/bash
+# Time the work the shell hooks do at the prompt after a failed command, as the session
+# log grows. "grep" is the previous design (find the last start marker by scanning the
+# whole log); "offset" copies from the byte offset recorded when the command started.
+#
+#   scripts/bench-prompt-latency.sh [sizes in MB...]   (default: 1 16 128 512)
+set -euo pipefail
+
+SIZES=("${@:-1 16 128 512}")
+RUNS=${RUNS:-9}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+LOG="$WORK/session.log"
+OUT="$WORK/last_output.txt"
+
+now_ms() { date +%s%3N; }
+log_size() { stat -c %s "$1" 2>/dev/null || stat -f %z "$1"; }
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+fill_log() {
+    local target=$(($1 * 1024 * 1024))
+    : > "$LOG"
+    local chunk="$WORK/chunk"
+    for i in $(seq 1 2000); do
+        echo "[INFO] Compiling module $i with 42 warnings at /home/dev/src/module/$i"
+    done > "$chunk"
+    while [ "$(log_size "$LOG")" -lt "$target" ]; do
+        echo "__CMDZEN_CMD_START__ $(date +%s)" >> "$LOG"
+        cat "$chunk" >> "$LOG"
+    done
+    # the failed command: a marker, its offset, and a little output
+    OFFSET=$(log_size "$LOG")
+    echo "__CMDZEN_CMD_START__ $(date +%s)" >> "$LOG"
+    printf 'error: something broke\n%.0s' $(seq 1 50) >> "$LOG"
+}
+
+extract_grep() {
+    local last_line
+    last_line=$(grep -n "__CMDZEN_CMD_START__" "$LOG" 2>/dev/null | tail -n 1 | cut -d: -f1)
+    tail -n +"$last_line" "$LOG" > "$OUT"
+}
+
+extract_offset() {
+    log_size "$LOG" > /dev/null # what cmdzen_mark does at command start
+    tail -c +$((OFFSET + 1)) "$LOG" > "$OUT"
+}
+
+measure() {
+    for _ in $(seq "$RUNS"); do
+        local start end
+        start=$(now_ms)
+        "$1"
+        end=$(now_ms)
+        echo $((end - start))
+    done | median
+}
+
+printf '%10s %10s %10s\n' "log MB" "grep ms" "offset ms"
+for size in ${SIZES[*]}; do
+    fill_log "$size"
+    printf '%10s %10s %10s\n' "$size" "$(measure extract_grep)" "$(measure extract_offset)"
+done
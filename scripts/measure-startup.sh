@@ -0,0 +1,52 @@
+#!/bin/bash
+# Wall-clock time per cmdzen command, before and after the start-up optimizations.
+#
+#   scripts/measure-startup.sh [runs]
+#
+# "baseline" is a plain 'java -jar' of the Boot jar; "fast" is the launcher written by
+# install.sh (lazy beans, C1-only JIT, serial GC, AppCDS/AOT cache). Prints the median and
+# p90 in milliseconds for each command.
+#
+# 'solve' scans a one-line build log and asks an endpoint nobody listens on, with its own state
+# directory and no circuit breaker: it covers the rules, prompt and AI/HTTP client start-up
+# without network time, and leaves the user's cache, metrics and provider health alone.
+set -euo pipefail
+unset CMDZEN_DAEMON
+
+RUNS="${1:-15}"
+JAR=$(ls build/libs/cmdzen-cli-*.jar 2>/dev/null | grep -v -- '-plain' | head -n 1 || true)
+FAST="${CMDZEN_PATH:-$HOME/.local/bin/cmdzen}"
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+echo "src/main.c:3:5: error: use of undeclared identifier 'x'" > "$WORK/build.log"
+COMMANDS=("version" "help" "integration-status" "last-failed" "solve --no-cache --log $WORK/build.log")
+SOLVE_ENV=(env -u OCEAN_AGENT_URL -u CMDZEN_LOCAL_AI_URL XDG_STATE_HOME="$WORK" XDG_CACHE_HOME="$WORK"
+    OPENROUTER_ENDPOINT=http://127.0.0.1:9/v1/chat/completions OPENROUTER_API_KEY=measure
+    CMDZEN_AI_CIRCUIT_ENABLED=false)
+
+[ -n "$JAR" ] || { echo "Build the jar first: ./gradlew bootJar" >&2; exit 1; }
+[ -x "$FAST" ] || { echo "Run ./install.sh --jvm first" >&2; exit 1; }
+
+now_ms() { date +%s%3N; }
+
+measure() {
+    local samples=()
+    for _ in $(seq "$RUNS"); do
+        local start end
+        start=$(now_ms)
+        "$@" >/dev/null 2>&1 || true
+        end=$(now_ms)
+        samples+=($((end - start)))
+    done
+    printf '%s\n' "${samples[@]}" | sort -n | awk '
+        { v[NR] = $1 }
+        END { printf "%6d %6d", v[int((NR + 1) / 2)], v[int(NR * 0.9 + 0.5)] }'
+}
+
+printf '%-20s %-10s %6s %6s\n' "command" "variant" "p50" "p90"
+for cmd in "${COMMANDS[@]}"; do
+    prefix=()
+    [[ $cmd == solve* ]] && prefix=("${SOLVE_ENV[@]}")
+    printf '%-20s %-10s %s\n' "${cmd%% *}" "baseline" "$(measure ${prefix[@]+"${prefix[@]}"} java -jar "$JAR" $cmd)"
+    printf '%-20s %-10s %s\n' "${cmd%% *}" "fast" "$(measure ${prefix[@]+"${prefix[@]}"} "$FAST" $cmd)"
+done
@@ -0,0 +1,96 @@
+package io.cmdzen.cli.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic, realistic-looking inputs for the benchmarks: build logs with progress
+ * lines, warnings, a stack trace and the capture trailer the shell hooks append, plus
+ * shell histories.
+ */
+public final class Fixtures {
+
+    private static final String[] BUILD_LINES = {
+            "[INFO] Compiling %d source files to /home/dev/project/module-%d/target/classes",
+            "Downloading https://repo.maven.apache.org/maven2/org/example/lib/%d.%d/lib.jar",
+            "  %d%% [=====================>          ] %d kB/s",
+            "npm WARN deprecated package@%d.%d.0: this version is no longer supported",
+            "2025-03-14T10:%02d:%02d.123Z DEBUG worker-%d processing batch",
+            "warning: unused variable `tmp_%d` at src/lib.rs:%d",
+            "    at com.example.service.Handler.process(Handler.java:%d) ~[app.jar:%d.0]",
+            "error[E0308]: mismatched types at src/main.rs:%d:%d",
+            "Caused by: java.net.ConnectException: Connection refused (port %d, attempt %d)",
+    };
+
+    private Fixtures() {
+    }
+
+    /**
+     * A captured failure of roughly {@code bytes} characters, in the format written by the
+     * shell integration: start marker, output, then EXIT_CODE / COMMAND / TIMESTAMP.
+     */
+    public static String capture(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes + 256);
+        sb.append("__CMDZEN_CMD_START__ 1710410000\n");
+        sb.append(output(bytes));
+        sb.append("EXIT_CODE: 1\n");
+        sb.append("COMMAND: ./gradlew build --stacktrace\n");
+        sb.append("TIMESTAMP: Thu Mar 14 10:15:42 UTC 2025\n");
+        return sb.toString();
+    }
+
+    public static String output(int bytes) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(bytes + 256);
+        while (sb.length() < bytes) {
+            String template = BUILD_LINES[random.nextInt(BUILD_LINES.length)];
+            sb.append(String.format(template, random.nextInt(60), random.nextInt(60), random.nextInt(5000)));
+            sb.append('\n');
+            if (random.nextInt(200) == 0) {
+                // bursts of identical progress lines, as produced by download bars
+                String repeated = String.format(BUILD_LINES[2], 99, 1200);
+                for (int i = 0; i < 20; i++) sb.append(repeated).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * An AI answer of roughly {@code bytes} characters with a reasoning block up front, as
+     * returned by reasoning models.
+     */
+    public static String answerWithThinking(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes + 64);
+        sb.append("<think>");
+        while (sb.length() < bytes / 2) sb.append("The user ran a build that failed, let me consider the cause. ");
+        sb.append("</think>\n\n");
+        while (sb.length() < bytes) sb.append("Run `./gradlew --refresh-dependencies build` to fix the cache.\n");
+        return sb.toString();
+    }
+
+    /**
+     * A bash history of {@code entries} lines whose last few entries are cmdzen invocations,
+     * so a backward scan has to skip them.
+     */
+    public static List<String> history(int entries) {
+        Random random = new Random(7);
+        String[] commands = {"git status", "ls -la", "cd src", "./gradlew build", "docker compose up -d",
+                "kubectl get pods -n staging", "vim README.md", "grep -rn TODO src", "npm test", "make -j8"};
+        List<String> history = new ArrayList<>(entries);
+        for (int i = 0; i < entries - 3; i++) {
+            history.add(commands[random.nextInt(commands.length)] + (random.nextBoolean() ? "" : " # " + i));
+        }
+        history.add("cmdzen last-failed");
+        history.add("cmdzen solve");
+        history.add("");
+        return history;
+    }
+
+    public static int parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        if (s.endsWith("MB")) return Integer.parseInt(s.substring(0, s.length() - 2)) * 1024 * 1024;
+        if (s.endsWith("KB")) return Integer.parseInt(s.substring(0, s.length() - 2)) * 1024;
+        return Integer.parseInt(s);
+    }
+}
@@ -0,0 +1,73 @@
+package io.cmdzen.cli.commands;
+
+import io.cmdzen.cli.bench.Fixtures;
+import io.cmdzen.cli.config.AIConfig;
+import io.cmdzen.cli.config.PromptConfig;
+import io.cmdzen.cli.model.CapturedRun;
+import io.cmdzen.cli.model.CompactedOutput;
+import io.cmdzen.cli.model.OutputWindow;
+import io.cmdzen.cli.services.PromptCompactor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Paths that read a capture file: parsing its trailer, loading the output, rendering
+ * {@code last-failed} and compacting the output into the prompt.
+ */
+@State(Scope.Benchmark)
+public class CaptureParsingBenchmark {
+
+    @Param({"1KB", "64KB", "1MB", "16MB", "100MB"})
+    public String size;
+
+    private Path captureFile;
+    private String output;
+    private PromptCompactor compactor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        captureFile = Files.createTempFile("cmdzen-bench-capture", ".txt");
+        Files.writeString(captureFile, Fixtures.capture(Fixtures.parseSize(size)));
+        output = CapturedRun.read(captureFile).getOutput();
+        compactor = new PromptCompactor(new PromptConfig(), new AIConfig());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(captureFile);
+    }
+
+    @Benchmark
+    public int readTrailer() throws IOException {
+        return CapturedRun.read(captureFile).getExitCode();
+    }
+
+    @Benchmark
+    public String readOutput() throws IOException {
+        return CapturedRun.read(captureFile).getOutput();
+    }
+
+    @Benchmark
+    public String readWindow() throws IOException {
+        return CapturedRun.read(captureFile).window(OutputWindow.DEFAULT_HEAD_BYTES, OutputWindow.DEFAULT_TAIL_BYTES).getText();
+    }
+
+    @Benchmark
+    public String lastFailedRender() throws IOException {
+        return LastFailedCommand.render(CapturedRun.read(captureFile), "./gradlew build");
+    }
+
+    @Benchmark
+    public CompactedOutput compactForPrompt() {
+        return compactor.compact(output);
+    }
+}
@@ -0,0 +1,57 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.bench.Fixtures;
+import io.cmdzen.cli.util.HistoryReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The history fallback of {@link ShellServiceImpl#getLastCommand()}: reading the whole file
+ * and scanning the list backwards, against the memory-mapped {@link HistoryReader}.
+ */
+@State(Scope.Benchmark)
+public class HistoryScanBenchmark {
+
+    @Param({"1000", "10000", "100000", "3000000"})
+    public int entries;
+
+    private Path historyFile;
+    private List<String> history;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        history = Fixtures.history(entries);
+        historyFile = Files.createTempFile("cmdzen-bench-history", ".txt");
+        Files.write(historyFile, history);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(historyFile);
+    }
+
+    @Benchmark
+    public String readAndScan() throws IOException {
+        return ShellServiceImpl.lastUserCommand(Files.readAllLines(historyFile));
+    }
+
+    @Benchmark
+    public String reverseMapped() throws IOException {
+        return HistoryReader.findLast(historyFile, HistoryReader.Format.PLAIN, ShellServiceImpl::isUserCommand);
+    }
+
+    @Benchmark
+    public String scanOnly() {
+        return ShellServiceImpl.lastUserCommand(history);
+    }
+}
@@ -0,0 +1,43 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Removal of {@code <think>} blocks from answers: the DOTALL regex used for buffered
+ * responses against the incremental {@link ThinkTagFilter} used while streaming.
+ */
+@State(Scope.Benchmark)
+public class SanitizeBenchmark {
+
+    private static final int CHUNK = 64;
+
+    @Param({"1KB", "64KB", "1MB"})
+    public String size;
+
+    private String answer;
+
+    @Setup
+    public void setUp() {
+        answer = Fixtures.answerWithThinking(Fixtures.parseSize(size));
+    }
+
+    @Benchmark
+    public String regex() {
+        return ChatCompletionsClient.sanitize(answer);
+    }
+
+    @Benchmark
+    public int streamingFilter() {
+        ThinkTagFilter filter = new ThinkTagFilter();
+        int emitted = 0;
+        for (int i = 0; i < answer.length(); i += CHUNK) {
+            emitted += filter.accept(answer.substring(i, Math.min(answer.length(), i + CHUNK))).length();
+        }
+        return emitted + filter.finish().length();
+    }
+}
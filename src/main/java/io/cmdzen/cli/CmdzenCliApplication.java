@@ -1,16 +1,26 @@
 package io.cmdzen.cli;
 
+import io.cmdzen.cli.config.CmdzenRuntimeHints;
+import io.cmdzen.cli.daemon.DaemonClient;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.shell.command.annotation.CommandScan;
 
 @SpringBootApplication
 @Log4j2
 @CommandScan
+@ImportRuntimeHints(CmdzenRuntimeHints.class)
 public class CmdzenCliApplication {
 
 	public static void main(String[] args) {
+		if (DaemonClient.shouldForward(args)) {
+			Integer exitCode = DaemonClient.run(args);
+			if (exitCode != null) {
+				System.exit(exitCode);
+			}
+		}
 		SpringApplication.run(CmdzenCliApplication.class, args);
 	}
 
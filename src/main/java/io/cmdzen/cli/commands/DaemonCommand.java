@@ -0,0 +1,35 @@
+package io.cmdzen.cli.commands;
+
+import io.cmdzen.cli.daemon.DaemonClient;
+import io.cmdzen.cli.daemon.DaemonServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+
+@Command
+@Slf4j
+public class DaemonCommand {
+
+    // the server needs the command catalog, which is built from this bean: resolve it on use
+    private final ObjectProvider<DaemonServer> daemonServer;
+
+    public DaemonCommand(ObjectProvider<DaemonServer> daemonServer) {
+        this.daemonServer = daemonServer;
+    }
+
+    @Command(command = "daemon",
+            description = "Run the resident cmdzen daemon (started automatically when CMDZEN_DAEMON=1)")
+    public String daemon(@Option(longNames = "stop", description = "Stop a running daemon") boolean stop) {
+        if (stop) {
+            return DaemonClient.stop() ? "cmdzen daemon stopped." : "No cmdzen daemon is running.";
+        }
+        try {
+            daemonServer.getObject().serve();
+            return null;
+        } catch (Exception e) {
+            log.error("Daemon failed", e);
+            return "Daemon failed: " + e.getMessage();
+        }
+    }
+}
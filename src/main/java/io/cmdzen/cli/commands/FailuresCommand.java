@@ -0,0 +1,81 @@
+package io.cmdzen.cli.commands;
+
+import io.cmdzen.cli.model.FailureRecord;
+import io.cmdzen.cli.services.FailureStore;
+import io.cmdzen.cli.services.ShellService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Command
+@Slf4j
+public class FailuresCommand {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("MMM dd HH:mm");
+
+    private final FailureStore failureStore;
+    private final ShellService shellService;
+
+    public FailuresCommand(FailureStore failureStore, ShellService shellService) {
+        this.failureStore = failureStore;
+        this.shellService = shellService;
+    }
+
+    @Command(command = "failures",
+            description = "List recent failed commands; analyze one with 'solve --id <ID>'")
+    public String failures(
+            @Option(longNames = "all", description = "Include failures from all shells, not just this one") boolean all,
+            @Option(longNames = "limit", description = "Number of failures to show", defaultValue = "20") int limit
+    ) {
+        if (!failureStore.isEnabled()) {
+            return "The failure store is disabled (cmdzen.failures.enabled=false).";
+        }
+        try {
+            long shellPid = all ? 0 : parsePid(shellService.getShellPid());
+            if (shellPid < 0) {
+                return "No failures for this shell: its pid is unknown (CMDZEN_SHELL_PID is not set).\n"
+                        + "Use --all to list the failures of every shell.";
+            }
+            List<FailureRecord> records = failureStore.recent(limit, shellPid);
+            if (records.isEmpty()) {
+                return "No failures recorded" + (all ? "" : " in this shell (try --all)") + ".\n"
+                        + "Make sure you've run 'cmdzen integrate' to enable command capture.";
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%6s  %-12s  %4s  %s%n", "ID", "WHEN", "EXIT", "COMMAND"));
+            for (FailureRecord record : records) {
+                sb.append(String.format("%6d  %-12s  %4d  %s%n", record.getId(), when(record.getTimestamp()),
+                        record.getExitCode(), record.getCommand()));
+            }
+            return sb.toString().stripTrailing();
+        } catch (Exception e) {
+            log.error("Error listing failures", e);
+            return "Error listing failures: " + e.getMessage();
+        }
+    }
+
+    private static String when(long timestamp) {
+        var time = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault());
+        return time.toLocalDate().equals(LocalDate.now()) ? time.format(TIME) : time.format(DATE_TIME);
+    }
+
+    /**
+     * The shell's pid, or -1 if it is unknown; never 0, which {@link FailureStore#recent} takes as all shells.
+     */
+    private static long parsePid(String pid) {
+        try {
+            long parsed = Long.parseLong(pid);
+            return parsed > 0 ? parsed : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.cmdzen.cli.commands;
+
+import io.cmdzen.cli.model.HistoryMatch;
+import io.cmdzen.cli.services.HistoryIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+
+import java.util.List;
+
+@Command
+@Slf4j
+public class HistoryCommand {
+
+    private final HistoryIndexService historyIndexService;
+
+    public HistoryCommand(HistoryIndexService historyIndexService) {
+        this.historyIndexService = historyIndexService;
+    }
+
+    @Command(command = "history search",
+            description = "Search your shell history, ranked by how often and how recently a command was used")
+    public String search(
+            @Option(description = "Words or word prefixes to search for", required = true) String query,
+            @Option(longNames = "limit", description = "Number of commands to show", defaultValue = "20") int limit,
+            @Option(longNames = "fuzzy", description = "Also match words with a typo or two") boolean fuzzy
+    ) {
+        try {
+            List<HistoryMatch> matches = historyIndexService.search(query, limit, fuzzy);
+            if (matches.isEmpty()) {
+                return "No matching commands in your history.";
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%5s  %8s  %s%n", "USES", "AGO", "COMMAND"));
+            for (HistoryMatch match : matches) {
+                sb.append(String.format("%5d  %8d  %s%n", match.getCount(), match.getAge(), match.getCommand()));
+            }
+            return sb.toString().stripTrailing();
+        } catch (Exception e) {
+            log.error("Error searching history", e);
+            return "Error searching history: " + e.getMessage();
+        }
+    }
+}
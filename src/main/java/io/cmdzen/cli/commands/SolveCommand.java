@@ -1,120 +1,383 @@
 package io.cmdzen.cli.commands;
 
+import io.cmdzen.cli.config.PromptConfig;
+import io.cmdzen.cli.daemon.RequestContext;
+import io.cmdzen.cli.model.CapturedRun;
+import io.cmdzen.cli.model.ChatMessage;
+import io.cmdzen.cli.model.CompactedOutput;
+import io.cmdzen.cli.model.Conversation;
+import io.cmdzen.cli.model.ErrorRule;
+import io.cmdzen.cli.model.LogDigest;
+import io.cmdzen.cli.model.OutputWindow;
+import io.cmdzen.cli.model.RerunResult;
 import io.cmdzen.cli.services.AIService;
+import io.cmdzen.cli.services.AnswerCache;
+import io.cmdzen.cli.services.BatchSolveService;
+import io.cmdzen.cli.services.CommandRunner;
+import io.cmdzen.cli.services.ContextCollector;
+import io.cmdzen.cli.services.ConversationStore;
+import io.cmdzen.cli.services.FailureStore;
+import io.cmdzen.cli.services.KnowledgeBaseService;
+import io.cmdzen.cli.services.LogSegmentExtractor;
+import io.cmdzen.cli.services.MetricsService;
+import io.cmdzen.cli.services.PromptCompactor;
 import io.cmdzen.cli.services.ShellService;
+import io.cmdzen.cli.services.SpeculationService;
+import io.cmdzen.cli.util.FailureFingerprint;
+import io.cmdzen.cli.util.FailurePrompt;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.shell.command.annotation.Command;
 import org.springframework.shell.command.annotation.Option;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Command
 @Slf4j
 public class SolveCommand {
 
+    private static final String DEFAULT_QUESTION = FailurePrompt.DEFAULT_QUESTION;
+    private static final String DEFAULT_FOLLOW_UP = "That didn't work. What should I try next?";
+
     private ShellService  shellService;
-    private AIService  aiService;
+    // resolved on first use so commands that never reach the AI don't build the HTTP stack
+    private ObjectProvider<AIService> aiService;
+    private AnswerCache answerCache;
+    private PromptCompactor promptCompactor;
+    private PromptConfig promptConfig;
+    private KnowledgeBaseService knowledgeBase;
+    private FailureStore failureStore;
+    private CommandRunner commandRunner;
+    private BatchSolveService batchSolveService;
+    private LogSegmentExtractor logSegmentExtractor;
+    private MetricsService metrics;
+    private ConversationStore conversationStore;
+    private SpeculationService speculationService;
+    private ContextCollector contextCollector;
 
-    public SolveCommand(ShellService shellService, AIService aiService) {
+    public SolveCommand(ShellService shellService, ObjectProvider<AIService> aiService, AnswerCache answerCache,
+                        PromptCompactor promptCompactor, PromptConfig promptConfig,
+                        KnowledgeBaseService knowledgeBase, FailureStore failureStore,
+                        CommandRunner commandRunner, BatchSolveService batchSolveService,
+                        LogSegmentExtractor logSegmentExtractor, MetricsService metrics,
+                        ConversationStore conversationStore, SpeculationService speculationService,
+                        ContextCollector contextCollector) {
         this.shellService = shellService;
         this.aiService = aiService;
+        this.answerCache = answerCache;
+        this.promptCompactor = promptCompactor;
+        this.promptConfig = promptConfig;
+        this.knowledgeBase = knowledgeBase;
+        this.failureStore = failureStore;
+        this.commandRunner = commandRunner;
+        this.batchSolveService = batchSolveService;
+        this.logSegmentExtractor = logSegmentExtractor;
+        this.metrics = metrics;
+        this.conversationStore = conversationStore;
+        this.speculationService = speculationService;
+        this.contextCollector = contextCollector;
     }
 
     @Command(command = "solve",
             alias = "-s",
             description = "Analyze and suggest fixes for failed commands.")
     public String solve(
-            @Option(description = "Additional context or question", defaultValue = "Help me fix this error") String prompt
+            @Option(description = "Additional context or question", defaultValue = DEFAULT_QUESTION) String prompt,
+            @Option(longNames = "no-stream", description = "Wait for the complete answer instead of streaming it") boolean noStream,
+            @Option(longNames = "no-cache", description = "Always ask the AI provider, bypassing cached answers") boolean noCache,
+            @Option(longNames = "no-local", description = "Skip the offline knowledge base and always ask the AI") boolean noLocal,
+            @Option(longNames = "id", description = "Analyze an earlier failure from 'cmdzen failures'", defaultValue = "0") long id,
+            @Option(longNames = "batch", description = "Solve every failure in a JSONL file or directory, writing JSONL results") String batch,
+            @Option(longNames = "log", description = "Analyze the errors in a build log file ('-' for stdin)") String logFile,
+            @Option(longNames = "follow-up", description = "Continue the last solve in this shell, e.g. \"that didn't work, now I get ...\"") boolean followUp
     ){
-        try {
-            // Get last command from history
-            String lastCommand = shellService.getLastCommand();
+        recordStartup();
+        try (var total = metrics.time("solve.total")) {
+            if (batch != null && !batch.isBlank()) {
+                batchSolveService.solve(RequestContext.workingDirectory().resolve(batch), prompt, noCache, noLocal,
+                        System.out, System.err);
+                return null;
+            }
+            if (logFile != null && !logFile.isBlank()) {
+                return solveLog(logFile, prompt, noStream, noCache, noLocal);
+            }
+            if (followUp) {
+                return followUp(prompt, noStream);
+            }
+
+            // Captured run from the shell integration, read once for the whole invocation
+            CapturedRun capturedRun;
+            if (id > 0) {
+                capturedRun = failureStore.load(id);
+                if (capturedRun == null) {
+                    return "No stored failure with id " + id + ". Run 'cmdzen failures' to list them.";
+                }
+            } else {
+                capturedRun = shellService.getLastCapturedRun();
+            }
+
+            // Get last command from the capture, falling back to history
+            String lastCommand = shellService.getLastCommand(capturedRun);
             if (lastCommand == null || lastCommand.isEmpty()) {
                 return "No previous command found in history.";
             }
 
             log.debug("Last command: {}", lastCommand);
 
-            // Try to get captured output first (NEW!)
-            String capturedOutput = shellService.getLastCommandOutput();
-            int exitCode = shellService.getLastExitCode();
-
-            if (capturedOutput != null && exitCode != 0) {
+            String output;
+            int code;
+            boolean fromCapture;
+            String captureTimestamp = null;
+            if (capturedRun != null && capturedRun.getExitCode() != 0) {
                 // Use captured output from shell integration
                 log.info("Using captured output from shell integration");
+                OutputWindow window;
+                try (var timer = metrics.time("capture.window")) {
+                    window = capturedRun.window(promptConfig.getOutputHeadBytes(), promptConfig.getOutputTailBytes());
+                }
+                output = window.getText();
+                code = capturedRun.getExitCode();
+                fromCapture = true;
+                captureTimestamp = capturedRun.getTimestamp();
+
                 System.out.println("Analyzing failed command: " + lastCommand);
-                System.out.println("Exit code: " + exitCode);
-                System.out.println("Captured output:");
+                System.out.println("Exit code: " + code);
+                System.out.println(window.isComplete() ? "Captured output:" : "Captured output ("
+                        + window.getLineCount() + " lines, " + window.getTotalBytes() + " bytes; showing start and end):");
                 System.out.println("------------------------------");
-                System.out.println(stripMetadata(capturedOutput));
+                System.out.println(output.trim());
                 System.out.println("------------------------------");
 
-                String aiPrompt = buildPrompt(lastCommand, exitCode, capturedOutput, prompt, true);
-                return aiService.ask(aiPrompt);
-
             } else {
-                // Fallback: re-run command (current behavior)
+                // Fallback: re-run the command, bounded in time and output
                 log.info("No captured output found, re-running command");
                 System.out.println("Re-running command to capture output: " + lastCommand);
 
-                ProcessBuilder pb = new ProcessBuilder("sh", "-c", lastCommand);
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
-
-                String output = new String(process.getInputStream().readAllBytes());
-                int code = process.waitFor();
+                RerunResult result;
+                try (var timer = metrics.time("rerun")) {
+                    result = commandRunner.run(lastCommand);
+                }
+                output = result.getOutput();
+                code = result.getExitCode();
+                fromCapture = false;
 
+                if (result.isTimedOut()) {
+                    System.out.println("Command still running after " + result.getDuration().toSeconds()
+                            + "s, stopped it (cmdzen.rerun.timeout); analyzing the output so far.");
+                }
                 System.out.println("Exit code: " + code);
                 log.debug("Command output: {}", output);
-
-                String aiPrompt = buildPrompt(lastCommand, code, output, prompt, false);
-                return aiService.ask(aiPrompt);
             }
 
+            return analyze(lastCommand, code, output, prompt, fromCapture, captureTimestamp, noStream, noCache, noLocal);
+
         } catch (Exception e) {
             log.error("Error in solve command", e);
             return "Error analyzing command: " + e.getMessage();
         }
     }
 
-    private String stripMetadata(String captured) {
-        return captured.lines()
-                .filter(line -> !line.startsWith("__CMDZEN_CMD_START__"))
-                .filter(line -> !line.startsWith("EXIT_CODE:"))
-                .filter(line -> !line.startsWith("COMMAND:"))
-                .filter(line -> !line.startsWith("TIMESTAMP:"))
-                .reduce("", (a, b) -> a + b + "\n")
-                .trim();
+    /**
+     * Time from JVM launch to here: start-up plus Spring context. Meaningless inside the daemon.
+     */
+    private void recordStartup() {
+        if (RequestContext.isDaemonRequest()) return;
+        ProcessHandle.current().info().startInstant().ifPresent(start ->
+                metrics.record("jvm.startup", Duration.between(start, Instant.now()).toNanos()));
     }
 
+    /**
+     * Analyzes a build log ({@code -} for stdin) by its top error segments.
+     */
+    private String solveLog(String logFile, String prompt, boolean noStream, boolean noCache, boolean noLocal)
+            throws IOException {
+        LogDigest digest;
+        try (var timer = metrics.time("log.scan")) {
+            digest = "-".equals(logFile)
+                    ? logSegmentExtractor.extract(RequestContext.stdin(), "stdin")
+                    : logSegmentExtractor.extract(RequestContext.workingDirectory().resolve(logFile));
+        }
+        if (digest.getSegments().isEmpty()) {
+            return "No error segments found in " + digest.getSource() + " (" + digest.getLines() + " lines).";
+        }
+        System.out.println("Scanned " + digest.getLines() + " lines in " + digest.getElapsed().toMillis() + " ms: "
+                + digest.getDistinctSegments() + " distinct error segments, analyzing the top "
+                + digest.getSegments().size() + ".");
+        return analyze("(build log " + digest.getSource() + ")", 1, digest.toPromptText(), prompt, true, null,
+                noStream, noCache, noLocal);
+    }
 
-    private String buildPrompt(String command,
-                               int exitCode,
-                               String output,
-                               String userPrompt,
-                               boolean fromCapture) {
+    /**
+     * Continues this shell's conversation: the earlier messages are re-sent unchanged, so the
+     * provider can serve them from its prompt cache, followed by the user's new message and the
+     * output of any command that failed since.
+     */
+    private String followUp(String prompt, boolean noStream) {
+        String shellPid = shellService.getShellPid();
+        Conversation conversation = conversationStore.load(shellPid);
+        if (conversation == null) {
+            return "Nothing to follow up on in this shell. Run 'cmdzen solve' first.";
+        }
+
+        StringBuilder turn = new StringBuilder();
+        CapturedRun run = shellService.getLastCapturedRun();
+        if (run != null && run.getExitCode() != 0 && run.getTimestamp() != null
+                && !run.getTimestamp().equals(conversation.getCaptureTimestamp())) {
+            OutputWindow window = run.window(promptConfig.getOutputHeadBytes(), promptConfig.getOutputTailBytes());
+            CompactedOutput compacted = promptCompactor.compact(new BufferedReader(new StringReader(window.getText())),
+                    conversationStore.getFollowUpOutputTokens());
+            turn.append("I then ran: ").append(run.getCommand()).append("\n");
+            turn.append("EXIT CODE: ").append(run.getExitCode()).append("\n\n");
+            turn.append("OUTPUT:\n");
+            if (compacted.isCompacted()) {
+                turn.append(compacted.summary()).append("\n");
+            }
+            turn.append(compacted.getText()).append("\n\n");
+            conversation.setCaptureTimestamp(run.getTimestamp());
+            System.out.println("Including the new failure: " + run.getCommand() + " (exit code " + run.getExitCode() + ")");
+        }
+        turn.append(DEFAULT_QUESTION.equals(prompt) ? DEFAULT_FOLLOW_UP : prompt);
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("A Linux command ");
-        sb.append(exitCode != 0 ? "failed and I need help fixing it.\n\n"
-                : "was run and I need an explanation.\n\n");
+        List<ChatMessage> messages = conversation.getMessages();
+        messages.add(ChatMessage.user(turn.toString()));
+        int dropped = conversationStore.fit(conversation);
+        if (dropped > 0) {
+            System.out.println("Conversation trimmed to fit the context window: " + dropped / 2
+                    + " older exchanges left out.");
+        }
+
+        boolean stream = !noStream && RequestContext.isInteractive();
+        String response = ask(messages, stream);
+        if (!AIService.isError(response)) {
+            messages.add(ChatMessage.assistant(response));
+            conversationStore.save(shellPid, conversation);
+        }
+        return stream ? null : response;
+    }
 
-        sb.append("COMMAND: ").append(command).append("\n");
-        sb.append("EXIT CODE: ").append(exitCode).append("\n\n");
+    private String analyze(String lastCommand, int code, String output, String prompt, boolean fromCapture,
+                           String captureTimestamp, boolean noStream, boolean noCache, boolean noLocal) {
+        List<ErrorRule> rules;
+        try (var timer = metrics.time("rules.match")) {
+            rules = noLocal ? List.of() : knowledgeBase.match(lastCommand, code, output);
+        }
+        if (DEFAULT_QUESTION.equals(prompt)) {
+            for (ErrorRule rule : rules) {
+                if (rule.getMode() == ErrorRule.Mode.ANSWER) {
+                    log.info("Answered offline by knowledge base rule {}", rule.getId());
+                    String answer = rule.render(lastCommand, output);
+                    startConversation(lastCommand, captureTimestamp, FailurePrompt.build(lastCommand, code,
+                            promptCompactor.compact(output), prompt, fromCapture, List.of(), List.of()), answer);
+                    return answer + "\n\n(Answered offline by rule '" + rule.getId()
+                            + "'. Use --no-local to ask the AI instead.)";
+                }
+            }
+        }
+        // probes run while the hints are rendered and the output is compacted; an offline
+        // answer above never needs them
+        CompletableFuture<List<String>> context = contextCollector.start(lastCommand);
+        List<String> hints = rules.stream()
+                .filter(rule -> rule.getMode() == ErrorRule.Mode.ANNOTATE)
+                .map(rule -> rule.render(lastCommand, output))
+                .toList();
 
-        sb.append(fromCapture ? "CAPTURED ERROR INFO:\n" : "COMMAND OUTPUT:\n");
-        sb.append(output).append("\n\n");
+        String aiPrompt;
+        try (var timer = metrics.time("prompt.build")) {
+            aiPrompt = buildPrompt(lastCommand, code, output, prompt, fromCapture, hints, context);
+        }
+        String cacheKey = noCache ? null : FailureFingerprint.of(lastCommand, code, output, prompt);
+        Answer answer = answer(aiPrompt, cacheKey, noStream);
+        startConversation(lastCommand, captureTimestamp, aiPrompt, answer.text());
+        return answer.streamed() ? null : answer.text();
+    }
 
-        sb.append("USER QUESTION: ").append(userPrompt).append("\n\n");
+    /**
+     * Makes this exchange the start of the shell's conversation, replacing any earlier one.
+     */
+    private void startConversation(String command, String captureTimestamp, String aiPrompt, String answer) {
+        if (!conversationStore.isEnabled() || AIService.isError(answer)) return;
+        Conversation conversation = new Conversation();
+        conversation.setCommand(command);
+        conversation.setCaptureTimestamp(captureTimestamp);
+        conversation.getMessages().add(ChatMessage.user(aiPrompt));
+        conversation.getMessages().add(ChatMessage.assistant(answer));
+        conversationStore.save(shellService.getShellPid(), conversation);
+    }
 
-        if (exitCode != 0) {
-            sb.append("Please:\n");
-            sb.append("1. Explain what went wrong\n");
-            sb.append("2. Provide the corrected command\n");
-            sb.append("3. Explain why the fix works\n");
-        } else {
-            sb.append("Please explain what this command does and the output.\n");
+    /**
+     * Answers from the cache when this failure was solved before ({@code cacheKey} is null when
+     * caching is bypassed) or joins the shell hook's speculative request for it. Otherwise
+     * streams the answer straight to the terminal when attached to one, or returns the buffered
+     * answer so redirected or piped output stays a single block.
+     */
+    private Answer answer(String aiPrompt, String cacheKey, boolean noStream) {
+        if (cacheKey != null) {
+            String cached = answerCache.get(cacheKey);
+            if (cached != null) {
+                log.info("Answer served from cache");
+                return new Answer(cached, false);
+            }
+            if (speculationService.isPending(cacheKey)) {
+                System.out.println("Waiting for the background analysis of this failure...");
+                String joined = speculationService.await(cacheKey);
+                if (joined != null) {
+                    return new Answer(joined, false);
+                }
+            }
         }
 
-        return sb.toString();
+        boolean stream = !noStream && RequestContext.isInteractive();
+        String response = ask(List.of(ChatMessage.user(aiPrompt)), stream);
+        if (cacheKey != null && !AIService.isError(response)) {
+            answerCache.put(cacheKey, response);
+        }
+        return new Answer(response, stream);
+    }
+
+    private String ask(List<ChatMessage> messages, boolean stream) {
+        try (var timer = metrics.time("ai.answer")) {
+            if (!stream) {
+                return aiService.getObject().ask(messages);
+            }
+            String response = aiService.getObject().askStreaming(messages, chunk -> {
+                System.out.print(chunk);
+                System.out.flush();
+            });
+            System.out.println();
+            return response;
+        }
+    }
+
+    /**
+     * The answer text, and whether it was already streamed to the terminal.
+     */
+    private record Answer(String text, boolean streamed) {
+    }
+
+    private String buildPrompt(String command,
+                               int exitCode,
+                               String output,
+                               String userPrompt,
+                               boolean fromCapture,
+                               List<String> hints,
+                               CompletableFuture<List<String>> context) {
+        CompactedOutput compacted = promptCompactor.compact(output);
+        if (compacted.isCompacted()) {
+            System.out.println("Output trimmed for the AI: " + compacted.getDroppedLines() + " of "
+                    + compacted.getOriginalLines() + " lines omitted, "
+                    + compacted.getCollapsedLines() + " repeated lines collapsed.");
+        }
+        List<String> environment;
+        try (var timer = metrics.time("context.wait")) {
+            environment = context.join();
+        }
+        return FailurePrompt.build(command, exitCode, compacted, userPrompt, fromCapture, hints, environment);
     }
 
 }
\ No newline at end of file
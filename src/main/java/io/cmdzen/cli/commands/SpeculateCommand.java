@@ -0,0 +1,35 @@
+package io.cmdzen.cli.commands;
+
+import io.cmdzen.cli.daemon.RequestContext;
+import io.cmdzen.cli.services.SpeculationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+
+@Command
+@Slf4j
+public class SpeculateCommand {
+
+    private final SpeculationService speculationService;
+
+    public SpeculateCommand(SpeculationService speculationService) {
+        this.speculationService = speculationService;
+    }
+
+    /**
+     * Run by the shell hook in the background when CMDZEN_SPECULATE=1, right after a command fails.
+     */
+    @Command(command = "speculate",
+            hidden = true,
+            description = "Analyze a captured failure in the background so 'solve' can answer instantly")
+    public String speculate(
+            @Option(longNames = "capture", required = true, description = "The capture file written by the shell hook") String capture
+    ) {
+        try {
+            speculationService.speculate(RequestContext.workingDirectory().resolve(capture));
+        } catch (Exception e) {
+            log.warn("Speculative analysis failed: {}", e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package io.cmdzen.cli.commands;
+
+import io.cmdzen.cli.model.ProviderHealth;
+import io.cmdzen.cli.services.LocalAIProvider;
+import io.cmdzen.cli.services.MetricsService;
+import io.cmdzen.cli.services.ProviderHealthService;
+import io.cmdzen.cli.util.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+
+import java.util.Map;
+import java.util.TreeSet;
+
+@Command
+@Slf4j
+public class StatsCommand {
+
+    private static final String PROVIDER = "provider.";
+    private static final String SUCCESS = ".success";
+    private static final String FAILURE = ".failure";
+    private static final LatencyHistogram EMPTY = new LatencyHistogram();
+
+    private final MetricsService metrics;
+    private final ProviderHealthService providerHealth;
+
+    public StatsCommand(MetricsService metrics, ProviderHealthService providerHealth) {
+        this.metrics = metrics;
+        this.providerHealth = providerHealth;
+    }
+
+    @Command(command = "stats",
+            description = "Show latency percentiles per phase and per AI provider, across all runs")
+    public String stats(
+            @Option(longNames = "reset", description = "Forget all recorded measurements") boolean reset
+    ) {
+        try {
+            if (reset) {
+                metrics.reset();
+                return "Statistics cleared.";
+            }
+            Map<String, LatencyHistogram> all = metrics.snapshot();
+            if (all.isEmpty()) {
+                return "No measurements yet. Run 'cmdzen solve' first.";
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-16s %7s %9s %9s %9s%n", "PHASE", "COUNT", "P50 ms", "P95 ms", "P99 ms"));
+            all.forEach((name, histogram) -> {
+                if (!name.startsWith(PROVIDER) && histogram.getRecorded() > 0) {
+                    sb.append(String.format("%-16s %7d %s%n", name, histogram.getRecorded(), percentiles(histogram)));
+                }
+            });
+
+            Map<String, ProviderHealth> health = providerHealth.snapshot();
+            TreeSet<String> providers = new TreeSet<>(health.keySet());
+            for (String name : all.keySet()) {
+                if (name.startsWith(PROVIDER) && (name.endsWith(SUCCESS) || name.endsWith(FAILURE))) {
+                    providers.add(name.substring(PROVIDER.length(), name.lastIndexOf('.')));
+                }
+            }
+            if (!providers.isEmpty()) {
+                sb.append(String.format("%n%-16s %7s %7s %9s %9s %9s  %s%n",
+                        "PROVIDER", "OK", "FAILED", "P50 ms", "P95 ms", "P99 ms", "CIRCUIT"));
+                for (String provider : providers) {
+                    long ok = all.getOrDefault(PROVIDER + provider + SUCCESS, EMPTY).getCount();
+                    long failed = all.getOrDefault(PROVIDER + provider + FAILURE, EMPTY).getCount();
+                    sb.append(String.format("%-16s %7d %7d %s  %s%n", provider, ok, failed,
+                            percentiles(all.getOrDefault(PROVIDER + provider, EMPTY)), circuit(health.get(provider))));
+                }
+                sb.append(localComparison(all, providers));
+                sb.append(String.format("%nFallbacks to the next provider: %d, skipped while open: %d, hedged requests: %d%n",
+                        all.getOrDefault(PROVIDER + "fallback", EMPTY).getCount(),
+                        all.getOrDefault(PROVIDER + "skipped", EMPTY).getCount(),
+                        all.getOrDefault(PROVIDER + "hedge", EMPTY).getCount()));
+            }
+            return sb.toString().stripTrailing();
+        } catch (Exception e) {
+            log.error("Error reading statistics", e);
+            return "Error reading statistics: " + e.getMessage();
+        }
+    }
+
+    /**
+     * How the local provider's median latency compares with each remote one's, if both were used.
+     */
+    private static String localComparison(Map<String, LatencyHistogram> all, TreeSet<String> providers) {
+        LatencyHistogram local = all.getOrDefault(PROVIDER + LocalAIProvider.NAME, EMPTY);
+        if (local.getRecorded() == 0) return "";
+        StringBuilder sb = new StringBuilder();
+        for (String provider : providers) {
+            LatencyHistogram remote = all.getOrDefault(PROVIDER + provider, EMPTY);
+            if (provider.equals(LocalAIProvider.NAME) || remote.getRecorded() == 0) continue;
+            long difference = (remote.percentileMicros(0.5) - local.percentileMicros(0.5)) / 1000;
+            sb.append(String.format("%nlocal vs %s at p50: %d ms %s", provider, Math.abs(difference),
+                    difference >= 0 ? "faster" : "slower"));
+        }
+        return sb.length() == 0 ? "" : sb.append('\n').toString();
+    }
+
+    private static String circuit(ProviderHealth health) {
+        if (health == null) return "-";
+        String state = health.getState().name().toLowerCase().replace('_', '-');
+        if (health.getState() == ProviderHealth.State.OPEN) {
+            long seconds = Math.max(0, health.getUntil() - System.currentTimeMillis()) / 1000;
+            state += " (retry in " + seconds + "s)";
+        }
+        return String.format("%s, %.0f%% errors", state, health.getErrorRate() * 100);
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("%9s %9s %9s",
+                millis(histogram, 0.50), millis(histogram, 0.95), millis(histogram, 0.99));
+    }
+
+    private static String millis(LatencyHistogram histogram, double q) {
+        if (histogram.getRecorded() == 0) return "-";
+        return String.format("%.1f", histogram.percentileMicros(q) / 1000.0);
+    }
+}
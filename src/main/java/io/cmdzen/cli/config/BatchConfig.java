@@ -0,0 +1,24 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.batch")
+public class BatchConfig {
+
+    /** Failures sent to the AI provider at the same time by {@code solve --batch}. */
+    private int parallelism = 4;
+    /** Tries per failure, including the first, before it is reported as an error. */
+    private int maxAttempts = 5;
+    /** Wait before the first retry when the provider gives no Retry-After; doubled on every retry. */
+    private Duration initialBackoff = Duration.ofSeconds(1);
+    private Duration maxBackoff = Duration.ofSeconds(60);
+
+}
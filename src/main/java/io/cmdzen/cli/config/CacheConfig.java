@@ -0,0 +1,22 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.cache")
+public class CacheConfig {
+
+    private boolean enabled = true;
+    private String directory;
+    private int maxEntries = 500;
+    private long maxBytes = 20L * 1024 * 1024;
+    private Duration ttl = Duration.ofDays(14);
+
+}
@@ -0,0 +1,30 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.ai.circuit")
+public class CircuitConfig {
+
+    private boolean enabled = true;
+    /** Consecutive failures that open a provider's circuit. */
+    private int failureThreshold = 3;
+    /** Smoothed error rate (0..1) that opens the circuit, once at least {@code minCalls} were made. */
+    private double errorRateThreshold = 0.5;
+    private int minCalls = 5;
+    /** Weight of the newest call in the latency and error-rate averages. */
+    private double smoothing = 0.2;
+    /** How long an opened circuit skips the provider; doubled after every failed probe. */
+    private Duration openDuration = Duration.ofMinutes(1);
+    private Duration maxOpenDuration = Duration.ofMinutes(30);
+    /** How long one probe may take before another invocation is allowed to probe instead. */
+    private Duration probeTimeout = Duration.ofSeconds(60);
+
+}
@@ -1,15 +1,97 @@
 package io.cmdzen.cli.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.concurrent.Executors;
+
+@Slf4j
 @Configuration
 public class CmdzenConfig {
 
+    private static final String TUNNELING_DISABLED_SCHEMES = "jdk.http.auth.tunneling.disabledSchemes";
+
+    /**
+     * Shared JDK client so connections (and HTTP/2 streams) are reused across calls.
+     * {@code shutdownNow} on context close aborts in-flight exchanges, so Ctrl-C doesn't
+     * wait for a hung provider.
+     */
+    @Lazy
+    @Bean(destroyMethod = "shutdownNow")
+    public HttpClient httpClient(HttpConfig httpConfig) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(httpConfig.getConnectTimeout())
+                .version(httpConfig.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newVirtualThreadPerTaskExecutor());
+
+        String proxy = httpConfig.getProxy();
+        if (proxy != null && !proxy.isBlank()) {
+            URI proxyUri = URI.create(proxy.contains("://") ? proxy : "http://" + proxy);
+            int port = proxyUri.getPort() != -1 ? proxyUri.getPort() : 8080;
+            builder.proxy(new EnvironmentProxySelector(new InetSocketAddress(proxyUri.getHost(), port),
+                    httpConfig.getNoProxy()));
+            if (proxyUri.getUserInfo() != null) {
+                builder.authenticator(proxyAuthenticator(proxyUri.getHost(), proxyUri.getUserInfo()));
+            }
+            log.debug("Using HTTP proxy {}:{}{}", proxyUri.getHost(), port,
+                    proxyUri.getUserInfo() != null ? " with credentials" : "");
+        } else {
+            builder.proxy(ProxySelector.getDefault());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Answers the proxy's Basic challenge with the {@code user:password} from its URL, and
+     * nobody else's. The JDK refuses Basic for HTTPS tunnels unless
+     * {@code jdk.http.auth.tunneling.disabledSchemes} says otherwise, and every provider is
+     * HTTPS, so the property is cleared when the user hasn't set it.
+     */
+    private static Authenticator proxyAuthenticator(String proxyHost, String userInfo) {
+        int colon = userInfo.indexOf(':');
+        String user = colon >= 0 ? userInfo.substring(0, colon) : userInfo;
+        char[] password = colon >= 0 ? userInfo.substring(colon + 1).toCharArray() : new char[0];
+        if (System.getProperty(TUNNELING_DISABLED_SCHEMES) == null) {
+            System.setProperty(TUNNELING_DISABLED_SCHEMES, "");
+        }
+        return new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                if (getRequestorType() != RequestorType.PROXY || !proxyHost.equalsIgnoreCase(getRequestingHost())) {
+                    return null;
+                }
+                return new PasswordAuthentication(user, password);
+            }
+        };
+    }
+
+    @Lazy
     @Bean
-    public RestClient.Builder restClientBuilder() {
-        return RestClient.builder();
+    public RestClient.Builder restClientBuilder(HttpClient httpClient, HttpConfig httpConfig) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(httpConfig.getReadTimeout());
+
+        RestClient.Builder builder = RestClient.builder()
+                .requestFactory(requestFactory)
+                .requestInterceptor(new OverallTimeoutInterceptor(httpConfig.getOverallTimeout()));
+        if (httpConfig.isCompression()) {
+            // the JDK client does not negotiate compression on its own
+            builder.defaultHeader(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                    .requestInterceptor(new GzipResponseInterceptor());
+        }
+        return builder;
     }
 
 }
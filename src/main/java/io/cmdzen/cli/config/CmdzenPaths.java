@@ -0,0 +1,50 @@
+package io.cmdzen.cli.config;
+
+import java.nio.file.Path;
+
+/**
+ * Locations of cmdzen's own files, following the XDG base directory conventions.
+ */
+public final class CmdzenPaths {
+
+    private CmdzenPaths() {
+    }
+
+    public static Path configDir() {
+        return xdgDir("XDG_CONFIG_HOME", ".config");
+    }
+
+    /**
+     * Data that should survive restarts but isn't configuration, such as the failure store.
+     */
+    public static Path stateDir() {
+        return xdgDir("XDG_STATE_HOME", ".local/state");
+    }
+
+    /**
+     * Per-user directory for sockets and other files that must not outlive the login session.
+     */
+    public static Path runtimeDir() {
+        String runtime = System.getenv("XDG_RUNTIME_DIR");
+        if (runtime != null && !runtime.isBlank()) {
+            return Path.of(runtime, "cmdzen");
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "cmdzen-" + System.getProperty("user.name"));
+    }
+
+    public static Path daemonSocket() {
+        String override = System.getenv("CMDZEN_DAEMON_SOCKET");
+        if (override != null && !override.isBlank()) {
+            return Path.of(override);
+        }
+        return runtimeDir().resolve("daemon.sock");
+    }
+
+    private static Path xdgDir(String variable, String fallback) {
+        String base = System.getenv(variable);
+        if (base != null && !base.isBlank()) {
+            return Path.of(base, "cmdzen");
+        }
+        return Path.of(System.getProperty("user.home"), fallback, "cmdzen");
+    }
+}
@@ -0,0 +1,71 @@
+package io.cmdzen.cli.config;
+
+import io.cmdzen.cli.commands.AliasCommand;
+import io.cmdzen.cli.commands.Configure;
+import io.cmdzen.cli.commands.DaemonCommand;
+import io.cmdzen.cli.commands.FailuresCommand;
+import io.cmdzen.cli.commands.HelpCommand;
+import io.cmdzen.cli.commands.HistoryCommand;
+import io.cmdzen.cli.commands.LastFailedCommand;
+import io.cmdzen.cli.commands.SolveCommand;
+import io.cmdzen.cli.commands.SpeculateCommand;
+import io.cmdzen.cli.commands.StatsCommand;
+import io.cmdzen.cli.commands.VersionCommand;
+import io.cmdzen.cli.model.BatchFailure;
+import io.cmdzen.cli.model.BatchResult;
+import io.cmdzen.cli.model.ChatMessage;
+import io.cmdzen.cli.model.Conversation;
+import io.cmdzen.cli.model.ErrorRule;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+
+/**
+ * Native-image hints for what Spring AOT can't infer on its own: types that Jackson binds
+ * reflectively, bundled resources, and the command methods Spring Shell invokes. This is the
+ * only source of that metadata: Spring AOT writes it to {@code META-INF/native-image/} at build
+ * time, so new JSON types and commands only need to be added here.
+ */
+public class CmdzenRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<Class<?>> JSON_TYPES = List.of(
+            BatchFailure.class,
+            BatchResult.class,
+            BatchResult.Status.class,
+            ChatMessage.class,
+            Conversation.class,
+            ErrorRule.class,
+            ErrorRule.Mode.class
+    );
+
+    private static final List<Class<?>> COMMANDS = List.of(
+            AliasCommand.class,
+            Configure.class,
+            DaemonCommand.class,
+            FailuresCommand.class,
+            HelpCommand.class,
+            HistoryCommand.class,
+            LastFailedCommand.class,
+            SolveCommand.class,
+            SpeculateCommand.class,
+            StatsCommand.class,
+            VersionCommand.class
+    );
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> type : JSON_TYPES) {
+            hints.reflection().registerType(type,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+        }
+        for (Class<?> command : COMMANDS) {
+            hints.reflection().registerType(command, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        hints.resources().registerPattern("kb/rules.json");
+        hints.resources().registerPattern("application.properties");
+    }
+}
@@ -0,0 +1,51 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.context")
+public class ContextConfig {
+
+    private boolean enabled = true;
+    /** How long solve waits for all probes together; slower ones are left out of the prompt. */
+    private Duration budget = Duration.ofMillis(150);
+    /** Probe commands are killed after this; one that finishes after the budget still fills the cache. */
+    private Duration commandTimeout = Duration.ofSeconds(5);
+    /** Cached results are reused while the files they depend on are unchanged, but no longer than this. */
+    private Duration cacheTtl = Duration.ofMinutes(10);
+    private int maxCacheEntries = 256;
+    /** Lines of 'git status' output included in the prompt. */
+    private int maxGitStatusLines = 15;
+    /** Tools whose version is reported when a command using them fails, and the arguments that print it. */
+    private Map<String, String> versionArguments = new HashMap<>(Map.ofEntries(
+            Map.entry("cargo", "--version"),
+            Map.entry("docker", "--version"),
+            Map.entry("gcc", "--version"),
+            Map.entry("git", "--version"),
+            Map.entry("go", "version"),
+            Map.entry("helm", "version --short"),
+            Map.entry("java", "--version"),
+            Map.entry("kubectl", "version --client"),
+            Map.entry("make", "--version"),
+            Map.entry("node", "--version"),
+            Map.entry("npm", "--version"),
+            Map.entry("pip", "--version"),
+            Map.entry("pip3", "--version"),
+            Map.entry("python", "--version"),
+            Map.entry("python3", "--version"),
+            Map.entry("ruby", "--version"),
+            Map.entry("rustc", "--version"),
+            Map.entry("terraform", "version"),
+            Map.entry("yarn", "--version")
+    ));
+
+}
@@ -0,0 +1,27 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.conversation")
+public class ConversationConfig {
+
+    private boolean enabled = true;
+    /** A conversation not continued for this long is forgotten. */
+    private Duration ttl = Duration.ofHours(2);
+    /**
+     * Estimated tokens the whole conversation may take with a model on the default prompt budget;
+     * older follow-ups are dropped beyond it. Scaled for models in {@code cmdzen.prompt.model-budgets}.
+     */
+    private int contextTokens = 16000;
+    /** Token budget for the output of a new failure included in a follow-up. */
+    private int followUpOutputTokens = 2000;
+
+}
@@ -0,0 +1,21 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.daemon")
+public class DaemonConfig {
+
+    /** The daemon exits after this long without a client. */
+    private Duration idleTimeout = Duration.ofMinutes(20);
+    /** Upper bound on clients served at the same time; further clients wait. */
+    private int maxConcurrentClients = 16;
+
+}
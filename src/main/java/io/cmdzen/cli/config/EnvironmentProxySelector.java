@@ -0,0 +1,84 @@
+package io.cmdzen.cli.config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sends every request through one proxy except those to loopback addresses and to hosts
+ * listed in {@code NO_PROXY}, read the way curl reads it: comma-separated host names that
+ * also match their subdomains (a leading {@code .} or {@code *.} is allowed), IP addresses,
+ * or {@code *} for no proxy at all. Ports in entries are ignored; CIDR ranges are not supported.
+ */
+public class EnvironmentProxySelector extends ProxySelector {
+
+    private final List<Proxy> proxy;
+    private final List<String> exclusions = new ArrayList<>();
+    private boolean bypassAll;
+
+    public EnvironmentProxySelector(InetSocketAddress address, String noProxy) {
+        this.proxy = List.of(new Proxy(Proxy.Type.HTTP, address));
+        if (noProxy == null) return;
+        for (String entry : noProxy.split("[,\\s]+")) {
+            String host = normalize(stripPort(entry.trim()));
+            if (host.equals("*")) {
+                bypassAll = true;
+            } else if (host.startsWith("*.")) {
+                exclusions.add(host.substring(2));
+            } else if (host.startsWith(".")) {
+                exclusions.add(host.substring(1));
+            } else if (!host.isEmpty()) {
+                exclusions.add(host);
+            }
+        }
+    }
+
+    @Override
+    public List<Proxy> select(URI uri) {
+        String host = uri.getHost();
+        return host == null || bypasses(host) ? List.of(Proxy.NO_PROXY) : proxy;
+    }
+
+    @Override
+    public void connectFailed(URI uri, SocketAddress address, IOException e) {
+        // there is no other proxy to fall back to
+    }
+
+    public boolean bypasses(String host) {
+        host = normalize(host);
+        if (bypassAll || isLoopback(host)) return true;
+        for (String exclusion : exclusions) {
+            if (host.equals(exclusion) || host.endsWith("." + exclusion)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isLoopback(String host) {
+        return host.equals("localhost") || host.endsWith(".localhost")
+                || host.startsWith("127.") || host.equals("::1");
+    }
+
+    private static String normalize(String host) {
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    private static String stripPort(String entry) {
+        if (entry.startsWith("[")) {
+            int end = entry.indexOf(']');
+            return end > 0 ? entry.substring(0, end + 1) : entry;
+        }
+        int colon = entry.indexOf(':');
+        // more than one colon is a bare IPv6 address
+        return colon >= 0 && colon == entry.lastIndexOf(':') ? entry.substring(0, colon) : entry;
+    }
+}
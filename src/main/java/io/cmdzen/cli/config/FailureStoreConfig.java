@@ -0,0 +1,18 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.failures")
+public class FailureStoreConfig {
+
+    private boolean enabled = true;
+    private int maxEntries = 200;
+    private long maxBytes = 64L * 1024 * 1024;
+
+}
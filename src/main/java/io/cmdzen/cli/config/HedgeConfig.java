@@ -0,0 +1,22 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.ai.hedge")
+public class HedgeConfig {
+
+    private boolean enabled = false;
+    /** How long the primary provider gets before the secondary is fired too; zero races both at once. */
+    private Duration delay = Duration.ofMillis(2500);
+    /** Overall bound on a hedged ask, covering both providers; for a streamed answer, on its first token. */
+    private Duration deadline = Duration.ofSeconds(60);
+
+}
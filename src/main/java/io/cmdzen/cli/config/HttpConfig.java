@@ -0,0 +1,32 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.http")
+public class HttpConfig {
+
+    /** TCP + TLS connect timeout. */
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    /** Time allowed until the response headers arrive. */
+    private Duration readTimeout = Duration.ofSeconds(60);
+    /** Hard cap on a whole exchange, including reading a streamed body. */
+    private Duration overallTimeout = Duration.ofSeconds(120);
+    private boolean http2 = true;
+    private boolean compression = true;
+    /**
+     * Proxy URL such as {@code http://proxy.corp:3128}, optionally with {@code user:password@} for
+     * Basic authentication; blank means the JVM's default proxy selector.
+     */
+    private String proxy;
+    /** Hosts reached without {@code proxy}, comma-separated as in {@code NO_PROXY}; loopback always is. */
+    private String noProxy;
+
+}
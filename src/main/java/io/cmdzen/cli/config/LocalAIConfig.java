@@ -0,0 +1,27 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.ai.local")
+public class LocalAIConfig {
+
+    /** Chat completions URL of a local server, e.g. http://localhost:8080/v1/chat/completions; blank disables it. */
+    private String url;
+    /** Model name; llama.cpp ignores it, Ollama needs it. */
+    private String model;
+    private String apiKey;
+    /** Never use a remote provider, so prompts and captured output stay on this machine. */
+    private boolean exclusive = false;
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    /** CPU inference is slow: the whole answer may take this long. */
+    private Duration timeout = Duration.ofMinutes(5);
+
+}
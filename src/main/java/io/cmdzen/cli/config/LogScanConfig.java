@@ -0,0 +1,28 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.log-scan")
+public class LogScanConfig {
+
+    /** Error segments passed on to the AI, best first. */
+    private int maxSegments = 8;
+    /** Lines kept before the first error line of a segment. */
+    private int contextBefore = 3;
+    /** Non-error lines after which a segment ends. */
+    private int contextAfter = 5;
+    private int maxSegmentLines = 60;
+    /** Longer lines are cut. */
+    private int maxLineLength = 500;
+    /** Distinct segments tracked per chunk; the weakest are dropped beyond this. */
+    private int maxDistinctSegments = 512;
+    /** Files are scanned in chunks of this size, in parallel. */
+    private int chunkBytes = 64 * 1024 * 1024;
+
+}
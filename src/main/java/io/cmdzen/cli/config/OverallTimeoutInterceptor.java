@@ -0,0 +1,160 @@
+package io.cmdzen.cli.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds a whole exchange, body included. The JDK client's request timeout only covers
+ * the wait for response headers; a provider that trickles a streamed body forever would
+ * otherwise never time out. At the deadline the response is closed and a blocked reader
+ * interrupted, which surfaces as an {@link IOException} from {@code read}.
+ */
+@Slf4j
+public class OverallTimeoutInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cmdzen-http-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Duration timeout;
+
+    public OverallTimeoutInterceptor(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+            return execution.execute(request, body);
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        ClientHttpResponse response = execution.execute(request, body);
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            response.close();
+            throw new IOException("Overall timeout of " + timeout.toSeconds() + "s exceeded for " + request.getURI());
+        }
+        return new DeadlineResponse(response, remaining, request);
+    }
+
+    private final class DeadlineResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final ScheduledFuture<?> expiry;
+        private final HttpRequest request;
+        private final Object handoff = new Object();
+        private volatile boolean expired;
+        private Thread reader;
+        private boolean interrupted;
+        private InputStream body;
+
+        DeadlineResponse(ClientHttpResponse delegate, long remainingNanos, HttpRequest request) {
+            this.delegate = delegate;
+            this.request = request;
+            this.expiry = timer.schedule(this::expire, remainingNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void expire() {
+            log.warn("Overall timeout of {} exceeded for {}, aborting", timeout, request.getURI());
+            synchronized (handoff) {
+                expired = true;
+                // only a thread still inside read is interrupted, and only when nobody else did
+                if (reader != null && !reader.isInterrupted()) {
+                    reader.interrupt();
+                    interrupted = true;
+                }
+            }
+            delegate.close();
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new FilterInputStream(delegate.getBody()) {
+                    @Override
+                    public int read() throws IOException {
+                        enter();
+                        try {
+                            return super.read();
+                        } finally {
+                            exit();
+                        }
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        enter();
+                        try {
+                            return super.read(b, off, len);
+                        } finally {
+                            exit();
+                        }
+                    }
+                };
+            }
+            return body;
+        }
+
+        private void enter() throws IOException {
+            synchronized (handoff) {
+                checkExpired();
+                reader = Thread.currentThread();
+            }
+        }
+
+        private void exit() throws IOException {
+            synchronized (handoff) {
+                reader = null;
+                if (interrupted) {
+                    interrupted = false;
+                    Thread.interrupted(); // ours, don't leak it to the caller
+                }
+            }
+            checkExpired();
+        }
+
+        private void checkExpired() throws IOException {
+            if (expired) {
+                throw new IOException("Overall timeout of " + timeout.toSeconds() + "s exceeded for " + request.getURI());
+            }
+        }
+
+        @Override
+        public void close() {
+            expiry.cancel(false);
+            delegate.close();
+        }
+    }
+}
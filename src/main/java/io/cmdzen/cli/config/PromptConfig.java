@@ -0,0 +1,37 @@
+package io.cmdzen.cli.config;
+
+import io.cmdzen.cli.model.OutputWindow;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.prompt")
+public class PromptConfig {
+
+    /** Token budget for the captured output section when the model has no entry below. */
+    private int tokenBudget = 6000;
+    /** Per-model budgets, e.g. {@code cmdzen.prompt.model-budgets[openai/gpt-4o-mini]=24000}. */
+    private Map<String, Integer> modelBudgets = new HashMap<>();
+    /** Longest single line kept verbatim; longer lines are cut in the middle. */
+    private int maxLineLength = 1000;
+    /** Bytes read from the start of a captured output; the middle of larger captures is skipped. */
+    private int outputHeadBytes = OutputWindow.DEFAULT_HEAD_BYTES;
+    /** Bytes read from the end of a captured output, where the error usually is. */
+    private int outputTailBytes = OutputWindow.DEFAULT_TAIL_BYTES;
+
+    public int budgetFor(String model) {
+        if (model != null) {
+            Integer budget = modelBudgets.get(model);
+            if (budget != null) return budget;
+        }
+        return tokenBudget;
+    }
+
+}
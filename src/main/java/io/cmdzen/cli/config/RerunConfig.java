@@ -0,0 +1,25 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.rerun")
+public class RerunConfig {
+
+    /** A re-run command and everything it started is killed after this long. */
+    private Duration timeout = Duration.ofSeconds(60);
+    /** Time between asking the processes to stop and killing them. */
+    private Duration killGrace = Duration.ofSeconds(2);
+    /** Bytes kept per stream; only the end of longer output is kept. */
+    private int maxOutputBytes = 256 * 1024;
+    /** Echo the command's output while it runs. */
+    private boolean passthrough = true;
+
+}
@@ -0,0 +1,29 @@
+package io.cmdzen.cli.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cmdzen.speculation")
+public class SpeculationConfig {
+
+    /** Whether 'cmdzen speculate' does anything; the hooks only call it when CMDZEN_SPECULATE=1. */
+    private boolean enabled = true;
+    /** At most this many speculative requests per {@code window}, across all shells. */
+    private int maxRequests = 5;
+    private Duration window = Duration.ofMinutes(10);
+    /** How long 'solve' waits for a speculative request still in flight. */
+    private Duration joinTimeout = Duration.ofSeconds(60);
+    /** Exit codes not worth a request: Ctrl-C, SIGPIPE and Ctrl-Z. */
+    private Set<Integer> ignoredExitCodes = new HashSet<>(List.of(130, 141, 148));
+
+}
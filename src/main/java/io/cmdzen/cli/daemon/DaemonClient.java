@@ -0,0 +1,247 @@
+package io.cmdzen.cli.daemon;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Thin client that forwards a cmdzen invocation to the resident daemon.
+ * <p>
+ * Runs from {@code main} before any Spring infrastructure exists, so it only uses the JDK.
+ * When {@code CMDZEN_DAEMON=1} and no daemon is listening yet, it starts one in the
+ * background and lets the current invocation run in-process; later invocations then skip
+ * the Spring Boot start-up entirely.
+ */
+public final class DaemonClient {
+
+    private static final Set<String> TRUE = Set.of("1", "true", "yes", "on");
+    private static final String MAIN_CLASS = "io.cmdzen.cli.CmdzenCliApplication";
+
+    private DaemonClient() {
+    }
+
+    public static boolean shouldForward(String[] args) {
+        String flag = System.getenv("CMDZEN_DAEMON");
+        return flag != null && TRUE.contains(flag.trim().toLowerCase())
+                && System.getenv("CMDZEN_DAEMON_CHILD") == null
+                && args.length > 0
+                && !args[0].equals("daemon");
+    }
+
+    /**
+     * Runs the command in the daemon and returns its exit code, or {@code null} if no daemon
+     * could be reached and the caller should run the command itself.
+     */
+    public static Integer run(String[] args) {
+        Path socket = CmdzenPaths.daemonSocket();
+        SocketChannel channel = connect(socket);
+        if (channel == null) {
+            spawnDaemon();
+            return null;
+        }
+
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(DaemonProtocol.outputStream(channel)));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(DaemonProtocol.inputStream(channel)));
+
+            try {
+                DaemonProtocol.writeRequest(out, new DaemonProtocol.Request(
+                        List.of(args),
+                        System.getenv(),
+                        Path.of("").toAbsolutePath().toString(),
+                        System.console() != null));
+                if (in.readByte() != DaemonProtocol.ACCEPTED) {
+                    return null; // the daemon was started with other provider settings
+                }
+                in.readInt();
+            } catch (IOException e) {
+                // nothing ran yet, so the caller can still run the command itself
+                return null;
+            }
+            // from here on the command may have run, relayed output or consumed stdin: never repeat it
+            try {
+                forwardStdin(out, List.of(args).contains("-"));
+                return relayOutput(in);
+            } catch (IOException e) {
+                System.err.println("cmdzen: lost the connection to the daemon: " + e.getMessage());
+                return 1;
+            }
+        } catch (IOException e) {
+            return 1; // closing the channel failed after the command ran
+        }
+    }
+
+    public static boolean stop() {
+        SocketChannel channel = connect(CmdzenPaths.daemonSocket());
+        if (channel == null) return false;
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(DaemonProtocol.outputStream(channel));
+            DaemonProtocol.writeRequest(out, new DaemonProtocol.Request(
+                    List.of(DaemonProtocol.STOP), System.getenv(), "", false));
+            new DataInputStream(DaemonProtocol.inputStream(channel)).read();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Connects to the daemon socket, or returns null when nothing listens there or the
+     * socket isn't private to this user (see {@link DaemonSecurity}).
+     */
+    static SocketChannel connect(Path socket) {
+        if (!Files.exists(socket)) return null;
+        try {
+            DaemonSecurity.requirePrivateDirectory(socket.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            System.err.println("cmdzen: not using the daemon: " + e.getMessage());
+            return null;
+        }
+        try {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+            } catch (IOException e) {
+                channel.close();
+                return null;
+            }
+            try {
+                DaemonSecurity.requireSameUser(channel);
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                System.err.println("cmdzen: not using the daemon: " + e.getMessage());
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stdin is only streamed when an argument asks for it ({@code -}); otherwise the daemon
+     * gets an immediate end-of-input so it never waits on the user's terminal.
+     */
+    private static void forwardStdin(DataOutputStream out, boolean wanted) throws IOException {
+        if (!wanted) {
+            synchronized (out) {
+                out.writeByte(DaemonProtocol.STDIN_EOF);
+                out.writeInt(0);
+                out.flush();
+            }
+            return;
+        }
+        Thread.ofVirtual().start(() -> {
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                InputStream stdin = System.in;
+                int n;
+                while ((n = stdin.read(buffer)) > 0) {
+                    synchronized (out) {
+                        DaemonProtocol.writeFrame(out, DaemonProtocol.STDIN, buffer, 0, n);
+                        out.flush();
+                    }
+                }
+                synchronized (out) {
+                    out.writeByte(DaemonProtocol.STDIN_EOF);
+                    out.writeInt(0);
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // daemon finished before stdin was drained
+            }
+        });
+    }
+
+    private static int relayOutput(DataInputStream in) throws IOException {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        while (true) {
+            byte tag;
+            try {
+                tag = in.readByte();
+            } catch (EOFException e) {
+                throw new IOException("Daemon closed the connection", e);
+            }
+            if (tag == DaemonProtocol.EXIT) {
+                stdout.flush();
+                stderr.flush();
+                return in.readInt();
+            }
+            int length = in.readInt();
+            byte[] data = in.readNBytes(length);
+            PrintStream target = tag == DaemonProtocol.STDERR ? stderr : stdout;
+            target.write(data, 0, data.length);
+            target.flush();
+        }
+    }
+
+    /**
+     * Starts {@code cmdzen daemon} detached from this terminal, re-using how the current
+     * process was launched (native binary, {@code java -jar} or a plain class path).
+     */
+    private static void spawnDaemon() {
+        List<String> command = new ArrayList<>();
+        for (String setsid : List.of("/usr/bin/setsid", "/bin/setsid")) {
+            if (new File(setsid).canExecute()) {
+                command.add(setsid);
+                break;
+            }
+        }
+        String executable = ProcessHandle.current().info().command().orElse(null);
+        if (executable == null) return;
+        command.add(executable);
+
+        if (System.getProperty("org.graalvm.nativeimage.imagecode") == null) {
+            for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                // the daemon is long-lived: let it use the full JIT, and never re-run CDS training
+                if (!jvmArg.startsWith("-XX:TieredStopAtLevel") && !jvmArg.startsWith("-XX:ArchiveClassesAtExit")
+                        && !jvmArg.startsWith("-XX:AOTMode") && !jvmArg.startsWith("-Dspring.context.exit")) {
+                    command.add(jvmArg);
+                }
+            }
+            String classPath = System.getProperty("java.class.path");
+            if (classPath.endsWith(".jar") && !classPath.contains(File.pathSeparator)) {
+                command.add("-jar");
+                command.add(classPath);
+            } else {
+                command.add("-cp");
+                command.add(classPath);
+                command.add(MAIN_CLASS);
+            }
+        }
+        command.add("daemon");
+
+        try {
+            Path runtimeDir = CmdzenPaths.runtimeDir();
+            Files.createDirectories(runtimeDir,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.environment().put("CMDZEN_DAEMON_CHILD", "1");
+            pb.redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")));
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            pb.redirectError(ProcessBuilder.Redirect.appendTo(runtimeDir.resolve("daemon.err").toFile()));
+            pb.start();
+        } catch (IOException e) {
+            // not fatal: this invocation runs in-process regardless
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.cmdzen.cli.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format between {@link DaemonClient} and {@link DaemonServer}.
+ * <p>
+ * The client sends one request (magic, argv, environment, working directory, tty flag). The
+ * daemon either accepts it or refuses it, in which case the client runs the command itself.
+ * After an accept the client sends optional stdin frames, and the daemon answers with
+ * stdout/stderr frames and finishes with an exit frame. Every frame is a tag byte followed
+ * by a length-prefixed payload.
+ */
+final class DaemonProtocol {
+
+    static final int MAGIC = 0x435A4432; // "CZD2"
+
+    static final byte STDIN = 'I';
+    static final byte STDIN_EOF = 'C';
+    static final byte STDOUT = 'O';
+    static final byte STDERR = 'E';
+    static final byte EXIT = 'X';
+    static final byte ACCEPTED = 'A';
+    static final byte REFUSED = 'R';
+
+    /** argv[0] the daemon treats as a shutdown request rather than a command. */
+    static final String STOP = "__cmdzen_daemon_stop__";
+
+    private DaemonProtocol() {
+    }
+
+    record Request(List<String> args, Map<String, String> env, String workingDirectory, boolean tty) {
+    }
+
+    static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(request.args().size());
+        for (String arg : request.args()) {
+            writeString(out, arg);
+        }
+        out.writeInt(request.env().size());
+        for (Map.Entry<String, String> e : request.env().entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+        writeString(out, request.workingDirectory());
+        out.writeBoolean(request.tty());
+        out.flush();
+    }
+
+    static Request readRequest(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cmdzen client");
+        }
+        int argc = in.readInt();
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = readString(in);
+        }
+        int envc = in.readInt();
+        Map<String, String> env = new LinkedHashMap<>();
+        for (int i = 0; i < envc; i++) {
+            env.put(readString(in), readString(in));
+        }
+        String cwd = readString(in);
+        boolean tty = in.readBoolean();
+        return new Request(List.of(args), env, cwd, tty);
+    }
+
+    static void writeFrame(DataOutputStream out, byte tag, byte[] data, int off, int len) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(len);
+        out.write(data, off, len);
+    }
+
+    /**
+     * Stream over a socket channel that, unlike {@code Channels.newInputStream}, doesn't hold the
+     * channel's blocking lock while reading, so another thread can write at the same time.
+     */
+    static InputStream inputStream(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    static OutputStream outputStream(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 16 * 1024 * 1024) {
+            throw new IOException("Bad string length " + length);
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+package io.cmdzen.cli.daemon;
+
+import jdk.net.ExtendedSocketOptions;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+/**
+ * Checks that the daemon socket can only be reached by the current user.
+ * <p>
+ * Requests carry the client's whole environment, API keys included, so neither side may talk
+ * to a socket another user could have planted: without {@code XDG_RUNTIME_DIR} the socket
+ * directory lives in the shared temp directory. The directory must be a real directory
+ * owned by this user with mode 0700, and the process at the other end of each connection
+ * must run as this user.
+ */
+final class DaemonSecurity {
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private DaemonSecurity() {
+    }
+
+    static void requirePrivateDirectory(Path directory) throws IOException {
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory()) {
+            throw new IOException(directory + " is not a directory");
+        }
+        if (!attributes.owner().equals(currentUser())) {
+            throw new IOException(directory + " is owned by " + attributes.owner().getName());
+        }
+        if (!attributes.permissions().equals(OWNER_ONLY)) {
+            throw new IOException(directory + " has mode "
+                    + PosixFilePermissions.toString(attributes.permissions()) + ", expected rwx------");
+        }
+    }
+
+    static void requireSameUser(SocketChannel channel) throws IOException {
+        UserPrincipal peer = channel.getOption(ExtendedSocketOptions.SO_PEERCRED).user();
+        if (!peer.equals(currentUser())) {
+            throw new IOException("the other end of the daemon socket runs as " + peer.getName());
+        }
+    }
+
+    private static UserPrincipal currentUser() throws IOException {
+        return FileSystems.getDefault().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+    }
+}
@@ -0,0 +1,334 @@
+package io.cmdzen.cli.daemon;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.config.DaemonConfig;
+import io.cmdzen.cli.services.MetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.jline.terminal.Terminal;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.shell.Utils;
+import org.springframework.shell.command.CommandCatalog;
+import org.springframework.shell.command.CommandExecution;
+import org.springframework.shell.context.ShellContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived cmdzen process that keeps the Spring context, HTTP connections and in-memory
+ * caches warm and runs commands on behalf of {@link DaemonClient}s over an AF_UNIX socket.
+ * Each client is served on its own virtual thread; the daemon exits after being idle for
+ * {@code cmdzen.daemon.idle-timeout}.
+ * <p>
+ * Provider endpoints, keys and proxies are bound from the environment the daemon was started
+ * in. A client whose environment sets them differently is refused and runs the command
+ * itself, so a shell never silently talks to another shell's provider.
+ */
+@Slf4j
+@Component
+public class DaemonServer {
+
+    private static final List<String> PROVIDER_VARIABLES = List.of(
+            "OCEAN_AGENT_URL", "OCEAN_AGENT_KEY",
+            "OPENROUTER_API_KEY", "OPENROUTER_ENDPOINT", "OPENROUTER_MODEL",
+            "CMDZEN_LOCAL_AI_URL", "CMDZEN_LOCAL_AI_MODEL",
+            "HTTPS_PROXY", "https_proxy", "NO_PROXY", "no_proxy");
+
+    private final DaemonConfig config;
+    private final CommandCatalog commandCatalog;
+    private final CommandExecution.CommandExecutionHandlerMethodArgumentResolvers argumentResolvers;
+    private final Terminal terminal;
+    private final ShellContext shellContext;
+    private final MetricsService metrics;
+    private final Map<String, String> providerSettings = providerSettings(System.getenv());
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong lastActivity = new AtomicLong(System.currentTimeMillis());
+    private volatile ServerSocketChannel server;
+
+    public DaemonServer(DaemonConfig config,
+                        CommandCatalog commandCatalog,
+                        CommandExecution.CommandExecutionHandlerMethodArgumentResolvers argumentResolvers,
+                        Terminal terminal,
+                        ShellContext shellContext,
+                        MetricsService metrics) {
+        this.config = config;
+        this.commandCatalog = commandCatalog;
+        this.argumentResolvers = argumentResolvers;
+        this.terminal = terminal;
+        this.shellContext = shellContext;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Serves clients until idle or stopped. Returns immediately if another daemon already
+     * owns the socket.
+     */
+    public void serve() throws IOException {
+        Path socket = CmdzenPaths.daemonSocket();
+        Files.createDirectories(socket.toAbsolutePath().getParent(),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        // the directory may have been created by someone else, before us
+        DaemonSecurity.requirePrivateDirectory(socket.toAbsolutePath().getParent());
+
+        if (Files.exists(socket)) {
+            SocketChannel existing = DaemonClient.connect(socket);
+            if (existing != null) {
+                existing.close();
+                log.info("A cmdzen daemon is already listening on {}", socket);
+                return;
+            }
+            Files.deleteIfExists(socket); // left behind by a daemon that was killed
+        }
+
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        Semaphore slots = new Semaphore(config.getMaxConcurrentClients());
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socket));
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            server = channel;
+            System.setOut(new RoutingPrintStream(originalOut, RequestContext.Session::out));
+            System.setErr(new RoutingPrintStream(originalErr, RequestContext.Session::err));
+            log.info("cmdzen daemon listening on {}", socket);
+
+            Thread.ofVirtual().name("cmdzen-daemon-idle").start(this::watchIdle);
+            while (channel.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (AsynchronousCloseException e) {
+                    break;
+                }
+                lastActivity.set(System.currentTimeMillis());
+                Thread.ofVirtual().name("cmdzen-daemon-client").start(() -> {
+                    slots.acquireUninterruptibly();
+                    active.incrementAndGet();
+                    try {
+                        handle(client);
+                    } finally {
+                        active.decrementAndGet();
+                        lastActivity.set(System.currentTimeMillis());
+                        slots.release();
+                    }
+                });
+            }
+        } finally {
+            server = null;
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+            Files.deleteIfExists(socket);
+            log.info("cmdzen daemon stopped");
+        }
+    }
+
+    public void stop() {
+        ServerSocketChannel channel = server;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing daemon socket: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void watchIdle() {
+        long idleMillis = config.getIdleTimeout().toMillis();
+        while (server != null) {
+            try {
+                Thread.sleep(Math.min(idleMillis, 10_000));
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (active.get() == 0 && System.currentTimeMillis() - lastActivity.get() > idleMillis) {
+                log.info("Idle for {}, shutting down", config.getIdleTimeout());
+                stop();
+                return;
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        Thread worker = Thread.currentThread();
+        try (client) {
+            try {
+                DaemonSecurity.requireSameUser(client);
+            } catch (IOException e) {
+                log.warn("Rejecting daemon client: {}", e.getMessage());
+                return;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(DaemonProtocol.inputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(DaemonProtocol.outputStream(client)));
+            DaemonProtocol.Request request = DaemonProtocol.readRequest(in);
+
+            if (!request.args().isEmpty() && request.args().get(0).equals(DaemonProtocol.STOP)) {
+                writeExit(out, 0);
+                stop();
+                return;
+            }
+            if (!providerSettings(request.env()).equals(providerSettings)) {
+                log.info("Refusing a client whose provider settings differ from the daemon's");
+                writeReply(out, DaemonProtocol.REFUSED);
+                return;
+            }
+            writeReply(out, DaemonProtocol.ACCEPTED);
+
+            PipedInputStream stdin = new PipedInputStream(64 * 1024);
+            PipedOutputStream stdinSink = new PipedOutputStream(stdin);
+            PrintStream stdout = new PrintStream(new FrameStream(out, DaemonProtocol.STDOUT), true, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new FrameStream(out, DaemonProtocol.STDERR), true, StandardCharsets.UTF_8);
+            AtomicBoolean finished = new AtomicBoolean();
+            Thread.ofVirtual().start(() -> pumpClient(in, stdinSink, worker, finished));
+
+            RequestContext.open(new RequestContext.Session(request.env(),
+                    Path.of(request.workingDirectory()), request.tty(), stdout, stderr, stdin));
+            int exitCode;
+            try {
+                log.debug("Daemon running {}", request.args());
+                exitCode = execute(request.args().toArray(new String[0]));
+            } finally {
+                finished.set(true);
+                RequestContext.close();
+                stdout.flush();
+                stderr.flush();
+            }
+            Thread.interrupted(); // a cancel may have raced with the command finishing
+            writeExit(out, exitCode);
+        } catch (IOException e) {
+            log.debug("Client connection ended: {}", e.getMessage());
+        } finally {
+            // the daemon outlives many requests, so persist after each one rather than on shutdown
+            metrics.flush();
+        }
+    }
+
+    /**
+     * Reads stdin frames from the client. A vanished client (Ctrl-C on the thin client)
+     * interrupts the worker so in-flight HTTP calls and re-runs are abandoned.
+     */
+    private void pumpClient(DataInputStream in, PipedOutputStream stdinSink, Thread worker, AtomicBoolean finished) {
+        try (stdinSink) {
+            boolean stdinOpen = true;
+            while (true) {
+                byte tag = in.readByte();
+                int length = in.readInt();
+                byte[] data = in.readNBytes(length);
+                if (tag == DaemonProtocol.STDIN && stdinOpen) {
+                    stdinSink.write(data);
+                    stdinSink.flush();
+                } else if (tag == DaemonProtocol.STDIN_EOF && stdinOpen) {
+                    stdinSink.close();
+                    stdinOpen = false;
+                }
+            }
+        } catch (IOException e) {
+            if (!finished.get()) {
+                log.debug("Client disconnected, cancelling its command");
+                worker.interrupt();
+            }
+        }
+    }
+
+    private int execute(String[] args) {
+        CommandExecution execution = CommandExecution.of(argumentResolvers.getResolvers(), Utils.defaultValidator(),
+                terminal, shellContext, DefaultConversionService.getSharedInstance(), commandCatalog);
+        try {
+            Object result = execution.evaluate(args);
+            if (result != null) {
+                System.out.println(result);
+            }
+            return 0;
+        } catch (Exception e) {
+            log.debug("Command {} failed in daemon", String.join(" ", args), e);
+            System.err.println(e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * The environment variables the provider and HTTP settings are bound from (see
+     * application.properties), plus any relaxed-binding override of {@code cmdzen.ai.*} or
+     * {@code cmdzen.http.*}.
+     */
+    private static Map<String, String> providerSettings(Map<String, String> env) {
+        Map<String, String> settings = new TreeMap<>();
+        env.forEach((name, value) -> {
+            if (PROVIDER_VARIABLES.contains(name) || name.startsWith("CMDZEN_AI_") || name.startsWith("CMDZEN_HTTP_")) {
+                settings.put(name, value);
+            }
+        });
+        return settings;
+    }
+
+    private static void writeReply(DataOutputStream out, byte tag) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(0);
+        out.flush();
+    }
+
+    private void writeExit(DataOutputStream out, int exitCode) throws IOException {
+        synchronized (out) {
+            out.writeByte(DaemonProtocol.EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * Turns writes into length-prefixed frames on the shared client connection.
+     */
+    private static final class FrameStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte tag;
+
+        FrameStream(DataOutputStream out, byte tag) {
+            this.out = out;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                DaemonProtocol.writeFrame(out, tag, b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.cmdzen.cli.daemon;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The calling shell's view of the world for the command currently running on this thread.
+ * <p>
+ * In a normal CLI run there is no session and everything falls through to the process's own
+ * environment, working directory and standard streams. Inside the daemon each client request
+ * installs a session, so code that asks for {@code SHELL}, {@code CMDZEN_SHELL_PID} or the
+ * working directory sees the client's values rather than the daemon's. The session is
+ * inheritable so virtual threads forked while serving a request see it too.
+ */
+public final class RequestContext {
+
+    private static final InheritableThreadLocal<Session> current = new InheritableThreadLocal<>();
+
+    private RequestContext() {
+    }
+
+    record Session(Map<String, String> env, Path workingDirectory, boolean tty,
+                   PrintStream out, PrintStream err, InputStream in) {
+    }
+
+    static void open(Session session) {
+        current.set(session);
+    }
+
+    static void close() {
+        current.remove();
+    }
+
+    static Session session() {
+        return current.get();
+    }
+
+    public static boolean isDaemonRequest() {
+        return current.get() != null;
+    }
+
+    public static String getenv(String name) {
+        Session session = current.get();
+        return session != null ? session.env().get(name) : System.getenv(name);
+    }
+
+    public static Map<String, String> environment() {
+        Session session = current.get();
+        return session != null ? session.env() : System.getenv();
+    }
+
+    public static Path workingDirectory() {
+        Session session = current.get();
+        return session != null ? session.workingDirectory() : Path.of("").toAbsolutePath();
+    }
+
+    /**
+     * Whether the user's stdout is a terminal (as opposed to a pipe or file).
+     */
+    public static boolean isInteractive() {
+        Session session = current.get();
+        return session != null ? session.tty() : System.console() != null;
+    }
+
+    public static InputStream stdin() {
+        Session session = current.get();
+        return session != null ? session.in() : System.in;
+    }
+}
@@ -0,0 +1,48 @@
+package io.cmdzen.cli.daemon;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Installed as {@code System.out}/{@code System.err} in the daemon: writes go to the stream of
+ * the client being served on the current thread, or to the daemon's own stream otherwise.
+ * Commands keep using plain {@code System.out.println}.
+ */
+final class RoutingPrintStream extends PrintStream {
+
+    RoutingPrintStream(PrintStream fallback, Function<RequestContext.Session, PrintStream> selector) {
+        super(new OutputStream() {
+            private OutputStream target() {
+                RequestContext.Session session = RequestContext.session();
+                return session != null ? selector.apply(session) : fallback;
+            }
+
+            @Override
+            public void write(int b) {
+                try {
+                    target().write(b);
+                } catch (java.io.IOException ignored) {
+                    // client went away; the request is being cancelled anyway
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                try {
+                    target().write(b, off, len);
+                } catch (java.io.IOException ignored) {
+                }
+            }
+
+            @Override
+            public void flush() {
+                try {
+                    target().flush();
+                } catch (java.io.IOException ignored) {
+                }
+            }
+        }, true, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,22 @@
+package io.cmdzen.cli.exceptions;
+
+import java.time.Duration;
+
+/**
+ * The AI provider refused a request because of rate limiting (HTTP 429, or 503 with a
+ * {@code Retry-After}).
+ */
+public class RateLimitedException extends RuntimeException {
+
+    // null when the provider didn't say
+    private final Duration retryAfter;
+
+    public RateLimitedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,18 @@
+package io.cmdzen.cli.model;
+
+import lombok.Data;
+
+/**
+ * One line of {@code solve --batch} input.
+ */
+@Data
+public class BatchFailure {
+    /** Caller's identifier, echoed in the result; the line number when absent. */
+    private String id;
+    private String command;
+    /** Every line is a failure, so 1 when absent rather than a successful 0. */
+    private int exitCode = 1;
+    private String output;
+    /** Overrides the question given on the command line. */
+    private String question;
+}
@@ -0,0 +1,23 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One line of {@code solve --batch} output.
+ */
+@Getter
+@AllArgsConstructor
+public class BatchResult {
+
+    public enum Status { ANSWERED, CACHED, OFFLINE, ERROR }
+
+    private final String id;
+    private final String command;
+    private final int exitCode;
+    private final Status status;
+    private final String answer;
+    private final String error;
+    private final int attempts;
+    private final long latencyMillis;
+}
@@ -0,0 +1,270 @@
+package io.cmdzen.cli.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A failed command as captured by the shell integration: the output, followed by the
+ * {@code EXIT_CODE:} / {@code COMMAND:} / {@code TIMESTAMP:} trailer the hooks append.
+ * <p>
+ * {@link #read(Path)} only reads the last few KB of the file to parse the trailer.
+ * {@link #window(int, int)} reads a bounded head and tail of the output; only
+ * {@link #getOutput()} loads the whole body, on its first call.
+ */
+@Getter
+public class CapturedRun {
+
+    public static final String START_MARKER = "__CMDZEN_CMD_START__";
+    public static final String EXIT_CODE = "EXIT_CODE:";
+    public static final String COMMAND = "COMMAND:";
+    public static final String TIMESTAMP = "TIMESTAMP:";
+
+    private static final int TRAILER_WINDOW = 8 * 1024;
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+
+    private final Path file;
+    private final long size;
+    private final String command;
+    private final int exitCode;
+    private final String timestamp;
+    // bytes before the trailer
+    private final long bodyLength;
+
+    @Getter(AccessLevel.NONE)
+    private String output;
+
+    private CapturedRun(Path file, long size, String command, int exitCode, String timestamp, long bodyLength) {
+        this.file = file;
+        this.size = size;
+        this.command = command;
+        this.exitCode = exitCode;
+        this.timestamp = timestamp;
+        this.bodyLength = bodyLength;
+    }
+
+    public static CapturedRun read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int window = (int) Math.min(size, TRAILER_WINDOW);
+            long windowStart = size - window;
+            return parse(file, readFully(channel, windowStart, window), windowStart, size);
+        }
+    }
+
+    /**
+     * A run held in memory, such as one loaded back from the failure store.
+     */
+    public static CapturedRun of(byte[] content) {
+        CapturedRun run = parse(null, content, 0, content.length);
+        run.output = stripMetadata(new String(content, 0, (int) run.bodyLength, StandardCharsets.UTF_8));
+        return run;
+    }
+
+    private static CapturedRun parse(Path file, byte[] tail, long windowStart, long size) {
+        String command = null;
+        String exitCode = null;
+        String timestamp = null;
+        long bodyLength = size;
+        boolean inTrailer = true;
+
+        int end = tail.length;
+        if (end > 0 && tail[end - 1] == '\n') end--;
+        while (end >= 0) {
+            int start = end - 1;
+            while (start >= 0 && tail[start] != '\n') start--;
+            start++;
+            if (start == 0 && windowStart > 0) break; // possibly a partial line
+            String line = new String(tail, start, end - start, StandardCharsets.UTF_8).strip();
+
+            if (line.startsWith(COMMAND) && command == null) {
+                command = line.substring(COMMAND.length()).trim();
+            } else if (line.startsWith(EXIT_CODE) && exitCode == null) {
+                exitCode = line.substring(EXIT_CODE.length()).trim();
+            } else if (line.startsWith(TIMESTAMP) && timestamp == null) {
+                timestamp = line.substring(TIMESTAMP.length()).trim();
+            } else if (!line.isEmpty()) {
+                inTrailer = false;
+            }
+            if (inTrailer) {
+                bodyLength = windowStart + start;
+            }
+            if (command != null && exitCode != null && timestamp != null) break;
+            end = start - 1;
+        }
+        return new CapturedRun(file, size, command, parseExitCode(exitCode), timestamp, bodyLength);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The first {@code headBytes} and last {@code tailBytes} of the output, cut at line
+     * boundaries, without the metadata lines. Memory use doesn't depend on the file size;
+     * counting the lines scans the file through a memory mapping.
+     */
+    public OutputWindow window(int headBytes, int tailBytes) {
+        if (file == null) {
+            return windowOf(getOutput().getBytes(StandardCharsets.UTF_8), headBytes, tailBytes);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = Math.min(bodyLength, channel.size());
+            if (length <= (long) headBytes + tailBytes) {
+                return windowOf(readFully(channel, 0, (int) length), headBytes, tailBytes);
+            }
+            byte[] head = readFully(channel, 0, headBytes);
+            byte[] tail = readFully(channel, length - tailBytes, tailBytes);
+            int headEnd = lastLineEnd(head, 0, head.length);
+            int tailStart = firstLineStart(tail, 0, tail.length);
+            long omittedBytes = length - headEnd - (tail.length - tailStart);
+            long lines = countLines(channel, length);
+            long omittedLines = lines - countLines(head, 0, headEnd) - countLines(tail, tailStart, tail.length);
+            return new OutputWindow(text(head, 0, headEnd), text(tail, tailStart, tail.length), length, lines,
+                    omittedBytes, Math.max(0, omittedLines));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read captured output from " + file, e);
+        }
+    }
+
+    private static OutputWindow windowOf(byte[] body, int headBytes, int tailBytes) {
+        long lines = countLines(body, 0, body.length);
+        if (body.length <= (long) headBytes + tailBytes) {
+            return new OutputWindow(text(body, 0, body.length), "", body.length, lines, 0, 0);
+        }
+        int headEnd = lastLineEnd(body, 0, headBytes);
+        int tailStart = firstLineStart(body, body.length - tailBytes, body.length);
+        return new OutputWindow(text(body, 0, headEnd), text(body, tailStart, body.length), body.length, lines,
+                tailStart - headEnd, Math.max(0, countLines(body, headEnd, tailStart)));
+    }
+
+    // end of the last complete line, or the whole window if it is one long line
+    private static int lastLineEnd(byte[] bytes, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (bytes[i] == '\n') return i + 1;
+        }
+        return charEnd(bytes, from, to);
+    }
+
+    // start of the first complete line, or the whole window if it is one long line
+    private static int firstLineStart(byte[] bytes, int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            if (bytes[i] == '\n') return i + 1;
+        }
+        return charStart(bytes, from, to);
+    }
+
+    // backs off from a cut through a multi-byte UTF-8 character
+    private static int charEnd(byte[] bytes, int from, int to) {
+        int lead = to - 1;
+        while (lead > from && (bytes[lead] & 0xC0) == 0x80) lead--;
+        if (lead < from) return to;
+        int b = bytes[lead] & 0xFF;
+        int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return lead + length > to ? lead : to;
+    }
+
+    // skips the continuation bytes of a character cut at the start
+    private static int charStart(byte[] bytes, int from, int to) {
+        while (from < to && (bytes[from] & 0xC0) == 0x80) from++;
+        return from;
+    }
+
+    private static String text(byte[] bytes, int from, int to) {
+        return stripMetadata(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    private static long countLines(byte[] bytes, int from, int to) {
+        long lines = 0;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') lines++;
+        }
+        return to > from && bytes[to - 1] != '\n' ? lines + 1 : lines;
+    }
+
+    private static long countLines(FileChannel channel, long length) throws IOException {
+        long lines = 0;
+        for (long position = 0; position < length; position += MAP_CHUNK) {
+            long size = Math.min(MAP_CHUNK, length - position);
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            for (int i = 0; i < size; i++) {
+                if (chunk.get(i) == '\n') lines++;
+            }
+        }
+        if (length > 0 && readFully(channel, length - 1, 1)[0] != '\n') lines++;
+        return lines;
+    }
+
+    /**
+     * The whole captured output without the start marker and metadata lines. Prefer
+     * {@link #window(int, int)} unless the complete output is really needed.
+     */
+    public synchronized String getOutput() {
+        if (output == null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                int length = (int) Math.min(bodyLength, Math.min(channel.size(), Integer.MAX_VALUE - 8));
+                output = stripMetadata(new String(readFully(channel, 0, length), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read captured output from " + file, e);
+            }
+        }
+        return output;
+    }
+
+    public static boolean isMetadata(String line) {
+        return line.startsWith(START_MARKER)
+                || line.startsWith(EXIT_CODE)
+                || line.startsWith(COMMAND)
+                || line.startsWith(TIMESTAMP);
+    }
+
+    static String stripMetadata(String captured) {
+        StringBuilder sb = null;
+        int keepFrom = 0;
+        int from = 0;
+        while (from < captured.length()) {
+            int newline = captured.indexOf('\n', from);
+            int to = newline < 0 ? captured.length() : newline + 1;
+            if (captured.startsWith(START_MARKER, from)
+                    || captured.startsWith(EXIT_CODE, from)
+                    || captured.startsWith(COMMAND, from)
+                    || captured.startsWith(TIMESTAMP, from)) {
+                // copy kept lines in runs; usually only the start marker is dropped
+                if (sb == null) sb = new StringBuilder(captured.length());
+                sb.append(captured, keepFrom, from);
+                keepFrom = to;
+            }
+            from = to;
+        }
+        if (sb == null) return captured.stripTrailing();
+        return sb.append(captured, keepFrom, captured.length()).toString().stripTrailing();
+    }
+
+    private static int parseExitCode(String value) {
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Capture file shrank while reading");
+            }
+        }
+        return buffer.array();
+    }
+}
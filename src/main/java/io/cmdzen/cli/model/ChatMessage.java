@@ -0,0 +1,28 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One turn of a chat completions conversation.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessage {
+
+    public static final String USER = "user";
+    public static final String ASSISTANT = "assistant";
+
+    private String role;
+    private String content;
+
+    public static ChatMessage user(String content) {
+        return new ChatMessage(USER, content);
+    }
+
+    public static ChatMessage assistant(String content) {
+        return new ChatMessage(ASSISTANT, content);
+    }
+}
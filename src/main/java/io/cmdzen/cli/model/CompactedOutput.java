@@ -0,0 +1,27 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class CompactedOutput {
+    private final String text;
+    private final long originalLines;
+    private final long originalChars;
+    private final long droppedLines;
+    private final long droppedChars;
+    private final long collapsedLines;
+
+    public boolean isCompacted() {
+        return droppedLines > 0 || collapsedLines > 0;
+    }
+
+    /**
+     * One-line note for the prompt so the model knows it's looking at an excerpt.
+     */
+    public String summary() {
+        return "[output compacted: " + originalLines + " lines / ~" + originalChars / 4 + " tokens, "
+                + droppedLines + " lines omitted, " + collapsedLines + " repeated lines collapsed]";
+    }
+}
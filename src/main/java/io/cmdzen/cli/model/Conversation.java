@@ -0,0 +1,20 @@
+package io.cmdzen.cli.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A shell's ongoing {@code solve} conversation, continued by {@code solve --follow-up}.
+ * The first two messages (the failure prompt and its answer) never change, so every later
+ * request starts with the same bytes and providers can reuse their cached prefix.
+ */
+@Data
+public class Conversation {
+    private String command;
+    /** TIMESTAMP of the captured run already discussed, so a follow-up only adds newer failures. */
+    private String captureTimestamp;
+    private long updated;
+    private List<ChatMessage> messages = new ArrayList<>();
+}
@@ -0,0 +1,92 @@
+package io.cmdzen.cli.model;
+
+import io.cmdzen.cli.util.CommandLines;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * One entry of the offline knowledge base. A rule applies when every non-empty
+ * condition holds: the exit code is listed, the command starts with one of the prefixes,
+ * at least one of the (case-insensitive, literal) patterns occurs in the output, and the
+ * program pattern matches the output. An {@link Mode#ANSWER} rule never applies to a
+ * command that exited with 0.
+ */
+@Data
+public class ErrorRule {
+
+    public enum Mode {
+        /** The rule's text is a complete answer; no AI call is needed. */
+        ANSWER,
+        /** The rule's text is a hint added to the AI prompt. */
+        ANNOTATE
+    }
+
+    private String id;
+    private List<Integer> exitCodes = new ArrayList<>();
+    private List<String> commandPrefixes = new ArrayList<>();
+    private List<String> patterns = new ArrayList<>();
+    /**
+     * Case-insensitive regex finding the program the failure is about in the output, e.g. in
+     * the shell's "command not found" line; the first group that matched is {@code {program}}.
+     * A wrapper such as {@code npm run build} or a script can fail for a program it runs.
+     */
+    private String programPattern;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Pattern compiledProgramPattern;
+    private Mode mode = Mode.ANNOTATE;
+    /** Answer or hint; {@code {command}} and {@code {program}} are substituted. */
+    private String text;
+
+    public void setProgramPattern(String programPattern) {
+        this.programPattern = programPattern;
+        this.compiledProgramPattern = null;
+    }
+
+    /**
+     * Compiles {@link #programPattern} so that matching and rendering reuse it.
+     *
+     * @throws PatternSyntaxException if it is not a valid regex
+     */
+    public void compile() {
+        if (programPattern != null && compiledProgramPattern == null) {
+            compiledProgramPattern = Pattern.compile(programPattern, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+        }
+    }
+
+    /**
+     * The program named by {@link #programPattern} in the output, or null if it doesn't match.
+     */
+    public String programIn(String output) {
+        if (programPattern == null || output == null) return null;
+        compile();
+        Matcher matcher = compiledProgramPattern.matcher(output);
+        if (!matcher.find()) return null;
+        for (int group = 1; group <= matcher.groupCount(); group++) {
+            if (matcher.group(group) != null) return matcher.group(group);
+        }
+        return matcher.group();
+    }
+
+    public String render(String command, String output) {
+        String cmd = command == null ? "" : command.trim();
+        String program = programIn(output);
+        if (program == null) {
+            program = Objects.requireNonNullElse(CommandLines.program(cmd), "");
+        }
+        return text.replace("{command}", cmd).replace("{program}", program);
+    }
+}
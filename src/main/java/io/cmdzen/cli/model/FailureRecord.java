@@ -0,0 +1,20 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Index entry of one failure in the {@link io.cmdzen.cli.services.FailureStore}; the
+ * captured output itself lives in the data file at {@code offset}.
+ */
+@Getter
+@AllArgsConstructor
+public class FailureRecord {
+    private final long id;
+    private final long timestamp;
+    private final long shellPid;
+    private final int exitCode;
+    private final String command;
+    private final long offset;
+    private final int length;
+}
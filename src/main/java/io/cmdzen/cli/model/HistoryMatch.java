@@ -0,0 +1,18 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A history entry returned by {@link io.cmdzen.cli.services.HistoryIndexService#search}.
+ */
+@Getter
+@AllArgsConstructor
+public class HistoryMatch {
+    private final String command;
+    // times the command appears in the history
+    private final int count;
+    // number of history entries written since its last use
+    private final long age;
+    private final double score;
+}
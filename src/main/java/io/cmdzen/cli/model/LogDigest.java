@@ -0,0 +1,42 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The top error segments of a log, in log order, as extracted by
+ * {@link io.cmdzen.cli.services.LogSegmentExtractor}.
+ */
+@Getter
+@AllArgsConstructor
+public class LogDigest {
+    private final String source;
+    private final List<LogSegment> segments;
+    private final long bytes;
+    private final long lines;
+    // distinct segments found, of which the best are kept
+    private final int distinctSegments;
+    private final Duration elapsed;
+
+    /**
+     * The segments as the output section of a prompt.
+     */
+    public String toPromptText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[").append(segments.size()).append(" of ").append(distinctSegments)
+                .append(" distinct error segments from ").append(source).append(", ")
+                .append(lines).append(" lines / ").append(bytes).append(" bytes]\n");
+        for (LogSegment segment : segments) {
+            sb.append("\n--- ").append(segment.getKind()).append(", lines ").append(segment.getFirstLine())
+                    .append('-').append(segment.getLastLine());
+            if (segment.getOccurrences() > 1) {
+                sb.append(" (seen ").append(segment.getOccurrences()).append(" times)");
+            }
+            sb.append(" ---\n").append(segment.getText()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One distinct error segment of a build log: the lines that triggered it plus some context.
+ */
+@Getter
+@AllArgsConstructor
+public class LogSegment {
+
+    public enum Kind {
+        ERROR(1),
+        STACK_TRACE(3),
+        TEST_FAILURE(3),
+        COMPILER_ERROR(4),
+        /** CI annotations such as {@code ##[error]} or {@code ::error}. */
+        ERROR_MARKER(5);
+
+        private final int weight;
+
+        Kind(int weight) {
+            this.weight = weight;
+        }
+
+        public int weight() {
+            return weight;
+        }
+    }
+
+    private final Kind kind;
+    // 1-based, of the first occurrence
+    private final long firstLine;
+    private final long lastLine;
+    private final int occurrences;
+    private final double score;
+    private final String text;
+}
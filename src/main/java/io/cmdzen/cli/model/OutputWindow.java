@@ -0,0 +1,38 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Bounded view of a captured output: the first and last few KB plus the size of the whole,
+ * so a runaway capture of hundreds of MB never has to be held in memory.
+ */
+@Getter
+@AllArgsConstructor
+public class OutputWindow {
+
+    public static final int DEFAULT_HEAD_BYTES = 16 * 1024;
+    public static final int DEFAULT_TAIL_BYTES = 64 * 1024;
+
+    private final String head;
+    // empty when the head already covers the whole output
+    private final String tail;
+    private final long totalBytes;
+    private final long lineCount;
+    private final long omittedBytes;
+    private final long omittedLines;
+
+    public boolean isComplete() {
+        return omittedBytes == 0;
+    }
+
+    /**
+     * Head and tail joined by a note on what was left out.
+     */
+    public String getText() {
+        if (isComplete()) {
+            return tail.isEmpty() ? head : head + "\n" + tail;
+        }
+        return head + "\n... [" + omittedLines + " lines / " + omittedBytes + " bytes omitted] ...\n" + tail;
+    }
+}
@@ -0,0 +1,29 @@
+package io.cmdzen.cli.model;
+
+import lombok.Data;
+
+/**
+ * What earlier invocations learned about an AI provider, kept by
+ * {@link io.cmdzen.cli.services.ProviderHealthService}.
+ */
+@Data
+public class ProviderHealth {
+
+    public enum State {
+        /** Healthy: every request goes to the provider. */
+        CLOSED,
+        /** Failing: skipped until {@code until}. */
+        OPEN,
+        /** One probe request is in flight until {@code until}; everyone else still skips it. */
+        HALF_OPEN
+    }
+
+    private State state = State.CLOSED;
+    private double latencyMillis;
+    private double errorRate;
+    private int consecutiveFailures;
+    private long calls;
+    // epoch millis: end of the open period, or of the current probe
+    private long until;
+    private long openMillis;
+}
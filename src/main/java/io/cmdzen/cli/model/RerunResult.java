@@ -0,0 +1,39 @@
+package io.cmdzen.cli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Outcome of re-running a command through {@link io.cmdzen.cli.services.CommandRunner}.
+ */
+@Getter
+@AllArgsConstructor
+public class RerunResult {
+
+    /** Exit code reported for a command that was killed at the timeout, as timeout(1) does. */
+    public static final int TIMEOUT_EXIT_CODE = 124;
+
+    private final int exitCode;
+    private final String stdout;
+    private final String stderr;
+    // bytes dropped from the start of stdout and stderr to stay within the cap
+    private final long droppedBytes;
+    private final boolean timedOut;
+    private final Duration duration;
+
+    /**
+     * Both streams for the prompt, stderr last since that's usually where the error is.
+     */
+    public String getOutput() {
+        StringBuilder sb = new StringBuilder();
+        if (droppedBytes > 0) {
+            sb.append("[").append(droppedBytes).append(" bytes of earlier output dropped]\n");
+        }
+        if (stderr.isBlank()) return sb.append(stdout).toString();
+        if (stdout.isBlank()) return sb.append(stderr).toString();
+        return sb.append("STDOUT:\n").append(stdout.stripTrailing())
+                .append("\n\nSTDERR:\n").append(stderr).toString();
+    }
+}
@@ -15,12 +15,15 @@ public class ShellEnvironment {
     private Path historyPath;
 
     public ShellEnvironment() {
-        shellConfigure();
+        this(System.getenv("SHELL"));
     }
 
-    public void shellConfigure()  {
-        String env = System.getenv("SHELL");
-        if (env.isEmpty()) {
+    public ShellEnvironment(String shell) {
+        shellConfigure(shell);
+    }
+
+    public void shellConfigure(String env)  {
+        if (env == null || env.isEmpty()) {
             log.error("Environment variable SHELL is not set.");
             throw new ShellVariableMissingException("SHELL environment variable is not set.");
         }
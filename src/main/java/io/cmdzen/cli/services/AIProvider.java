@@ -0,0 +1,33 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.model.ChatMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A chat model {@link AIService} can ask. Implementations are Spring beans; their
+ * {@link org.springframework.core.annotation.Order} is the preference before any latency has
+ * been measured. Failures are thrown, never returned as text.
+ */
+public interface AIProvider {
+
+    /** Short stable name used in metrics, provider health and logs, e.g. {@code openrouter}. */
+    String getName();
+
+    /** Whether the endpoint and credentials are set; unconfigured providers are never asked. */
+    boolean isConfigured();
+
+    /** Whether prompts sent to this provider stay on this machine. */
+    default boolean isLocal() {
+        return false;
+    }
+
+    /** The complete answer to the last of {@code messages}, with {@code <think>} blocks removed. */
+    String complete(List<ChatMessage> messages);
+
+    /**
+     * Streams the answer to {@code onToken} as it arrives and returns all of it.
+     */
+    String stream(List<ChatMessage> messages, Consumer<String> onToken);
+}
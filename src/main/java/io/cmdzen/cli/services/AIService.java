@@ -1,139 +1,540 @@
 package io.cmdzen.cli.services;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import io.cmdzen.cli.config.AIConfig;
+import io.cmdzen.cli.config.HedgeConfig;
+import io.cmdzen.cli.config.LocalAIConfig;
+import io.cmdzen.cli.exceptions.RateLimitedException;
+import io.cmdzen.cli.model.ChatMessage;
+import io.cmdzen.cli.model.ProviderHealth;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.MediaType;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Asks the configured {@link AIProvider}s, fastest measured first, falling back to the next
+ * one when a provider fails and skipping providers whose circuit is open.
+ */
 @Slf4j
+@Lazy
 @Service
 public class AIService {
 
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private final AIConfig aiConfig;
-    private final RestClient restClient;
-    private final String doAgentKey;
-    private final boolean doAgentEnabled;
+    private static final String ERROR_PREFIX = "AI Error: ";
+    private final List<AIProvider> providers;
+    private final HedgeConfig hedgeConfig;
+    private final MetricsService metrics;
+    private final ProviderHealthService providerHealth;
 
-    public AIService(AIConfig aiConfig,
-                     RestClient.Builder restClientBuilder,
-                     @Value("${do.agent.url:}") String doAgentUrl,
-                     @Value("${do.agent.key:}") String doAgentKey) {
-        this.aiConfig = aiConfig;
-        this.doAgentKey = doAgentKey;
-        this.doAgentEnabled = doAgentUrl != null && !doAgentUrl.isEmpty() &&
-                              doAgentKey != null && !doAgentKey.isEmpty();
+    public AIService(List<AIProvider> providers,
+                     HedgeConfig hedgeConfig,
+                     LocalAIConfig localConfig,
+                     MetricsService metrics,
+                     ProviderHealthService providerHealth) {
+        this.providers = providers.stream()
+                .filter(AIProvider::isConfigured)
+                .filter(provider -> !localConfig.isExclusive() || provider.isLocal())
+                .toList();
+        this.hedgeConfig = hedgeConfig;
+        this.metrics = metrics;
+        this.providerHealth = providerHealth;
+        log.info("AI providers: {}{}", this.providers.stream().map(AIProvider::getName).toList(),
+                localConfig.isExclusive() ? " (local only)" : "");
+    }
 
-        if (doAgentEnabled) {
-            this.restClient = restClientBuilder.baseUrl(doAgentUrl).build();
-            log.info("DigitalOcean Agent enabled at: {}", doAgentUrl);
-        } else {
-            this.restClient = restClientBuilder.build();
-            log.info("DigitalOcean Agent disabled, using OpenRouter only");
-        }
+    /**
+     * Whether an answer returned by {@link #ask} is the error placeholder rather than a real answer.
+     */
+    public static boolean isError(String answer) {
+        return answer == null || answer.isBlank() || answer.startsWith(ERROR_PREFIX);
     }
 
     public String ask(String prompt) {
+        return ask(List.of(ChatMessage.user(prompt)));
+    }
+
+    /**
+     * Answers the last of {@code messages}, the earlier ones being the conversation so far.
+     */
+    public String ask(List<ChatMessage> messages) {
+        Candidates candidates = candidates();
+        if (candidates.isEmpty()) {
+            return ERROR_PREFIX + noProviderMessage();
+        }
+        int first = candidates.next(0);
+        if (candidates.hasAfter(first) && hedgeConfig.isEnabled()) {
+            return askHedged(messages, candidates.get(first), () -> candidates.get(candidates.next(first + 1)));
+        }
 
-        if (doAgentEnabled) {
+        Exception failure = null;
+        for (int i = first; i >= 0; i = candidates.next(i + 1)) {
+            AIProvider provider = candidates.get(i);
+            if (i > first) {
+                metrics.count("provider.fallback");
+            }
             try {
-                log.debug("Attempting to use DigitalOcean Agent");
-                String response = getFromDOAgent(prompt);
-                if (response != null && !response.isEmpty()) {
-                    log.info("Successfully got response from DigitalOcean Agent");
+                log.debug("Asking {}", provider.getName());
+                String response = timed(provider.getName(), () -> provider.complete(messages));
+                if (!isError(response)) {
+                    log.info("Answered by {}", provider.getName());
                     return response;
                 }
+                log.warn("{} returned an empty answer", provider.getName());
             } catch (Exception e) {
-                log.warn("DigitalOcean Agent failed, falling back to OpenRouter: {}", e.getMessage());
+                failure = e;
+                log.warn("{} failed: {}", provider.getName(), e.getMessage());
             }
         }
+        return ERROR_PREFIX + (failure == null ? "no provider returned an answer" : failure.getMessage());
+    }
 
-        log.debug("Using OpenRouter API");
-        return askOpenRouter(prompt);
+    /**
+     * Like {@link #ask} without hedging, but a failure is thrown instead of being returned as
+     * the error placeholder. Rate limiting surfaces as {@link RateLimitedException} with the
+     * provider's {@code Retry-After}, so batch callers can back off and retry.
+     */
+    public String askChecked(String prompt) {
+        List<ChatMessage> messages = List.of(ChatMessage.user(prompt));
+        Candidates candidates = candidates();
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException(noProviderMessage());
+        }
+        int first = candidates.next(0);
+        RuntimeException failure = null;
+        for (int i = first; i >= 0; i = candidates.next(i + 1)) {
+            AIProvider provider = candidates.get(i);
+            if (i > first) {
+                metrics.count("provider.fallback");
+            }
+            try {
+                String response = timed(provider.getName(), () -> provider.complete(messages));
+                if (!isError(response)) {
+                    return response;
+                }
+                failure = new IllegalStateException(provider.getName() + " returned an empty answer");
+            } catch (RestClientResponseException e) {
+                int status = e.getStatusCode().value();
+                String retryAfter = e.getResponseHeaders() == null ? null : e.getResponseHeaders().getFirst("Retry-After");
+                failure = status == 429 || (status == 503 && retryAfter != null)
+                        ? new RateLimitedException(provider.getName() + " rate limit (HTTP " + status + ")",
+                        parseRetryAfter(retryAfter))
+                        : e;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            log.warn("{} failed: {}", provider.getName(), failure.getMessage());
+        }
+        throw failure;
     }
 
-    private String getFromDOAgent(String prompt) {
+    /**
+     * {@code Retry-After} as either delta-seconds or an HTTP date; null if absent or unparseable.
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) return null;
         try {
-            ObjectNode body = mapper.createObjectNode();
-            ArrayNode messages = body.putArray("messages");
-            ObjectNode userMsg = messages.addObject();
-            userMsg.put("role", "user");
-            userMsg.put("content", prompt);
-            //body.put("temperature", 0.1);
-            //body.put("top_p", 0.3);
-            //body.put("max_completion_tokens", 200);
-            body.put("stream", false);
-            body.put("include_functions_info", false);
-            body.put("include_retrieval_info", false);
-            body.put("include_guardrails_info", false);
-            String rawResponse = restClient.post()
-                    .uri("/api/v1/chat/completions")
-                    .header("Authorization", "Bearer " + doAgentKey)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(body)
-                    .retrieve()
-                    .body(String.class);
-            log.debug("DigitalOcean raw response: {}", rawResponse);
-            JsonNode root = mapper.readTree(rawResponse);
-            JsonNode choices = root.path("choices");
-            if (choices.isArray() && choices.size() > 0) {
-                String content =  choices.get(0)
-                        .path("message")
-                        .path("content")
-                        .asText(null);
-                return sanitize(content);
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Instant at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                Duration wait = Duration.between(Instant.now(), at);
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
             }
-            return sanitize(rawResponse); // fallback raw dump
+        }
+    }
+
+    /**
+     * Races the two preferred providers: the primary goes first, the secondary is
+     * fired once the hedge delay passes (or as soon as the primary fails), the first usable
+     * answer wins and the other call is interrupted. Everything is bounded by one deadline.
+     * The secondary is only picked when the hedge fires, so its circuit is not consulted for
+     * asks the primary answers alone.
+     */
+    private String askHedged(List<ChatMessage> messages, AIProvider primaryProvider,
+                             Supplier<AIProvider> secondaryProvider) {
+        long start = System.nanoTime();
+        long deadlineNanos = hedgeConfig.getDeadline().toNanos();
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        CountDownLatch primaryFailed = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<?> primary = executor.submit(() -> {
+                if (!race(primaryProvider.getName(), () -> primaryProvider.complete(messages), winner, failures, start)) {
+                    primaryFailed.countDown();
+                }
+            });
+            Future<?> secondary = executor.submit(() -> {
+                try {
+                    primaryFailed.await(hedgeConfig.getDelay().toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (winner.isDone()) return;
+                log.debug("Hedge fired after {} ms", (System.nanoTime() - start) / 1_000_000);
+                metrics.count("provider.hedge");
+                AIProvider provider = secondaryProvider.get();
+                race(provider.getName(), () -> provider.complete(messages), winner, failures, start);
+            });
+
+            try {
+                return winner.get(deadlineNanos, TimeUnit.NANOSECONDS);
+            } finally {
+                primary.cancel(true);
+                secondary.cancel(true);
+            }
+        } catch (TimeoutException e) {
+            log.warn("No provider answered within {}", hedgeConfig.getDeadline());
+            return ERROR_PREFIX + "no provider answered within " + hedgeConfig.getDeadline().toSeconds() + "s";
+        } catch (ExecutionException e) {
+            return ERROR_PREFIX + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ERROR_PREFIX + "interrupted";
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one leg of a hedged ask. Returns whether it produced a usable answer; the last
+     * leg to fail completes {@code winner} exceptionally so the caller stops waiting.
+     */
+    private boolean race(String provider, Supplier<String> call, CompletableFuture<String> winner,
+                         AtomicInteger failures, long start) {
+        long callStart = System.nanoTime();
+        try {
+            String answer = call.get();
+            if (!isError(answer)) {
+                recordCall(provider, callStart, true);
+                if (winner.complete(answer)) {
+                    recordHedgeWin(provider, start);
+                }
+                return true;
+            }
+            log.warn("Hedged {} returned no usable answer", provider);
         } catch (Exception e) {
-            log.error("DigitalOcean Agent error", e);
-            throw new RuntimeException("D.O Agent error: " + e.getMessage(), e);
+            if (winner.isDone()) {
+                log.debug("Hedged {} cancelled after losing the race", provider);
+                return false;
+            }
+            log.warn("Hedged {} failed: {}", provider, e.getMessage());
+        }
+        recordCall(provider, callStart, false);
+        if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(new IllegalStateException("all providers failed"));
         }
+        return false;
     }
 
-    private String sanitize(String content) {
-        if (content == null) return null;
-        content = content.replaceAll("(?s)<think>.*?</think>", "");
-        return content.trim();
+    /**
+     * Records how long the winning leg of a hedged ask took, under {@code hedge.<provider>}.
+     */
+    private void recordHedgeWin(String provider, long start) {
+        long nanos = System.nanoTime() - start;
+        metrics.record("hedge." + provider, nanos);
+        log.info("Hedged ask won by {} in {} ms (hedge delay {} ms)",
+                provider, nanos / 1_000_000, hedgeConfig.getDelay().toMillis());
+    }
+
+    /**
+     * Streaming variant of {@link #ask(String)}: tokens are handed to {@code onToken} as the
+     * provider sends them (with {@code <think>} blocks removed) and the full answer is returned.
+     * A provider is only abandoned for the next one if it failed before emitting anything; a
+     * stream that breaks off mid-answer ends with the error placeholder, so the partial answer
+     * is neither cached nor kept as the conversation. With hedging enabled the race is for the
+     * first token, see {@link #askStreamingHedged}.
+     */
+    public String askStreaming(String prompt, Consumer<String> onToken) {
+        return askStreaming(List.of(ChatMessage.user(prompt)), onToken);
+    }
+
+    public String askStreaming(List<ChatMessage> messages, Consumer<String> onToken) {
+        Candidates candidates = candidates();
+        int first = candidates.next(0);
+        if (candidates.hasAfter(first) && hedgeConfig.isEnabled()) {
+            return askStreamingHedged(messages, candidates.get(first),
+                    () -> candidates.get(candidates.next(first + 1)), onToken);
+        }
+        Exception failure = null;
+        for (int i = first; i >= 0; i = candidates.next(i + 1)) {
+            AIProvider provider = candidates.get(i);
+            if (i > first) {
+                metrics.count("provider.fallback");
+            }
+            StringBuilder emitted = new StringBuilder();
+            try {
+                log.debug("Streaming from {}", provider.getName());
+                String response = timed(provider.getName(), () -> provider.stream(messages, chunk -> {
+                    emitted.append(chunk);
+                    onToken.accept(chunk);
+                }));
+                if (!response.isEmpty()) {
+                    log.info("Streamed answer from {}", provider.getName());
+                    return response;
+                }
+            } catch (Exception e) {
+                if (!emitted.isEmpty()) {
+                    return brokeOff(provider.getName(), e, onToken);
+                }
+                failure = e;
+                log.warn("{} stream failed: {}", provider.getName(), e.getMessage());
+            }
+        }
+
+        return streamError(candidates.isEmpty() ? noProviderMessage()
+                : failure == null ? "no provider returned an answer" : failure.getMessage(), onToken);
     }
 
-    private String askOpenRouter(String prompt) {
+    /**
+     * Streaming counterpart of {@link #askHedged}: the race is for the first token. The leg that
+     * emits first streams the rest of the answer to {@code onToken} and the other one is
+     * cancelled. The hedge deadline only bounds the wait for that first token; once a provider
+     * is streaming it gets as long as an unhedged stream would. Tokens are relayed on the
+     * calling thread.
+     */
+    private String askStreamingHedged(List<ChatMessage> messages, AIProvider primaryProvider,
+                                      Supplier<AIProvider> secondaryProvider, Consumer<String> onToken) {
+        long start = System.nanoTime();
+        long deadlineNanos = hedgeConfig.getDeadline().toNanos();
+        AtomicReference<String> leader = new AtomicReference<>();
+        BlockingQueue<StreamEvent> events = new LinkedBlockingQueue<>();
+        CountDownLatch primaryFailed = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
         try {
-            ObjectNode body = mapper.createObjectNode();
-            body.put("model", aiConfig.getModel());
-            ArrayNode messages = body.putArray("messages");
-            ObjectNode userMsg = messages.addObject();
-            userMsg.put("role", "user");
-            userMsg.put("content", prompt);
-            String endpoint = aiConfig.getEndpoint();
-            log.debug("OpenRouter endpoint: {}", endpoint);
-            String rawResponse = restClient.post()
-                    .uri(endpoint)
-                    .header("Authorization", "Bearer " + aiConfig.getApiKey())
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(body)
-                    .retrieve()
-                    .body(String.class);
-            log.debug("OpenRouter raw response: {}", rawResponse);
-            JsonNode root = mapper.readTree(rawResponse);
-            JsonNode choices = root.path("choices");
-            if (choices.isArray() && choices.size() > 0) {
-                return choices.get(0)
-                        .path("message")
-                        .path("content")
-                        .asText();
+            Future<?> primary = executor.submit(() -> {
+                if (!streamLeg(primaryProvider, messages, leader, events, start)) {
+                    primaryFailed.countDown();
+                }
+            });
+            Future<?> secondary = executor.submit(() -> {
+                try {
+                    primaryFailed.await(hedgeConfig.getDelay().toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (leader.get() != null) return;
+                log.debug("Hedge fired after {} ms", (System.nanoTime() - start) / 1_000_000);
+                metrics.count("provider.hedge");
+                streamLeg(secondaryProvider.get(), messages, leader, events, start);
+            });
+
+            String streaming = null;
+            int failures = 0;
+            while (true) {
+                StreamEvent event;
+                if (streaming == null) {
+                    long remaining = deadlineNanos - (System.nanoTime() - start);
+                    event = remaining > 0 ? events.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (event == null) {
+                        log.warn("No provider started answering within {}", hedgeConfig.getDeadline());
+                        return streamError("no provider answered within " + hedgeConfig.getDeadline().toSeconds() + "s",
+                                onToken);
+                    }
+                } else {
+                    event = events.take();
+                }
+                if (streaming != null && !streaming.equals(event.provider())) continue;
+
+                if (event.failure() != null) {
+                    if (streaming != null) {
+                        return brokeOff(streaming, event.failure(), onToken);
+                    }
+                    if (++failures == 2) {
+                        return streamError(event.failure().getMessage(), onToken);
+                    }
+                } else if (event.chunk() != null) {
+                    if (streaming == null) {
+                        streaming = event.provider();
+                        (streaming.equals(primaryProvider.getName()) ? secondary : primary).cancel(true);
+                    }
+                    onToken.accept(event.chunk());
+                } else {
+                    log.info("Streamed answer from {}", streaming);
+                    return event.answer();
+                }
             }
-            return rawResponse; // fallback
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return streamError("interrupted", onToken);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    /**
+     * Runs one leg of a hedged stream. The first leg to emit a token becomes the leader; the
+     * other one aborts its stream at its next token. Returns whether this leg led and finished.
+     */
+    private boolean streamLeg(AIProvider provider, List<ChatMessage> messages, AtomicReference<String> leader,
+                              BlockingQueue<StreamEvent> events, long start) {
+        String name = provider.getName();
+        long callStart = System.nanoTime();
+        Exception failure;
+        try {
+            String answer = provider.stream(messages, chunk -> {
+                if (chunk == null || chunk.isEmpty()) return;
+                if (!name.equals(leader.get())) {
+                    if (!leader.compareAndSet(null, name)) {
+                        throw new CancellationException(name + " lost the race");
+                    }
+                    recordHedgeWin(name, start);
+                }
+                events.add(new StreamEvent(name, chunk, null, null));
+            });
+            if (name.equals(leader.get())) {
+                recordCall(name, callStart, true);
+                events.add(new StreamEvent(name, null, answer, null));
+                return true;
+            }
+            failure = new IllegalStateException(name + " returned an empty answer");
         } catch (Exception e) {
-            log.error("OpenRouter Service Error", e);
-            return "AI Error: " + e.getMessage();
+            if (leader.get() != null && !name.equals(leader.get())) {
+                log.debug("Hedged {} cancelled after losing the race", name);
+                return false;
+            }
+            failure = e;
+        }
+        log.warn("Hedged {} stream failed: {}", name, failure.getMessage());
+        recordCall(name, callStart, false);
+        events.add(new StreamEvent(name, null, null, failure));
+        return false;
+    }
+
+    /**
+     * One thing a hedged stream leg reports: a chunk, its complete answer, or its failure.
+     */
+    private record StreamEvent(String provider, String chunk, String answer, Exception failure) {
+    }
+
+    private String brokeOff(String provider, Exception e, Consumer<String> onToken) {
+        log.error("{} stream broke off mid-answer", provider, e);
+        String error = ERROR_PREFIX + provider + " stopped mid-answer: " + e.getMessage();
+        onToken.accept("\n" + error);
+        return error;
+    }
+
+    private String streamError(String message, Consumer<String> onToken) {
+        String error = ERROR_PREFIX + message;
+        onToken.accept(error);
+        return error;
+    }
+
+    /**
+     * Configured providers to try, in order: fastest average latency first, with providers not
+     * measured yet ahead of all others (in their declared order) so they get measured.
+     */
+    Candidates candidates() {
+        Map<String, ProviderHealth> health = providerHealth.snapshot();
+        List<AIProvider> ranked = new ArrayList<>(providers);
+        ranked.sort(Comparator.comparingDouble(provider -> {
+            ProviderHealth known = health.get(provider.getName());
+            return known == null ? 0 : known.getLatencyMillis();
+        }));
+        return new Candidates(ranked, health);
+    }
+
+    /**
+     * Ranked providers with their health as of the ranking. A circuit is consulted only right
+     * before its provider would be called, so asks answered by an earlier provider neither
+     * claim a later one's half-open probe nor touch the health file for it.
+     */
+    final class Candidates {
+
+        private final List<AIProvider> ranked;
+        private final Map<String, ProviderHealth> health;
+
+        Candidates(List<AIProvider> ranked, Map<String, ProviderHealth> health) {
+            this.ranked = ranked;
+            this.health = health;
+        }
+
+        boolean isEmpty() {
+            return ranked.isEmpty();
+        }
+
+        AIProvider get(int index) {
+            return ranked.get(index);
+        }
+
+        boolean hasAfter(int index) {
+            return index >= 0 && index < ranked.size() - 1;
+        }
+
+        /**
+         * Index of the first provider from {@code from} on that may be called now, or -1 when
+         * there is none. Providers with an open circuit are skipped, except the last one, which
+         * is always worth a try when everything before it failed.
+         */
+        int next(int from) {
+            for (int i = from; i < ranked.size(); i++) {
+                AIProvider provider = ranked.get(i);
+                ProviderHealth known = health.get(provider.getName());
+                boolean closed = known == null || known.getState() == ProviderHealth.State.CLOSED;
+                if (i == ranked.size() - 1 || closed || providerHealth.allow(provider.getName())) {
+                    return i;
+                }
+                log.info("Skipping {} while its circuit is open", provider.getName());
+                metrics.count("provider.skipped");
+            }
+            return -1;
+        }
+    }
+
+    private String noProviderMessage() {
+        return "no AI provider configured (set OPENROUTER_ENDPOINT, OCEAN_AGENT_URL or cmdzen.ai.local.url)";
+    }
+
+    /**
+     * Runs one provider call, recording its latency and whether it produced a usable answer.
+     */
+    private String timed(String provider, Supplier<String> call) {
+        long start = System.nanoTime();
+        try {
+            String answer = call.get();
+            recordCall(provider, start, !isError(answer));
+            return answer;
+        } catch (RuntimeException e) {
+            recordCall(provider, start, false);
+            throw e;
+        }
+    }
+
+    private void recordCall(String provider, long start, boolean success) {
+        long nanos = System.nanoTime() - start;
+        providerHealth.record(provider, success, nanos);
+        if (success) {
+            metrics.record("provider." + provider, nanos);
         }
+        metrics.count("provider." + provider + (success ? ".success" : ".failure"));
     }
 
 }
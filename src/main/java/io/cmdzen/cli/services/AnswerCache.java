@@ -0,0 +1,151 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CacheConfig;
+import io.cmdzen.cli.config.CmdzenPaths;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of AI answers keyed by a {@link io.cmdzen.cli.util.FailureFingerprint}.
+ * <p>
+ * One file per entry: a {@code created=<epoch millis>} header line followed by the answer.
+ * Entries are published with an atomic rename, so concurrent readers never see partial
+ * files, and the file's mtime doubles as the LRU clock. Eviction runs under an exclusive
+ * lock on {@code .lock} so several cmdzen processes don't trip over each other.
+ */
+@Slf4j
+@Service
+public class AnswerCache {
+
+    private static final String SUFFIX = ".answer";
+    private static final String HEADER = "created=";
+
+    private final CacheConfig config;
+    private final Path directory;
+
+    public AnswerCache(CacheConfig config) {
+        this.config = config;
+        this.directory = config.getDirectory() != null && !config.getDirectory().isBlank()
+                ? Path.of(config.getDirectory())
+                : CmdzenPaths.configDir().resolve("cache");
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    public String get(String key) {
+        if (!config.isEnabled()) return null;
+        Path entry = entryPath(key);
+        try {
+            String content = Files.readString(entry, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            if (!content.startsWith(HEADER) || newline < 0) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            long created = Long.parseLong(content.substring(HEADER.length(), newline));
+            if (System.currentTimeMillis() - created > config.getTtl().toMillis()) {
+                log.debug("Cache entry {} expired", key);
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            log.debug("Cache hit for {}", key);
+            return content.substring(newline + 1);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Ignoring unreadable cache entry {}: {}", entry, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, String answer) {
+        if (!config.isEnabled() || answer == null || answer.isBlank()) return;
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            Files.writeString(tmp, HEADER + System.currentTimeMillis() + "\n" + answer, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, entryPath(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entryPath(key), StandardCopyOption.REPLACE_EXISTING);
+            }
+            evict();
+        } catch (IOException e) {
+            log.warn("Failed to write cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void evict() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+
+            List<Entry> entries = new ArrayList<>();
+            long totalBytes = 0;
+            long expiredBefore = System.currentTimeMillis() - config.getTtl().toMillis();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp") && isStale(file, System.currentTimeMillis() - 3_600_000)) {
+                        // left behind by a process that died between write and rename
+                        Files.deleteIfExists(file);
+                    }
+                    if (!name.endsWith(SUFFIX)) continue;
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                        entries.add(new Entry(file, attrs.lastModifiedTime().toMillis(), attrs.size()));
+                        totalBytes += attrs.size();
+                    } catch (NoSuchFileException e) {
+                        // removed by another process in the meantime
+                    }
+                }
+            }
+
+            entries.sort(Comparator.comparingLong(Entry::lastUsed));
+            int remaining = entries.size();
+            for (Entry entry : entries) {
+                boolean overLimit = remaining > config.getMaxEntries() || totalBytes > config.getMaxBytes();
+                if (!overLimit && entry.lastUsed() >= expiredBefore) break;
+                Files.deleteIfExists(entry.path());
+                remaining--;
+                totalBytes -= entry.size();
+                log.debug("Evicted cache entry {}", entry.path().getFileName());
+            }
+        }
+    }
+
+    private boolean isStale(Path file, long before) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() < before;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private record Entry(Path path, long lastUsed, long size) {
+    }
+}
@@ -0,0 +1,266 @@
+package io.cmdzen.cli.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cmdzen.cli.config.BatchConfig;
+import io.cmdzen.cli.exceptions.RateLimitedException;
+import io.cmdzen.cli.model.BatchFailure;
+import io.cmdzen.cli.model.BatchResult;
+import io.cmdzen.cli.model.ErrorRule;
+import io.cmdzen.cli.util.FailureFingerprint;
+import io.cmdzen.cli.util.FailurePrompt;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Solves many failures read from JSONL, for CI triage.
+ * <p>
+ * Each failure goes through the same steps as {@code solve}: offline rules, the answer
+ * cache, then the AI provider. Up to {@code parallelism} failures are in flight on virtual
+ * threads. A rate-limited request pauses all workers until the provider's
+ * {@code Retry-After} (or an exponential backoff with jitter) has passed. Results are
+ * written as JSONL as they complete; a summary goes to stderr at the end.
+ */
+@Slf4j
+@Service
+public class BatchSolveService {
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final BatchConfig config;
+    private final ObjectProvider<AIService> aiService;
+    private final AnswerCache answerCache;
+    private final PromptCompactor promptCompactor;
+    private final KnowledgeBaseService knowledgeBase;
+
+    public BatchSolveService(BatchConfig config, ObjectProvider<AIService> aiService, AnswerCache answerCache,
+                             PromptCompactor promptCompactor, KnowledgeBaseService knowledgeBase) {
+        this.config = config;
+        this.aiService = aiService;
+        this.answerCache = answerCache;
+        this.promptCompactor = promptCompactor;
+        this.knowledgeBase = knowledgeBase;
+    }
+
+    /**
+     * Solves every failure in {@code input}, a JSONL file or a directory of {@code *.jsonl}
+     * files, writing one result line per failure to {@code out}.
+     */
+    public void solve(Path input, String question, boolean noCache, boolean noLocal,
+                      PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        Run run = new Run(question, noCache, noLocal, out);
+        Semaphore inFlight = new Semaphore(Math.max(1, config.getParallelism()));
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : inputFiles(input)) {
+                try (BufferedReader reader = Files.newBufferedReader(file)) {
+                    String line;
+                    int lineNumber = 0;
+                    while ((line = reader.readLine()) != null) {
+                        lineNumber++;
+                        if (line.isBlank()) continue;
+                        String defaultId = file.getFileName() + ":" + lineNumber;
+                        String json = line;
+                        inFlight.acquire();
+                        executor.submit(() -> {
+                            try {
+                                run.emit(run.solveLine(json, defaultId));
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }
+                }
+            }
+        }
+        err.println(run.summary(Duration.ofNanos(System.nanoTime() - start)));
+    }
+
+    private static List<Path> inputFiles(Path input) throws IOException {
+        if (!Files.isDirectory(input)) return List.of(input);
+        try (Stream<Path> files = Files.list(input)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".jsonl")).sorted().toList();
+        }
+    }
+
+    /**
+     * State of one batch: options, the shared rate-limit pause and the statistics.
+     */
+    private final class Run {
+
+        private final String question;
+        private final boolean noCache;
+        private final boolean noLocal;
+        private final PrintStream out;
+        // System.nanoTime() before which no worker may call the provider
+        private final AtomicLong pausedUntil = new AtomicLong(System.nanoTime());
+        private final Map<BatchResult.Status, AtomicInteger> counts = new EnumMap<>(BatchResult.Status.class);
+        private final AtomicInteger retries = new AtomicInteger();
+        private final AtomicInteger rateLimited = new AtomicInteger();
+        private final List<Long> latencies = new ArrayList<>();
+
+        Run(String question, boolean noCache, boolean noLocal, PrintStream out) {
+            this.question = question;
+            this.noCache = noCache;
+            this.noLocal = noLocal;
+            this.out = out;
+            for (BatchResult.Status status : BatchResult.Status.values()) {
+                counts.put(status, new AtomicInteger());
+            }
+        }
+
+        BatchResult solveLine(String json, String defaultId) {
+            long start = System.nanoTime();
+            BatchFailure failure;
+            try {
+                failure = mapper.readValue(json, BatchFailure.class);
+            } catch (JsonProcessingException e) {
+                return new BatchResult(defaultId, null, 0, BatchResult.Status.ERROR, null,
+                        "Invalid JSON: " + e.getOriginalMessage(), 0, 0);
+            }
+            String id = failure.getId() != null ? failure.getId() : defaultId;
+            try {
+                return solve(failure, id, start);
+            } catch (RuntimeException e) {
+                // a rule, the cache or the compactor failed: report it rather than lose the line
+                log.warn("Failed to solve {}", id, e);
+                return result(id, failure, BatchResult.Status.ERROR, null, String.valueOf(e), 0, start);
+            }
+        }
+
+        private BatchResult solve(BatchFailure failure, String id, long start) {
+            String command = failure.getCommand() == null ? "" : failure.getCommand();
+            String output = failure.getOutput() == null ? "" : failure.getOutput();
+            String userQuestion = failure.getQuestion() != null ? failure.getQuestion() : question;
+
+            List<ErrorRule> rules = noLocal ? List.of() : knowledgeBase.match(command, failure.getExitCode(), output);
+            for (ErrorRule rule : rules) {
+                if (rule.getMode() == ErrorRule.Mode.ANSWER) {
+                    return result(id, failure, BatchResult.Status.OFFLINE, rule.render(command, output), null, 0, start);
+                }
+            }
+            String cacheKey = noCache ? null : FailureFingerprint.of(command, failure.getExitCode(), output, userQuestion);
+            if (cacheKey != null) {
+                String cached = answerCache.get(cacheKey);
+                if (cached != null) {
+                    return result(id, failure, BatchResult.Status.CACHED, cached, null, 0, start);
+                }
+            }
+
+            List<String> hints = rules.stream()
+                    .filter(rule -> rule.getMode() == ErrorRule.Mode.ANNOTATE)
+                    .map(rule -> rule.render(command, output))
+                    .toList();
+            // the failures ran elsewhere, so there is no local context to probe
+            String prompt = FailurePrompt.build(command, failure.getExitCode(), promptCompactor.compact(output),
+                    userQuestion, true, hints, List.of());
+
+            long backoff = config.getInitialBackoff().toMillis();
+            int maxAttempts = Math.max(1, config.getMaxAttempts());
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    awaitPause();
+                    String answer = aiService.getObject().askChecked(prompt);
+                    if (cacheKey != null) answerCache.put(cacheKey, answer);
+                    return result(id, failure, BatchResult.Status.ANSWERED, answer, null, attempt, start);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return result(id, failure, BatchResult.Status.ERROR, null, "Interrupted", attempt, start);
+                } catch (RuntimeException e) {
+                    if (attempt >= maxAttempts) {
+                        log.warn("Giving up on {} after {} attempts: {}", id, attempt, e.getMessage());
+                        return result(id, failure, BatchResult.Status.ERROR, null, e.getMessage(), attempt, start);
+                    }
+                    retries.incrementAndGet();
+                    // jitter keeps workers that failed together from retrying together
+                    long wait = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                    if (e instanceof RateLimitedException limited) {
+                        rateLimited.incrementAndGet();
+                        if (limited.getRetryAfter() != null) wait = limited.getRetryAfter().toMillis();
+                        long until = System.nanoTime() + wait * 1_000_000;
+                        pausedUntil.accumulateAndGet(until, Math::max);
+                        log.info("Rate limited on {}, pausing for {} ms", id, wait);
+                    } else {
+                        log.info("Attempt {} for {} failed ({}), retrying in {} ms", attempt, id, e.getMessage(), wait);
+                        try {
+                            Thread.sleep(wait);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            return result(id, failure, BatchResult.Status.ERROR, null, "Interrupted", attempt, start);
+                        }
+                    }
+                    backoff = Math.min(backoff * 2, config.getMaxBackoff().toMillis());
+                }
+            }
+        }
+
+        private void awaitPause() throws InterruptedException {
+            long remaining;
+            while ((remaining = pausedUntil.get() - System.nanoTime()) > 0) {
+                Thread.sleep(Duration.ofNanos(remaining));
+            }
+        }
+
+        private BatchResult result(String id, BatchFailure failure, BatchResult.Status status, String answer,
+                                   String error, int attempts, long start) {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            return new BatchResult(id, failure.getCommand(), failure.getExitCode(), status, answer, error, attempts, millis);
+        }
+
+        void emit(BatchResult result) {
+            counts.get(result.getStatus()).incrementAndGet();
+            String line;
+            try {
+                line = mapper.writeValueAsString(result);
+            } catch (JsonProcessingException e) {
+                line = "{\"id\":\"" + result.getId() + "\",\"status\":\"ERROR\"}";
+            }
+            synchronized (this) {
+                latencies.add(result.getLatencyMillis());
+                out.println(line);
+                out.flush();
+            }
+        }
+
+        synchronized String summary(Duration elapsed) {
+            int total = latencies.size();
+            double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+            List<Long> sorted = latencies.stream().sorted().toList();
+            return String.format("Batch: %d failures in %.1fs (%.2f/s): %d answered, %d cached, %d offline, %d errors; "
+                            + "%d retries (%d rate limited). Latency p50 %d ms, p90 %d ms, p99 %d ms, max %d ms",
+                    total, seconds, total / seconds,
+                    counts.get(BatchResult.Status.ANSWERED).get(), counts.get(BatchResult.Status.CACHED).get(),
+                    counts.get(BatchResult.Status.OFFLINE).get(), counts.get(BatchResult.Status.ERROR).get(),
+                    retries.get(), rateLimited.get(),
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1));
+        }
+
+        private static long percentile(List<Long> sorted, double p) {
+            if (sorted.isEmpty()) return 0;
+            return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1));
+        }
+    }
+}
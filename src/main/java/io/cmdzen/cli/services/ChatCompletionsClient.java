@@ -0,0 +1,159 @@
+package io.cmdzen.cli.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.cmdzen.cli.model.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Client for an OpenAI-compatible {@code chat/completions} endpoint, shared by every
+ * {@link AIProvider}: OpenRouter, the DigitalOcean agent, llama.cpp's and Ollama's servers all
+ * speak it. Providers differ only in URL, key, model and a few extra request fields.
+ */
+@Slf4j
+public class ChatCompletionsClient {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final RestClient restClient;
+    private final String url;
+    private final String apiKey;
+    private final String model;
+    private final Map<String, Object> extraFields;
+
+    /**
+     * @param apiKey      sent as a bearer token; null or blank sends none
+     * @param model       null or blank leaves the choice to the server
+     * @param extraFields added to every request body
+     */
+    public ChatCompletionsClient(RestClient restClient, String url, String apiKey, String model,
+                                 Map<String, Object> extraFields) {
+        this.restClient = restClient;
+        this.url = url;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.extraFields = extraFields;
+    }
+
+    public String complete(List<ChatMessage> messages) {
+        String rawResponse = request(messages, false).retrieve().body(String.class);
+        log.debug("Raw response from {}: {}", url, rawResponse);
+        try {
+            JsonNode choices = mapper.readTree(rawResponse).path("choices");
+            if (choices.isArray() && choices.size() > 0) {
+                return sanitize(choices.get(0).path("message").path("content").asText(""));
+            }
+            return sanitize(rawResponse); // not chat completions after all: hand back the raw dump
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable response from " + url, e);
+        }
+    }
+
+    /**
+     * Reads an OpenAI-style server-sent event stream ({@code data: {...}} lines terminated by
+     * {@code data: [DONE]}) and forwards each {@code choices[0].delta.content} piece.
+     */
+    public String stream(List<ChatMessage> messages, Consumer<String> onToken) {
+        return request(messages, true)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange((req, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        byte[] errorBody = response.getBody().readAllBytes();
+                        throw new RestClientResponseException(
+                                response.getStatusCode() + " from " + req.getURI(),
+                                response.getStatusCode(), response.getStatusText(),
+                                response.getHeaders(), errorBody, StandardCharsets.UTF_8);
+                    }
+
+                    ThinkTagFilter filter = new ThinkTagFilter();
+                    StringBuilder answer = new StringBuilder();
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (!line.startsWith("data:")) {
+                                continue; // blank separators, ": keep-alive" comments, event names
+                            }
+                            String data = line.substring("data:".length()).trim();
+                            if (data.equals("[DONE]")) {
+                                break;
+                            }
+                            if (data.isEmpty()) {
+                                continue;
+                            }
+                            String delta = parseDelta(data);
+                            emitChunk(filter.accept(delta), answer, onToken);
+                        }
+                    }
+                    emitChunk(filter.finish(), answer, onToken);
+                    return answer.toString().trim();
+                });
+    }
+
+    /**
+     * Drops {@code <think>} blocks, including one the model never closed, like {@link ThinkTagFilter}.
+     */
+    static String sanitize(String content) {
+        if (content == null) return null;
+        content = content.replaceAll("(?s)<think>.*?(</think>|$)", "");
+        return content.trim();
+    }
+
+    /**
+     * The request body starts with the model and the messages, so requests continuing the same
+     * conversation share a byte-identical prefix that providers can serve from their prompt cache.
+     */
+    private RestClient.RequestBodySpec request(List<ChatMessage> messages, boolean stream) {
+        ObjectNode body = mapper.createObjectNode();
+        if (model != null && !model.isBlank()) {
+            body.put("model", model);
+        }
+        ArrayNode array = body.putArray("messages");
+        for (ChatMessage message : messages) {
+            array.addObject()
+                    .put("role", message.getRole())
+                    .put("content", message.getContent());
+        }
+        if (stream) {
+            body.put("stream", true);
+        }
+        extraFields.forEach((name, value) -> body.set(name, mapper.valueToTree(value)));
+
+        RestClient.RequestBodySpec request = restClient.post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (apiKey != null && !apiKey.isBlank()) {
+            request.header("Authorization", "Bearer " + apiKey);
+        }
+        return request.body(body);
+    }
+
+    private String parseDelta(String data) throws IOException {
+        JsonNode choices = mapper.readTree(data).path("choices");
+        if (choices.isArray() && choices.size() > 0) {
+            return choices.get(0).path("delta").path("content").asText("");
+        }
+        return "";
+    }
+
+    private void emitChunk(String text, StringBuilder answer, Consumer<String> onToken) {
+        if (!text.isEmpty()) {
+            answer.append(text);
+            onToken.accept(text);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.RerunConfig;
+import io.cmdzen.cli.daemon.RequestContext;
+import io.cmdzen.cli.model.RerunResult;
+import io.cmdzen.cli.util.TailBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Re-runs a command whose output wasn't captured by the shell hooks.
+ * <p>
+ * stdout and stderr are drained on their own virtual threads into capped
+ * {@link TailBuffer}s, optionally echoing them as they arrive. stdin is closed, so a command
+ * waiting for input gets EOF instead of hanging. At the timeout the command and all of its
+ * descendants are terminated, and killed after a grace period.
+ */
+@Slf4j
+@Service
+public class CommandRunner {
+
+    private static final long DRAIN_JOIN_MILLIS = 1000;
+
+    private final RerunConfig config;
+
+    public CommandRunner(RerunConfig config) {
+        this.config = config;
+    }
+
+    public RerunResult run(String command) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("sh", "-c", command);
+        pb.directory(RequestContext.workingDirectory().toFile());
+        if (RequestContext.isDaemonRequest()) {
+            pb.environment().clear();
+            pb.environment().putAll(RequestContext.environment());
+        }
+
+        long start = System.nanoTime();
+        Process process = pb.start();
+        process.getOutputStream().close();
+
+        TailBuffer stdout = new TailBuffer(config.getMaxOutputBytes());
+        TailBuffer stderr = new TailBuffer(config.getMaxOutputBytes());
+        List<Thread> drains = List.of(
+                drain(process.getInputStream(), stdout, config.isPassthrough() ? System.out : null),
+                drain(process.getErrorStream(), stderr, config.isPassthrough() ? System.err : null));
+
+        boolean timedOut = false;
+        try {
+            if (!process.waitFor(config.getTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                timedOut = true;
+                log.info("Command '{}' still running after {}, killing it", command, config.getTimeout());
+                killTree(process.toHandle());
+            }
+        } catch (InterruptedException e) {
+            killTree(process.toHandle());
+            throw e;
+        }
+        // a background child that escaped the kill may still hold the pipes open
+        long joinDeadline = System.currentTimeMillis() + DRAIN_JOIN_MILLIS;
+        for (Thread drain : drains) {
+            drain.join(Math.max(1, joinDeadline - System.currentTimeMillis()));
+        }
+
+        int exitCode = timedOut ? RerunResult.TIMEOUT_EXIT_CODE : process.exitValue();
+        return new RerunResult(exitCode, stdout.text(), stderr.text(), stdout.getDropped() + stderr.getDropped(),
+                timedOut, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static Thread drain(InputStream in, TailBuffer buffer, PrintStream echo) {
+        return Thread.ofVirtual().name("cmdzen-rerun-drain").start(() -> {
+            byte[] chunk = new byte[8192];
+            try (in) {
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    buffer.write(chunk, 0, n);
+                    if (echo != null) {
+                        echo.write(chunk, 0, n);
+                        echo.flush();
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Stopped reading command output: {}", e.getMessage());
+            }
+        });
+    }
+
+    private void killTree(ProcessHandle root) throws InterruptedException {
+        // collect first: descendants are re-parented once their parent exits
+        List<ProcessHandle> tree = new ArrayList<>(root.descendants().toList());
+        tree.add(0, root);
+        tree.forEach(ProcessHandle::destroy);
+
+        long deadline = System.nanoTime() + config.getKillGrace().toNanos();
+        for (ProcessHandle handle : tree) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                try {
+                    handle.onExit().get(remaining, TimeUnit.NANOSECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    // killed below
+                }
+            }
+            if (handle.isAlive()) handle.destroyForcibly();
+        }
+    }
+}
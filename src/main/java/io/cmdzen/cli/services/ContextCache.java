@@ -0,0 +1,127 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.config.ContextConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Context probe results from earlier invocations, in {@code context-cache.properties} in the
+ * state directory.
+ * <p>
+ * Each result is stored with a stamp made of its dependencies' modification times and is
+ * only returned for the same stamp and within {@code cmdzen.context.cache-ttl}. The file is
+ * rewritten whole through a temp file; when two processes write at once one of their results
+ * is lost, which only costs a probe run later.
+ */
+@Slf4j
+@Service
+public class ContextCache {
+
+    private final ContextConfig config;
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long loadedModified = -1;
+
+    public ContextCache(ContextConfig config) {
+        this.config = config;
+        this.file = CmdzenPaths.stateDir().resolve("context-cache.properties");
+    }
+
+    /**
+     * The cached result, empty if the probe had nothing to report, or null on a miss.
+     */
+    public synchronized String get(String key, String stamp) {
+        reload();
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.stamp().equals(stamp)
+                || System.currentTimeMillis() - entry.storedAt() > config.getCacheTtl().toMillis()) {
+            return null;
+        }
+        return entry.value();
+    }
+
+    public synchronized void put(String key, String stamp, String value) {
+        reload();
+        entries.put(key, new Entry(System.currentTimeMillis(), stamp, value));
+        if (entries.size() > config.getMaxCacheEntries()) {
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().storedAt()))
+                    .limit(entries.size() - config.getMaxCacheEntries())
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(entries::remove);
+        }
+        try {
+            write();
+        } catch (IOException e) {
+            log.debug("Could not write {}: {}", file, e.getMessage());
+        }
+    }
+
+    // other processes may have added entries since the last read
+    private void reload() {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return;
+        }
+        if (modified == loadedModified) return;
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Ignoring unreadable context cache {}: {}", file, e.getMessage());
+            return;
+        }
+        loadedModified = modified;
+        for (String key : properties.stringPropertyNames()) {
+            String[] parts = properties.getProperty(key).split("\\|", 3);
+            if (parts.length < 3) continue;
+            try {
+                Entry entry = new Entry(Long.parseLong(parts[0]), parts[1], parts[2]);
+                entries.merge(key, entry, (mine, theirs) -> theirs.storedAt() > mine.storedAt() ? theirs : mine);
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring bad context cache entry {}", key);
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        Properties properties = new Properties();
+        entries.forEach((key, entry) ->
+                properties.setProperty(key, entry.storedAt() + "|" + entry.stamp() + "|" + entry.value()));
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), "context-cache", ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "cmdzen context probe results");
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        loadedModified = Files.getLastModifiedTime(file).toMillis();
+    }
+
+    private record Entry(long storedAt, String stamp, String value) {
+    }
+}
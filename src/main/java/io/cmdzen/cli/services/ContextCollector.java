@@ -0,0 +1,125 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.ContextConfig;
+import io.cmdzen.cli.daemon.RequestContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Gathers environment context for the solve prompt (git state, tool versions, disk and memory
+ * pressure, lockfiles) by running every {@link ContextProbe} at once on virtual threads.
+ * <p>
+ * {@link #start} returns right away, so probing overlaps with the rest of prompt building.
+ * The result holds whatever finished within each probe's deadline and the overall
+ * {@code cmdzen.context.budget}. A probe that misses them keeps running and still stores its
+ * result in the {@link ContextCache}, keyed by directory and invalidated by the modification
+ * times of the files it depends on, so the next failure there gets it instantly.
+ */
+@Slf4j
+@Service
+public class ContextCollector {
+
+    private final List<ContextProbe> probes;
+    private final ContextConfig config;
+    private final ContextCache cache;
+    private final MetricsService metrics;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cmdzen-context-", 0).factory());
+
+    public ContextCollector(List<ContextProbe> probes, ContextConfig config, ContextCache cache,
+                            MetricsService metrics) {
+        this.probes = probes;
+        this.config = config;
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts probing for a failure of {@code command} in the current request's directory. The
+     * future completes within the budget with one entry per probe that had something to
+     * report, in probe order.
+     */
+    public CompletableFuture<List<String>> start(String command) {
+        if (!config.isEnabled() || probes.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        ContextProbe.Target target = new ContextProbe.Target(command, RequestContext.workingDirectory(),
+                RequestContext.environment());
+        long budget = config.getBudget().toMillis();
+        List<CompletableFuture<String>> results = probes.stream()
+                .map(probe -> CompletableFuture.supplyAsync(() -> run(probe, target), executor)
+                        .completeOnTimeout(null, Math.min(probe.getDeadline().toMillis(), budget), TimeUnit.MILLISECONDS))
+                .toList();
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenApply(done -> results.stream()
+                        .map(result -> result.getNow(null))
+                        .filter(Objects::nonNull)
+                        .toList());
+    }
+
+    private String run(ContextProbe probe, ContextProbe.Target target) {
+        try {
+            List<Path> dependencies = probe.getDependencies(target);
+            String key = null;
+            String stamp = null;
+            if (dependencies != null) {
+                key = probe.getName() + "|" + target.directory() + "|" + dependencies.stream()
+                        .map(Path::toString)
+                        .collect(Collectors.joining(","));
+                stamp = stamp(dependencies);
+                String cached = cache.get(key, stamp);
+                if (cached != null) {
+                    return cached.isEmpty() ? null : cached;
+                }
+            }
+
+            long start = System.nanoTime();
+            String result = probe.collect(target);
+            long nanos = System.nanoTime() - start;
+            metrics.record("context." + probe.getName(), nanos);
+            if (nanos > config.getBudget().toNanos()) {
+                log.debug("Context probe {} took {} ms, over the budget", probe.getName(), nanos / 1_000_000);
+            }
+            if (key != null) {
+                cache.put(key, stamp, result == null ? "" : result);
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.debug("Context probe {} failed: {}", probe.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    // a missing file is part of the state too: its creation must invalidate the entry
+    private static String stamp(List<Path> dependencies) {
+        return dependencies.stream()
+                .map(path -> {
+                    try {
+                        return Long.toString(Files.getLastModifiedTime(path).toMillis());
+                    } catch (IOException e) {
+                        return "-";
+                    }
+                })
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,43 @@
+package io.cmdzen.cli.services;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One piece of environment context for the solve prompt, e.g. the git state or a tool version.
+ * Implementations are Spring beans; {@link ContextCollector} runs them concurrently, and their
+ * {@link org.springframework.core.annotation.Order} is the order of the lines in the prompt.
+ */
+public interface ContextProbe {
+
+    Duration DEFAULT_DEADLINE = Duration.ofMillis(100);
+
+    /** Short stable name used in the cache and metrics, e.g. {@code git}. */
+    String getName();
+
+    /** How long the collector waits for this probe before leaving it out of the prompt. */
+    default Duration getDeadline() {
+        return DEFAULT_DEADLINE;
+    }
+
+    /**
+     * The files whose modification times decide whether a cached result for this target is
+     * still valid, or null if the result changes too often to cache.
+     */
+    List<Path> getDependencies(Target target);
+
+    /** The context for the prompt, or null when there's nothing worth reporting. */
+    String collect(Target target) throws Exception;
+
+    /**
+     * The failed command, and the directory and environment it ran in.
+     */
+    record Target(String command, Path directory, Map<String, String> environment) {
+
+        public String getenv(String name) {
+            return environment.get(name);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.cmdzen.cli.services;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cmdzen.cli.config.AIConfig;
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.config.ConversationConfig;
+import io.cmdzen.cli.config.PromptConfig;
+import io.cmdzen.cli.model.ChatMessage;
+import io.cmdzen.cli.model.Conversation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One {@link Conversation} per shell in {@code conversations/<shell pid>.json} in the state
+ * directory. Each {@code solve} starts its shell's conversation over; {@code solve --follow-up}
+ * appends to it.
+ */
+@Slf4j
+@Service
+public class ConversationStore {
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // per-message overhead of the chat format, in tokens
+    private static final int MESSAGE_TOKENS = 4;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final ConversationConfig config;
+    private final PromptConfig promptConfig;
+    private final AIConfig aiConfig;
+    private final Path directory;
+
+    public ConversationStore(ConversationConfig config, PromptConfig promptConfig, AIConfig aiConfig) {
+        this.config = config;
+        this.promptConfig = promptConfig;
+        this.aiConfig = aiConfig;
+        this.directory = CmdzenPaths.stateDir().resolve("conversations");
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * The shell's conversation, or null if there is none or it has expired.
+     */
+    public Conversation load(String shellPid) {
+        if (!config.isEnabled()) return null;
+        Path file = fileFor(shellPid);
+        try {
+            Conversation conversation = mapper.readValue(Files.readAllBytes(file), Conversation.class);
+            if (System.currentTimeMillis() - conversation.getUpdated() > config.getTtl().toMillis()) {
+                log.debug("Conversation of shell {} expired", shellPid);
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return conversation;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable conversation {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(String shellPid, Conversation conversation) {
+        if (!config.isEnabled()) return;
+        conversation.setUpdated(System.currentTimeMillis());
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, "conversation", ".tmp");
+            Files.write(tmp, mapper.writeValueAsBytes(conversation));
+            try {
+                Files.move(tmp, fileFor(shellPid), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, fileFor(shellPid), StandardCopyOption.REPLACE_EXISTING);
+            }
+            removeExpired();
+        } catch (IOException e) {
+            log.warn("Failed to save the conversation of shell {}: {}", shellPid, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the oldest follow-up exchanges until the conversation fits the configured model's
+     * window (see {@link #contextTokens()}). The opening prompt and answer and the newest
+     * message always stay, so the cached prefix survives trimming. Returns the number of
+     * messages dropped.
+     */
+    public int fit(Conversation conversation) {
+        List<ChatMessage> messages = conversation.getMessages();
+        long limit = contextTokens();
+        long tokens = messages.stream().mapToLong(ConversationStore::estimateTokens).sum();
+        int dropped = 0;
+        // keep [0] and [1], remove the question/answer pair at [2] and [3] while one is left before the newest
+        while (tokens > limit && messages.size() >= 5) {
+            tokens -= estimateTokens(messages.remove(2)) + estimateTokens(messages.remove(2));
+            dropped += 2;
+        }
+        if (dropped > 0) {
+            log.debug("Dropped {} older messages to fit {} tokens", dropped, limit);
+        }
+        return dropped;
+    }
+
+    /**
+     * Tokens the conversation may take with the configured model:
+     * {@code cmdzen.conversation.context-tokens} scaled by the model's
+     * {@code cmdzen.prompt.model-budgets} entry relative to {@code cmdzen.prompt.token-budget}.
+     * A model given four times the default output budget keeps four times the conversation.
+     */
+    long contextTokens() {
+        return (long) config.getContextTokens() * promptConfig.budgetFor(aiConfig.getModel())
+                / Math.max(1, promptConfig.getTokenBudget());
+    }
+
+    public int getFollowUpOutputTokens() {
+        return config.getFollowUpOutputTokens();
+    }
+
+    static long estimateTokens(ChatMessage message) {
+        return MESSAGE_TOKENS + message.getContent().length() / CHARS_PER_TOKEN;
+    }
+
+    private void removeExpired() throws IOException {
+        long expiredBefore = System.currentTimeMillis() - config.getTtl().toMillis();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < expiredBefore) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // removed by another process in the meantime
+                }
+            }
+        }
+    }
+
+    private Path fileFor(String shellPid) {
+        return directory.resolve(shellPid.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+    }
+}
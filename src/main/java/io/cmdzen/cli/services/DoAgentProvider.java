@@ -0,0 +1,56 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.model.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The DigitalOcean GenAI agent ({@code OCEAN_AGENT_URL} and {@code OCEAN_AGENT_KEY}).
+ */
+@Lazy
+@Service
+@Order(1)
+public class DoAgentProvider implements AIProvider {
+
+    private final boolean configured;
+    private final ChatCompletionsClient client;
+
+    public DoAgentProvider(RestClient.Builder restClientBuilder,
+                           @Value("${do.agent.url:}") String doAgentUrl,
+                           @Value("${do.agent.key:}") String doAgentKey) {
+        this.configured = doAgentUrl != null && !doAgentUrl.isEmpty() &&
+                          doAgentKey != null && !doAgentKey.isEmpty();
+        this.client = new ChatCompletionsClient(restClientBuilder.build(),
+                doAgentUrl + "/api/v1/chat/completions", doAgentKey, null,
+                Map.of("include_functions_info", false,
+                        "include_retrieval_info", false,
+                        "include_guardrails_info", false));
+    }
+
+    @Override
+    public String getName() {
+        return "do-agent";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return configured;
+    }
+
+    @Override
+    public String complete(List<ChatMessage> messages) {
+        return client.complete(messages);
+    }
+
+    @Override
+    public String stream(List<ChatMessage> messages, Consumer<String> onToken) {
+        return client.stream(messages, onToken);
+    }
+}
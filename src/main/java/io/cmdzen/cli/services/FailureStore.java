@@ -0,0 +1,415 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.config.FailureStoreConfig;
+import io.cmdzen.cli.model.CapturedRun;
+import io.cmdzen.cli.model.FailureRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only store of the last failures captured by the shell hooks.
+ * <p>
+ * The hooks drop a copy of every failure into {@code failures/spool/} in the state directory
+ * (a path they hardcode, so it isn't configurable); each access first moves spooled files
+ * into the store. {@code failures.dat} holds one gzip member per failure and
+ * {@code failures.idx} a fixed-size record per failure in id order, so the newest entries
+ * and any id are found by seeking, whatever the size of the store. Once the limits are
+ * exceeded by a quarter, the oldest entries are dropped by rewriting both files; both
+ * headers carry a generation number so a rewrite interrupted between the two renames is
+ * detected and finished on the next access.
+ */
+@Slf4j
+@Service
+public class FailureStore {
+
+    private static final int INDEX_MAGIC = 0x435a4631; // "CZF1"
+    private static final int DATA_MAGIC = 0x435a4431; // "CZD1"
+    private static final int VERSION = 2;
+    // magic, version, generation
+    private static final int HEADER_SIZE = 16;
+    private static final long MISSING = -1;
+    private static final long UNREADABLE = -2;
+    private static final int RECORD_SIZE = 256;
+    // id, timestamp, pid, exit code, offset, length, command length
+    private static final int COMMAND_BYTES = RECORD_SIZE - (8 + 8 + 8 + 4 + 8 + 4 + 2);
+
+    private final FailureStoreConfig config;
+    private final Path directory;
+    private final Path spoolDir;
+    private final Path dataFile;
+    private final Path indexFile;
+    private final Path dataTmp;
+    private final Path indexTmp;
+
+    @Autowired
+    public FailureStore(FailureStoreConfig config) {
+        this(config, CmdzenPaths.stateDir().resolve("failures"));
+    }
+
+    FailureStore(FailureStoreConfig config, Path directory) {
+        this.config = config;
+        this.directory = directory;
+        this.spoolDir = directory.resolve("spool");
+        this.dataFile = directory.resolve("failures.dat");
+        this.indexFile = directory.resolve("failures.idx");
+        this.dataTmp = directory.resolve("failures.dat.tmp");
+        this.indexTmp = directory.resolve("failures.idx.tmp");
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * The newest failures first, optionally only those of one shell ({@code shellPid} 0
+     * for all shells).
+     */
+    public synchronized List<FailureRecord> recent(int limit, long shellPid) throws IOException {
+        if (!config.isEnabled()) return List.of();
+        return locked(() -> {
+            recover();
+            ingest();
+            List<FailureRecord> records = new ArrayList<>();
+            if (!Files.exists(indexFile)) return records;
+            try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                for (long i = count(index) - 1; i >= 0 && records.size() < limit; i--) {
+                    FailureRecord record = readRecord(index, i);
+                    if (shellPid == 0 || record.getShellPid() == shellPid) {
+                        records.add(record);
+                    }
+                }
+            }
+            return records;
+        });
+    }
+
+    /**
+     * Loads failure {@code id}, or returns null if it was never stored or has been evicted.
+     */
+    public synchronized CapturedRun load(long id) throws IOException {
+        if (!config.isEnabled()) return null;
+        return locked(() -> {
+            recover();
+            ingest();
+            if (!Files.exists(indexFile)) return null;
+            try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                long count = count(index);
+                if (count == 0) return null;
+                long position = id - readRecord(index, 0).getId();
+                if (position < 0 || position >= count) return null;
+                FailureRecord record = readRecord(index, position);
+                return record.getId() == id ? CapturedRun.of(readData(record)) : null;
+            }
+        });
+    }
+
+    /**
+     * Puts the data and index files back in step after a crash. Compaction writes both to
+     * temporary files tagged with the next generation, then renames the data file and lastly
+     * the index; if only the data file made it, the temporary index still matches it and its
+     * rename is finished here. Files that match nothing are dropped and the store starts over.
+     */
+    private void recover() throws IOException {
+        long dataGeneration = generation(dataFile, DATA_MAGIC);
+        long indexGeneration = generation(indexFile, INDEX_MAGIC);
+        if (dataGeneration == indexGeneration && dataGeneration != UNREADABLE) {
+            Files.deleteIfExists(dataTmp);
+            Files.deleteIfExists(indexTmp);
+            return;
+        }
+        if (dataGeneration >= 0 && generation(indexTmp, INDEX_MAGIC) == dataGeneration) {
+            move(indexTmp, indexFile);
+            log.info("Finished an interrupted compaction of the failure store");
+            return;
+        }
+        log.warn("Failure store files don't match (data generation {}, index generation {}), starting over",
+                dataGeneration, indexGeneration);
+        for (Path file : List.of(dataFile, indexFile, dataTmp, indexTmp)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * The generation in the header of {@code file}, {@link #MISSING} if it doesn't exist or its
+     * header was never completely written, or {@link #UNREADABLE} if it isn't one of ours.
+     */
+    private static long generation(Path file, int magic) throws IOException {
+        if (!Files.exists(file)) return MISSING;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return MISSING;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) return MISSING;
+            }
+            header.flip();
+            if (header.getInt() != magic || header.getInt() != VERSION) return UNREADABLE;
+            return header.getLong();
+        }
+    }
+
+    private void ingest() throws IOException {
+        if (!Files.isDirectory(spoolDir)) return;
+        List<Path> spooled;
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            spooled = files.filter(f -> f.getFileName().toString().endsWith(".txt"))
+                    .sorted(Comparator.comparingLong(this::modifiedMillis)
+                            .thenComparing(f -> f.getFileName().toString()))
+                    .toList();
+        }
+        if (spooled.isEmpty()) return;
+
+        // more than the store keeps anyway: skip straight to the newest
+        int skip = Math.max(0, spooled.size() - config.getMaxEntries());
+        for (Path file : spooled.subList(0, skip)) {
+            Files.deleteIfExists(file);
+        }
+
+        try (FileChannel index = openIndexForAppend();
+             FileChannel data = openDataForAppend(readGeneration(index))) {
+            long count = count(index);
+            long nextId = count == 0 ? 1 : readRecord(index, count - 1).getId() + 1;
+            for (Path file : spooled.subList(skip, spooled.size())) {
+                byte[] content = Files.readAllBytes(file);
+                CapturedRun run = CapturedRun.of(content);
+                byte[] compressed = gzip(content);
+                long offset = data.size();
+                writeFully(data, ByteBuffer.wrap(compressed), offset);
+
+                FailureRecord record = new FailureRecord(nextId++, modifiedMillis(file), spoolPid(file),
+                        run.getExitCode(), run.getCommand() == null ? "" : run.getCommand(), offset, compressed.length);
+                writeFully(index, encode(record), HEADER_SIZE + count++ * RECORD_SIZE);
+                Files.deleteIfExists(file);
+                log.debug("Stored failure {} ({} -> {} bytes)", record.getId(), content.length, compressed.length);
+            }
+        }
+        compactIfNeeded();
+    }
+
+    private FileChannel openIndexForAppend() throws IOException {
+        FileChannel index = FileChannel.open(indexFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (index.size() < HEADER_SIZE) {
+            index.truncate(0);
+            writeFully(index, header(INDEX_MAGIC, 0), 0);
+        } else if ((index.size() - HEADER_SIZE) % RECORD_SIZE != 0) {
+            // a record torn by a crash mid-write
+            index.truncate(HEADER_SIZE + count(index) * RECORD_SIZE);
+        }
+        return index;
+    }
+
+    private FileChannel openDataForAppend(long generation) throws IOException {
+        FileChannel data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (data.size() < HEADER_SIZE) {
+            data.truncate(0);
+            writeFully(data, header(DATA_MAGIC, generation), 0);
+        }
+        return data;
+    }
+
+    /**
+     * Rewrites the store keeping the newest entries within the limits. Only runs once they
+     * are exceeded by a quarter so the cost is spread over many appends.
+     */
+    private void compactIfNeeded() throws IOException {
+        long dataSize = Files.size(dataFile) - HEADER_SIZE;
+        List<FailureRecord> records = new ArrayList<>();
+        long generation;
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            generation = readGeneration(index) + 1;
+            long count = count(index);
+            if (count <= config.getMaxEntries() * 5L / 4 && dataSize <= config.getMaxBytes() * 5 / 4) return;
+            long bytes = 0;
+            for (long i = count - 1; i >= 0 && records.size() < config.getMaxEntries(); i--) {
+                FailureRecord record = readRecord(index, i);
+                if (bytes + record.getLength() > config.getMaxBytes() && !records.isEmpty()) break;
+                bytes += record.getLength();
+                records.add(0, record);
+            }
+        }
+
+        try (FileChannel source = FileChannel.open(dataFile, StandardOpenOption.READ);
+             FileChannel data = FileChannel.open(dataTmp, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel index = FileChannel.open(indexTmp, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(data, header(DATA_MAGIC, generation), 0);
+            writeFully(index, header(INDEX_MAGIC, generation), 0);
+            long position = HEADER_SIZE;
+            data.position(position); // transferTo appends at the channel position
+            for (int i = 0; i < records.size(); i++) {
+                FailureRecord r = records.get(i);
+                long copied = 0;
+                while (copied < r.getLength()) {
+                    copied += source.transferTo(r.getOffset() + copied, r.getLength() - copied, data);
+                }
+                FailureRecord moved = new FailureRecord(r.getId(), r.getTimestamp(), r.getShellPid(),
+                        r.getExitCode(), r.getCommand(), position, r.getLength());
+                writeFully(index, encode(moved), HEADER_SIZE + (long) i * RECORD_SIZE);
+                position += r.getLength();
+            }
+            // both must be on disk before the renames that make them current
+            data.force(true);
+            index.force(true);
+        }
+        move(dataTmp, dataFile);
+        move(indexTmp, indexFile);
+        log.debug("Compacted failure store to {} entries (generation {})", records.size(), generation);
+    }
+
+    private <T> T locked(IOAction<T> action) throws IOException {
+        Files.createDirectories(directory,
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            return action.run();
+        }
+    }
+
+    private byte[] readData(FailureRecord record) throws IOException {
+        try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(record.getLength());
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, record.getOffset() + buffer.position()) < 0) {
+                    throw new IOException("Failure store data is truncated");
+                }
+            }
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(buffer.array()))) {
+                return in.readAllBytes();
+            }
+        }
+    }
+
+    private static ByteBuffer header(int magic, long generation) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(VERSION).putLong(generation).clear();
+    }
+
+    private static long readGeneration(FileChannel index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (index.read(buffer, 8 + buffer.position()) < 0) {
+                throw new IOException("Failure index header is truncated");
+            }
+        }
+        return buffer.flip().getLong();
+    }
+
+    private static long count(FileChannel index) throws IOException {
+        return Math.max(0, (index.size() - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    private static FailureRecord readRecord(FileChannel index, long i) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        while (buffer.hasRemaining()) {
+            if (index.read(buffer, HEADER_SIZE + i * RECORD_SIZE + buffer.position()) < 0) {
+                throw new IOException("Failure index is truncated");
+            }
+        }
+        buffer.flip();
+        long id = buffer.getLong();
+        long timestamp = buffer.getLong();
+        long pid = buffer.getLong();
+        int exitCode = buffer.getInt();
+        long offset = buffer.getLong();
+        int length = buffer.getInt();
+        byte[] command = new byte[Math.min(buffer.getShort(), COMMAND_BYTES)];
+        buffer.get(command);
+        return new FailureRecord(id, timestamp, pid, exitCode,
+                new String(command, StandardCharsets.UTF_8), offset, length);
+    }
+
+    private static ByteBuffer encode(FailureRecord record) {
+        byte[] command = truncateUtf8(record.getCommand(), COMMAND_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putLong(record.getId())
+                .putLong(record.getTimestamp())
+                .putLong(record.getShellPid())
+                .putInt(record.getExitCode())
+                .putLong(record.getOffset())
+                .putInt(record.getLength())
+                .putShort((short) command.length)
+                .put(command);
+        return buffer.clear();
+    }
+
+    private static byte[] truncateUtf8(String value, int maxBytes) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) return bytes;
+        int end = maxBytes;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) end--; // don't split a character
+        return Arrays.copyOf(bytes, end);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private long modifiedMillis(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Spool files are named {@code <shell pid>.<start epoch>.<random>.txt} by the hooks.
+     */
+    private static long spoolPid(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        try {
+            return dot > 0 ? Long.parseLong(name.substring(0, dot)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOAction<T> {
+        T run() throws IOException;
+    }
+}
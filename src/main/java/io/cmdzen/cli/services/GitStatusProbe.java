@@ -0,0 +1,94 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.ContextConfig;
+import io.cmdzen.cli.util.ProbeCommand;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The branch and uncommitted changes of the git repository the command ran in.
+ */
+@Service
+@Order(1)
+public class GitStatusProbe implements ContextProbe {
+
+    private static final int MAX_OUTPUT_BYTES = 16384;
+
+    private final ContextConfig config;
+
+    public GitStatusProbe(ContextConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return "git";
+    }
+
+    // editing a tracked file changes 'git status' without touching anything whose mtime we could watch
+    @Override
+    public List<Path> getDependencies(Target target) {
+        return null;
+    }
+
+    @Override
+    public String collect(Target target) throws IOException, InterruptedException {
+        if (findGitDir(target.directory()) == null) return null;
+
+        Map<String, String> environment = new HashMap<>(target.environment());
+        // a read-only probe must not take index.lock away from the user's own git commands
+        environment.put("GIT_OPTIONAL_LOCKS", "0");
+        String output = ProbeCommand.run(List.of("git", "status", "--porcelain=v1", "--branch"),
+                target.directory(), environment, config.getCommandTimeout(), MAX_OUTPUT_BYTES);
+        if (output == null || output.isBlank()) return null;
+
+        List<String> lines = output.lines().toList();
+        String branch = lines.get(0).startsWith("## ") ? lines.get(0).substring(3) : null;
+        List<String> changes = lines.subList(branch != null ? 1 : 0, lines.size());
+
+        StringBuilder sb = new StringBuilder("git: ");
+        sb.append(branch != null ? "on " + branch : "detached");
+        if (changes.isEmpty()) {
+            return sb.append(", working tree clean").toString();
+        }
+        sb.append(", ").append(changes.size()).append(changes.size() == 1 ? " changed file" : " changed files");
+        int shown = Math.min(changes.size(), config.getMaxGitStatusLines());
+        changes.subList(0, shown).forEach(change -> sb.append("\n").append(change));
+        if (shown < changes.size()) {
+            sb.append("\n... ").append(changes.size() - shown).append(" more");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The {@code .git} directory of the repository containing {@code directory}, following the
+     * {@code gitdir:} pointer of worktrees and submodules, or null outside a repository.
+     */
+    static Path findGitDir(Path directory) {
+        for (Path dir = directory; dir != null; dir = dir.getParent()) {
+            Path dotGit = dir.resolve(".git");
+            if (Files.isDirectory(dotGit)) {
+                return dotGit;
+            }
+            if (Files.isRegularFile(dotGit)) {
+                try {
+                    String pointer = Files.readString(dotGit, StandardCharsets.UTF_8).strip();
+                    if (pointer.startsWith("gitdir:")) {
+                        return dir.resolve(pointer.substring("gitdir:".length()).strip()).normalize();
+                    }
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
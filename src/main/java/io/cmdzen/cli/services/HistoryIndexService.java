@@ -0,0 +1,160 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.model.HistoryMatch;
+import io.cmdzen.cli.model.ShellEnvironment;
+import io.cmdzen.cli.util.HistoryReader;
+import io.cmdzen.cli.util.HistorySegment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent inverted index over the shell history, kept in {@code $XDG_STATE_HOME/cmdzen/history}.
+ * <p>
+ * Each shell has a main segment and a small delta segment, both remembering the byte offset
+ * of the history file they cover. A search first indexes only the entries appended since
+ * that offset into a new delta; once the delta outgrows a tenth of the main segment the two
+ * are merged. If the history file was truncated or rewritten (checked with a checksum of
+ * the bytes before the offset), the index is rebuilt from scratch.
+ */
+@Slf4j
+@Service
+public class HistoryIndexService {
+
+    private static final int MIN_MERGE_ENTRIES = 5_000;
+    private static final int TAIL_HASH_BYTES = 64;
+    // history entries after which recency counts for half
+    private static final double RECENCY_HALF_LIFE = 2_000;
+
+    private final ShellService shellService;
+    private final Path directory;
+
+    public HistoryIndexService(ShellService shellService) {
+        this.shellService = shellService;
+        this.directory = CmdzenPaths.stateDir().resolve("history");
+    }
+
+    /**
+     * History entries matching every word of {@code query} as a prefix of one of their
+     * tokens, best first. Falls back to fuzzy matching when nothing matches exactly.
+     */
+    public synchronized List<HistoryMatch> search(String query, int limit, boolean fuzzy) throws IOException {
+        List<String> terms = new ArrayList<>(HistorySegment.tokenize(query));
+        if (terms.isEmpty()) return List.of();
+
+        List<HistorySegment> segments = update();
+        List<HistoryMatch> matches = rank(segments, terms, fuzzy, limit);
+        if (matches.isEmpty() && !fuzzy) {
+            matches = rank(segments, terms, true, limit);
+        }
+        return matches;
+    }
+
+    private List<HistoryMatch> rank(List<HistorySegment> segments, List<String> terms, boolean fuzzy, int limit) {
+        long nextSeq = segments.stream().mapToLong(HistorySegment::nextSeq).max().orElse(0);
+        HistorySegment.Scorer scorer = (count, lastSeq, weight) -> score(count, nextSeq - 1 - lastSeq, weight);
+
+        // a command can be in both segments, so take some extra candidates from each
+        Map<String, HistorySegment.Hit> merged = new HashMap<>();
+        for (HistorySegment segment : segments) {
+            for (HistorySegment.Hit hit : segment.search(terms, fuzzy, limit * 2, scorer)) {
+                merged.merge(hit.command(), hit, (a, b) -> new HistorySegment.Hit(a.command(),
+                        a.count() + b.count(), Math.max(a.lastSeq(), b.lastSeq()), Math.max(a.weight(), b.weight())));
+            }
+        }
+
+        List<HistoryMatch> matches = new ArrayList<>(merged.size());
+        for (HistorySegment.Hit hit : merged.values()) {
+            long age = Math.max(0, nextSeq - 1 - hit.lastSeq());
+            matches.add(new HistoryMatch(hit.command(), hit.count(), age, score(hit.count(), age, hit.weight())));
+        }
+        matches.sort(Comparator.comparingDouble(HistoryMatch::getScore).reversed()
+                .thenComparingLong(HistoryMatch::getAge));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    private static double score(int count, long age, float weight) {
+        double recency = Math.pow(0.5, Math.max(0, age) / RECENCY_HALF_LIFE);
+        return weight * (1 + Math.log1p(count)) * (1 + 2 * recency);
+    }
+
+    /**
+     * Brings the index up to date with the history file and returns its segments.
+     */
+    private List<HistorySegment> update() throws IOException {
+        ShellEnvironment environment = shellService.getShellEnvironment();
+        Path source = environment.getHistoryPath();
+        HistoryReader.Format format = HistoryReader.Format.forShell(environment.getShellName());
+        Path mainFile = directory.resolve(environment.getShellName() + ".idx");
+        Path deltaFile = directory.resolve(environment.getShellName() + ".delta.idx");
+        if (!Files.isRegularFile(source)) return List.of();
+
+        HistorySegment main = HistorySegment.open(mainFile);
+        HistorySegment delta = main == null ? null : HistorySegment.open(deltaFile);
+        if (delta != null && delta.sourceOffset() < main.sourceOffset()) delta = null; // left over from before a merge
+        HistorySegment newest = delta != null ? delta : main;
+
+        long size = Files.size(source);
+        if (newest != null && (size < newest.sourceOffset()
+                || tailHash(source, newest.sourceOffset()) != newest.sourceTailHash())) {
+            log.debug("History file {} was rewritten, rebuilding the index", source);
+            main = delta = newest = null;
+        }
+
+        if (newest == null) {
+            HistorySegment.Builder builder = new HistorySegment.Builder(0);
+            long offset = HistoryReader.readFrom(source, 0, format, builder::add);
+            builder.write(mainFile, offset, tailHash(source, offset));
+            Files.deleteIfExists(deltaFile);
+            return segments(HistorySegment.open(mainFile), null);
+        }
+        if (size == newest.sourceOffset()) return segments(main, delta);
+
+        HistorySegment.Builder builder = new HistorySegment.Builder(newest.nextSeq());
+        if (delta != null) delta.copyInto(builder);
+        long offset = HistoryReader.readFrom(source, newest.sourceOffset(), format, builder::add);
+        if (offset == newest.sourceOffset()) return segments(main, delta); // only a partial entry so far
+
+        if (builder.size() > Math.max(MIN_MERGE_ENTRIES, main.entryCount() / 10)) {
+            main.copyInto(builder);
+            builder.write(mainFile, offset, tailHash(source, offset));
+            Files.deleteIfExists(deltaFile);
+            return segments(HistorySegment.open(mainFile), null);
+        }
+        builder.write(deltaFile, offset, tailHash(source, offset));
+        return segments(main, HistorySegment.open(deltaFile));
+    }
+
+    private static List<HistorySegment> segments(HistorySegment main, HistorySegment delta) {
+        List<HistorySegment> segments = new ArrayList<>(2);
+        if (main != null) segments.add(main);
+        if (delta != null) segments.add(delta);
+        return segments;
+    }
+
+    private static long tailHash(Path file, long offset) throws IOException {
+        int length = (int) Math.min(offset, TAIL_HASH_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset - length + buffer.position()) < 0) break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.flip());
+        return crc.getValue();
+    }
+}
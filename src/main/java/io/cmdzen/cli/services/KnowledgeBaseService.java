@@ -0,0 +1,151 @@
+package io.cmdzen.cli.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.model.ErrorRule;
+import io.cmdzen.cli.util.MultiPatternMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
+
+/**
+ * Offline knowledge base of well-understood failures, consulted before any AI provider.
+ * <p>
+ * Rules come from the bundled {@code kb/rules.json} and from every {@code *.json} file in
+ * {@code ~/.config/cmdzen/rules/}; user rules are listed first so they win over built-ins.
+ * All literal patterns of all rules are compiled into one {@link MultiPatternMatcher}, so
+ * matching costs a single pass over the output no matter how many rules exist.
+ */
+@Slf4j
+@Service
+public class KnowledgeBaseService {
+
+    private static final JsonMapper mapper = JsonMapper.builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+            .build();
+
+    private final Path userRulesDir;
+    private volatile Index index;
+
+    public KnowledgeBaseService() {
+        this.userRulesDir = CmdzenPaths.configDir().resolve("rules");
+    }
+
+    /**
+     * Returns the matching rules in priority order (user rules first, then file order).
+     */
+    public List<ErrorRule> match(String command, int exitCode, String output) {
+        Index idx = index();
+        BitSet hits = output == null ? new BitSet() : idx.matcher().match(output);
+
+        List<ErrorRule> matched = new ArrayList<>();
+        for (int r = 0; r < idx.rules().size(); r++) {
+            ErrorRule rule = idx.rules().get(r);
+            if (rule.getMode() == ErrorRule.Mode.ANSWER && exitCode == 0) continue;
+            if (!rule.getExitCodes().isEmpty() && !rule.getExitCodes().contains(exitCode)) continue;
+            if (!rule.getCommandPrefixes().isEmpty() && !startsWithAny(command, rule.getCommandPrefixes())) continue;
+            if (!rule.getPatterns().isEmpty() && !anyHit(hits, idx.firstPattern()[r], rule.getPatterns().size())) continue;
+            if (rule.getProgramPattern() != null && rule.programIn(output) == null) continue;
+            matched.add(rule);
+        }
+        if (!matched.isEmpty()) {
+            log.debug("Knowledge base matched: {}", matched.stream().map(ErrorRule::getId).toList());
+        }
+        return matched;
+    }
+
+    private Index index() {
+        Index idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                if (index == null) {
+                    index = build(loadRules());
+                }
+                idx = index;
+            }
+        }
+        return idx;
+    }
+
+    private List<ErrorRule> loadRules() {
+        List<ErrorRule> rules = new ArrayList<>();
+        if (Files.isDirectory(userRulesDir)) {
+            try (Stream<Path> files = Files.list(userRulesDir)) {
+                files.filter(f -> f.getFileName().toString().endsWith(".json"))
+                        .sorted()
+                        .forEach(f -> {
+                            try {
+                                rules.addAll(readRules(Files.newInputStream(f)));
+                                log.debug("Loaded user rules from {}", f);
+                            } catch (IOException e) {
+                                log.warn("Skipping invalid rule file {}: {}", f, e.getMessage());
+                            }
+                        });
+            } catch (IOException e) {
+                log.warn("Could not list user rules in {}: {}", userRulesDir, e.getMessage());
+            }
+        }
+        try {
+            rules.addAll(readRules(new ClassPathResource("kb/rules.json").getInputStream()));
+        } catch (IOException e) {
+            log.error("Failed to load built-in knowledge base", e);
+        }
+        rules.removeIf(rule -> rule.getText() == null || rule.getText().isBlank());
+        return rules;
+    }
+
+    private List<ErrorRule> readRules(InputStream in) throws IOException {
+        try (in) {
+            return mapper.readValue(in, new TypeReference<List<ErrorRule>>() {});
+        }
+    }
+
+    private Index build(List<ErrorRule> loaded) {
+        List<ErrorRule> rules = new ArrayList<>(loaded.size());
+        for (ErrorRule rule : loaded) {
+            try {
+                rule.compile();
+                rules.add(rule);
+            } catch (PatternSyntaxException e) {
+                log.warn("Skipping rule {} with an invalid programPattern: {}", rule.getId(), e.getDescription());
+            }
+        }
+        List<String> patterns = new ArrayList<>();
+        int[] firstPattern = new int[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            firstPattern[r] = patterns.size();
+            patterns.addAll(rules.get(r).getPatterns());
+        }
+        log.debug("Knowledge base: {} rules, {} patterns", rules.size(), patterns.size());
+        return new Index(rules, firstPattern, new MultiPatternMatcher(patterns));
+    }
+
+    private static boolean anyHit(BitSet hits, int from, int count) {
+        int next = hits.nextSetBit(from);
+        return next >= 0 && next < from + count;
+    }
+
+    private static boolean startsWithAny(String command, List<String> prefixes) {
+        if (command == null) return false;
+        String trimmed = command.trim();
+        for (String prefix : prefixes) {
+            if (trimmed.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private record Index(List<ErrorRule> rules, int[] firstPattern, MultiPatternMatcher matcher) {
+    }
+}
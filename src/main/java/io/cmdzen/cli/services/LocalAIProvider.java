@@ -0,0 +1,77 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.LocalAIConfig;
+import io.cmdzen.cli.model.ChatMessage;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A llama.cpp, Ollama or other OpenAI-compatible server on this machine or the local network
+ * ({@code cmdzen.ai.local.url}). Uses its own HTTP client: no proxy, plain HTTP/1.1 and a
+ * timeout sized for CPU inference, so it works on hosts that can't reach the internet.
+ */
+@Lazy
+@Service
+@Order(0)
+public class LocalAIProvider implements AIProvider {
+
+    public static final String NAME = "local";
+
+    private final LocalAIConfig config;
+    private final HttpClient httpClient;
+    private final ChatCompletionsClient client;
+
+    public LocalAIProvider(LocalAIConfig config) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .proxy(HttpClient.Builder.NO_PROXY)
+                .connectTimeout(config.getConnectTimeout())
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(config.getTimeout());
+        this.client = new ChatCompletionsClient(RestClient.builder().requestFactory(requestFactory).build(),
+                config.getUrl(), config.getApiKey(), config.getModel(), Map.of());
+    }
+
+    @PreDestroy
+    public void close() {
+        httpClient.shutdownNow();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return config.getUrl() != null && !config.getUrl().isBlank();
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public String complete(List<ChatMessage> messages) {
+        return client.complete(messages);
+    }
+
+    @Override
+    public String stream(List<ChatMessage> messages, Consumer<String> onToken) {
+        return client.stream(messages, onToken);
+    }
+}
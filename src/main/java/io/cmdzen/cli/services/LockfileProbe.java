@@ -0,0 +1,61 @@
+package io.cmdzen.cli.services;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The package manager lockfiles in the command's directory, and a git {@code index.lock} left
+ * behind by another or a crashed git process.
+ */
+@Service
+@Order(3)
+public class LockfileProbe implements ContextProbe {
+
+    private static final List<String> LOCKFILES = List.of(
+            "package-lock.json", "npm-shrinkwrap.json", "yarn.lock", "pnpm-lock.yaml", "bun.lockb",
+            "Cargo.lock", "poetry.lock", "Pipfile.lock", "uv.lock", "Gemfile.lock", "composer.lock",
+            "go.sum", "gradle.lockfile", "flake.lock", ".terraform.lock.hcl");
+
+    @Override
+    public String getName() {
+        return "lockfiles";
+    }
+
+    @Override
+    public Duration getDeadline() {
+        return Duration.ofMillis(50);
+    }
+
+    // creating or deleting a file changes its directory's modification time
+    @Override
+    public List<Path> getDependencies(Target target) {
+        Path gitDir = GitStatusProbe.findGitDir(target.directory());
+        return gitDir == null ? List.of(target.directory()) : List.of(target.directory(), gitDir);
+    }
+
+    @Override
+    public String collect(Target target) {
+        String present = LOCKFILES.stream()
+                .filter(name -> Files.exists(target.directory().resolve(name)))
+                .collect(Collectors.joining(", "));
+        Path gitDir = GitStatusProbe.findGitDir(target.directory());
+        boolean indexLocked = gitDir != null && Files.exists(gitDir.resolve("index.lock"));
+
+        StringBuilder sb = new StringBuilder();
+        if (!present.isEmpty()) {
+            sb.append("lockfiles: ").append(present);
+        }
+        if (indexLocked) {
+            if (!sb.isEmpty()) sb.append("\n");
+            sb.append("git: ").append(gitDir.resolve("index.lock"))
+                    .append(" exists (another git process is running, or one crashed)");
+        }
+        return sb.isEmpty() ? null : sb.toString();
+    }
+}
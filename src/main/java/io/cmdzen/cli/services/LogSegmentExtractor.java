@@ -0,0 +1,440 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.LogScanConfig;
+import io.cmdzen.cli.model.LogDigest;
+import io.cmdzen.cli.model.LogSegment;
+import io.cmdzen.cli.util.MultiPatternMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the error segments of a build log in one streaming pass.
+ * <p>
+ * Lines are examined in place as bytes: an Aho-Corasick prefilter discards the vast
+ * majority, and only candidate lines are classified with regular expressions. A segment
+ * starts at an error line with a few lines of context before it and grows while error or
+ * stack-frame lines follow. Segments are deduplicated by their digit-normalized error lines
+ * and ranked by kind, repetition and position (errors near the end of a log usually caused
+ * the failure). Memory is bounded by the number of distinct segments tracked, not by the
+ * log size. Files are memory-mapped and scanned in parallel chunks.
+ */
+@Slf4j
+@Service
+public class LogSegmentExtractor {
+
+    private static final MultiPatternMatcher PREFILTER = new MultiPatternMatcher(List.of(
+            "error", "fail", "exception", "traceback", "caused by", "panic", "fatal", "assert",
+            "denied", "not found", "cannot", "unable to", "segmentation fault", "timed out", "refused",
+            "undefined reference"));
+    private static final Pattern ERROR_MARKER = Pattern.compile("##\\[error]|^::error");
+    private static final Pattern COMPILER_ERROR = Pattern.compile(
+            "^\\S+?:\\d+(:\\d+)?:?\\s*(fatal )?error\\b|^\\[ERROR]|^error(\\[E\\d+])?:|\\berror (TS|CS)\\d+",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern TEST_FAILURE = Pattern.compile(
+            "^--- FAIL|^FAIL\\b|\\bFAILED\\b|Tests run: \\d+, Failures: [1-9]|AssertionError|\\btests? failed",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern STACK_TRACE = Pattern.compile(
+            "Exception in thread|^Traceback \\(most recent call last\\)|^Caused by:|^panic:|^\\S+(Exception|Error)(: |$)");
+    // summaries like "Failures: 0, Errors: 0" that mention errors without reporting any
+    private static final Pattern NO_ERRORS = Pattern.compile(
+            "\\b(0|no) (errors?|failures?|failed)\\b|\\b(errors?|failures?|failed):? 0\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CONTINUATION = Pattern.compile(
+            "^\\s+at |^\\s+File \"|^\\s+\\.\\.\\. \\d+ more|^\\s+\\^|^goroutine \\d+|^\\s+\\S+\\.go:\\d+");
+    private static final int PRE_CONTEXT_BYTES = 64 * 1024;
+    private static final int POST_CONTEXT_BYTES = 4 * 1024 * 1024;
+    private static final int READ_BUFFER = 1024 * 1024;
+
+    private final LogScanConfig config;
+
+    public LogSegmentExtractor(LogScanConfig config) {
+        this.config = config;
+    }
+
+    public LogDigest extract(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkBytes = Math.max(1024 * 1024, config.getChunkBytes());
+            int chunks = (int) Math.max(1, (size + chunkBytes - 1) / chunkBytes);
+            List<Scan> scans = new ArrayList<>(chunks);
+            if (chunks == 1) {
+                scans.add(scanChunk(channel, 0, size, size, -1));
+            } else {
+                // CPU-bound, so one platform thread per core rather than virtual threads
+                int threads = Math.min(chunks, Runtime.getRuntime().availableProcessors());
+                try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+                    List<Future<Scan>> futures = new ArrayList<>(chunks);
+                    for (int i = 0; i < chunks; i++) {
+                        long from = i * chunkBytes;
+                        long to = Math.min(size, from + chunkBytes);
+                        futures.add(executor.submit(() -> scanChunk(channel, from, to, size, -1)));
+                    }
+                    for (Future<Scan> future : futures) {
+                        scans.add(future.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while scanning " + file, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException io) throw io;
+                    throw new IOException("Failed to scan " + file, e.getCause());
+                }
+                // a segment open at the end of a chunk was completed from the next chunk's first
+                // lines; if that chunk also opened a segment on them, scan it again without doing so
+                for (int i = 1; i < chunks; i++) {
+                    long consumed = scans.get(i - 1).consumedThrough;
+                    if (scans.get(i).firstOpened <= consumed) {
+                        long from = i * chunkBytes;
+                        scans.set(i, scanChunk(channel, from, Math.min(size, from + chunkBytes), size, consumed));
+                    }
+                }
+            }
+            return digest(file.toString(), scans, size, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Scans a log that can only be read once, such as stdin.
+     */
+    public LogDigest extract(InputStream in, String source) throws IOException {
+        long start = System.nanoTime();
+        Scan scan = new Scan();
+        byte[] buffer = new byte[READ_BUFFER];
+        ByteBuffer view = ByteBuffer.wrap(buffer);
+        int filled = 0;
+        long offset = 0;
+        boolean eof = false;
+        while (!eof || filled > 0) {
+            if (!eof) {
+                int n = in.read(buffer, filled, buffer.length - filled);
+                if (n < 0) eof = true;
+                else filled += n;
+            }
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    scan.accept(view, lineStart, i, offset + lineStart, Zone.OWNED);
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart < filled && (eof || (lineStart == 0 && filled == buffer.length))) {
+                // last line without a newline, or one longer than the buffer
+                scan.accept(view, lineStart, filled, offset + lineStart, Zone.OWNED);
+                lineStart = filled;
+            }
+            System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+            filled -= lineStart;
+            offset += lineStart;
+        }
+        scan.finish();
+        return digest(source, List.of(scan), offset, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Scans the lines starting in {@code [from, to)}. Lines just before {@code from} only
+     * provide context, and a segment still open at {@code to} is completed from the bytes after it.
+     * Lines starting at or before {@code skipThrough} were already part of the previous chunk's
+     * last segment, so they don't open segments here.
+     */
+    private Scan scanChunk(FileChannel channel, long from, long to, long size, long skipThrough) throws IOException {
+        long mapStart = Math.max(0, from - PRE_CONTEXT_BYTES);
+        long mapEnd = Math.min(size, to + POST_CONTEXT_BYTES);
+        ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = map.limit();
+        int rangeStart = (int) (from - mapStart);
+        int rangeEnd = (int) (to - mapStart);
+
+        int position = 0;
+        if (mapStart > 0) {
+            // skip the partial line the mapping starts in
+            while (position < limit && map.get(position) != '\n') position++;
+            position++;
+        }
+        if (from > 0) {
+            // a line that starts before this chunk belongs to the previous one
+            int owned = rangeStart;
+            while (owned < limit && map.get(owned - 1) != '\n') owned++;
+            rangeStart = owned;
+        }
+
+        Scan scan = new Scan();
+        scan.skipThrough = skipThrough;
+        while (position < limit) {
+            int end = position;
+            while (end < limit && map.get(end) != '\n') end++;
+            if (position >= rangeEnd && !scan.isOpen()) break;
+            Zone zone = position < rangeStart ? Zone.BEFORE : position < rangeEnd ? Zone.OWNED : Zone.AFTER;
+            scan.accept(map, position, end, mapStart + position, zone);
+            position = end + 1;
+        }
+        scan.finish();
+        return scan;
+    }
+
+    private LogDigest digest(String source, List<Scan> scans, long size, Duration elapsed) {
+        Map<String, Found> merged = new LinkedHashMap<>();
+        long lineBase = 0;
+        for (Scan scan : scans) {
+            for (Map.Entry<String, Found> e : scan.found.entrySet()) {
+                Found found = e.getValue();
+                found.firstLine += lineBase;
+                found.lastLine += lineBase;
+                merged.merge(e.getKey(), found, Found::absorb);
+            }
+            lineBase += scan.lines;
+        }
+
+        List<LogSegment> ranked = new ArrayList<>();
+        for (Found found : merged.values()) {
+            ranked.add(new LogSegment(found.kind, found.firstLine, found.lastLine, found.occurrences,
+                    found.score(size), found.text));
+        }
+        ranked.sort(Comparator.comparingDouble(LogSegment::getScore).reversed());
+        List<LogSegment> top = new ArrayList<>(ranked.subList(0, Math.min(ranked.size(), config.getMaxSegments())));
+        top.sort(Comparator.comparingLong(LogSegment::getFirstLine));
+        log.debug("Scanned {} ({} bytes, {} lines) in {} ms: {} distinct segments",
+                source, size, lineBase, elapsed.toMillis(), merged.size());
+        return new LogDigest(source, top, size, lineBase, merged.size(), elapsed);
+    }
+
+    static LogSegment.Kind classify(CharSequence line) {
+        if (!PREFILTER.matchesAny(line)) return null;
+        if (ERROR_MARKER.matcher(line).find()) return LogSegment.Kind.ERROR_MARKER;
+        if (COMPILER_ERROR.matcher(line).find()) return LogSegment.Kind.COMPILER_ERROR;
+        if (TEST_FAILURE.matcher(line).find()) return LogSegment.Kind.TEST_FAILURE;
+        if (STACK_TRACE.matcher(line).find()) return LogSegment.Kind.STACK_TRACE;
+        return NO_ERRORS.matcher(line).find() ? null : LogSegment.Kind.ERROR;
+    }
+
+    private static boolean isContinuation(CharSequence line) {
+        if (line.isEmpty()) return false;
+        char first = line.charAt(0);
+        return (first == ' ' || first == '\t' || first == 'g') && CONTINUATION.matcher(line).find();
+    }
+
+    // where a line lies relative to the chunk being scanned
+    private enum Zone { BEFORE, OWNED, AFTER }
+
+    /**
+     * Segment detection over the lines of one chunk or stream.
+     */
+    private final class Scan {
+
+        private final Map<String, Found> found = new LinkedHashMap<>();
+        private final byte[][] context = new byte[config.getContextBefore()][config.getMaxLineLength()];
+        private final int[] contextLength = new int[config.getContextBefore()];
+        private final ByteLine line = new ByteLine();
+        private int contextCount;
+        private int contextNext;
+        // lines starting in this chunk, and those plus the ones read past its end
+        private long lines;
+        private long seen;
+
+        private StringBuilder text;
+        private StringBuilder key;
+        private LogSegment.Kind kind;
+        private long firstLine;
+        private long lastLine;
+        private long lastOffset;
+        private int segmentLines;
+        private int remainingAfter;
+        // offsets of lines: the first that opened a segment, the last one read past the chunk's
+        // end for its last segment, and the last one the previous chunk read that way
+        private long firstOpened = Long.MAX_VALUE;
+        private long consumedThrough = -1;
+        private long skipThrough = -1;
+
+        boolean isOpen() {
+            return text != null;
+        }
+
+        void accept(ByteBuffer buffer, int from, int to, long offset, Zone zone) {
+            if (to > from && buffer.get(to - 1) == '\r') to--;
+            line.reset(buffer, from, Math.min(to, from + config.getMaxLineLength()));
+            if (zone == Zone.OWNED) lines++;
+            if (zone != Zone.BEFORE) seen++;
+            boolean inRange = zone == Zone.OWNED && offset > skipThrough;
+
+            if (text != null) {
+                LogSegment.Kind lineKind = classify(line);
+                boolean continues = lineKind != null || isContinuation(line);
+                if (zone == Zone.AFTER) consumedThrough = offset;
+                append(line);
+                lastLine = seen;
+                if (continues) {
+                    key.append(similarityKey(line)).append('\n');
+                    if (lineKind != null && lineKind.weight() > kind.weight()) kind = lineKind;
+                    remainingAfter = config.getContextAfter();
+                } else {
+                    remainingAfter--;
+                }
+                lastOffset = offset;
+                if (remainingAfter <= 0 || segmentLines >= config.getMaxSegmentLines()) close();
+            } else if (inRange) {
+                LogSegment.Kind lineKind = classify(line);
+                if (lineKind != null) open(lineKind, offset);
+            }
+            remember(line);
+        }
+
+        private void open(LogSegment.Kind lineKind, long offset) {
+            firstOpened = Math.min(firstOpened, offset);
+            text = new StringBuilder();
+            key = new StringBuilder();
+            kind = lineKind;
+            segmentLines = 0;
+            for (int i = 0; i < contextCount; i++) {
+                int slot = (contextNext - contextCount + i + context.length) % context.length;
+                text.append(new String(context[slot], 0, contextLength[slot], StandardCharsets.UTF_8)).append('\n');
+                segmentLines++;
+            }
+            firstLine = seen - contextCount;
+            append(line);
+            key.append(similarityKey(line)).append('\n');
+            lastLine = seen;
+            lastOffset = offset;
+            remainingAfter = config.getContextAfter();
+        }
+
+        private void append(ByteLine line) {
+            text.append(line).append('\n');
+            segmentLines++;
+        }
+
+        private void close() {
+            String segmentKey = key.length() > 4096 ? key.substring(0, 4096) : key.toString();
+            Found existing = found.get(segmentKey);
+            if (existing != null) {
+                existing.occurrences++;
+                existing.lastOffset = lastOffset;
+            } else {
+                found.put(segmentKey, new Found(kind, Math.max(1, firstLine), lastLine, lastOffset,
+                        text.toString().stripTrailing()));
+                if (found.size() > config.getMaxDistinctSegments()) evictWeakest();
+            }
+            text = null;
+            key = null;
+        }
+
+        private void evictWeakest() {
+            String weakest = null;
+            double weakestScore = Double.MAX_VALUE;
+            for (Map.Entry<String, Found> e : found.entrySet()) {
+                // position isn't known relative to the whole log yet; rank by kind and count
+                double score = e.getValue().score(0);
+                if (score < weakestScore) {
+                    weakestScore = score;
+                    weakest = e.getKey();
+                }
+            }
+            found.remove(weakest);
+        }
+
+        private void remember(ByteLine line) {
+            if (context.length == 0) return;
+            line.copyTo(context[contextNext]);
+            contextLength[contextNext] = line.length();
+            contextNext = (contextNext + 1) % context.length;
+            contextCount = Math.min(contextCount + 1, context.length);
+        }
+
+        void finish() {
+            if (text != null) close();
+        }
+    }
+
+    private static String similarityKey(CharSequence line) {
+        return PromptCompactor.similarityKey(line.toString());
+    }
+
+    private static final class Found {
+        private final LogSegment.Kind kind;
+        private long firstLine;
+        private long lastLine;
+        private long lastOffset;
+        private int occurrences = 1;
+        private final String text;
+
+        Found(LogSegment.Kind kind, long firstLine, long lastLine, long lastOffset, String text) {
+            this.kind = kind;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.lastOffset = lastOffset;
+            this.text = text;
+        }
+
+        Found absorb(Found later) {
+            occurrences += later.occurrences;
+            lastOffset = Math.max(lastOffset, later.lastOffset);
+            return this;
+        }
+
+        double score(long size) {
+            double position = size > 0 ? (double) lastOffset / size : 0;
+            return kind.weight() * (1 + Math.log(occurrences)) + 2 * position;
+        }
+    }
+
+    /**
+     * Latin-1 view of a line's bytes, enough for the ASCII patterns; decoded as UTF-8 by
+     * {@link #toString()} when the line is kept.
+     */
+    private static final class ByteLine implements CharSequence {
+        private ByteBuffer buffer;
+        private int from;
+        private int length;
+
+        void reset(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.length = to - from;
+        }
+
+        void copyTo(byte[] target) {
+            buffer.get(from, target, 0, length);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(from + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(from + start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
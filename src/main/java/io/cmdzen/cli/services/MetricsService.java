@@ -0,0 +1,185 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.util.LatencyHistogram;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-phase latency histograms and provider counters, kept across invocations.
+ * <p>
+ * A CLI run lives for a second or two, so measurements are collected in memory and merged into
+ * {@code metrics.bin} in the state directory on shutdown (and after every daemon request),
+ * under an exclusive lock on {@code metrics.lock} so concurrent shells don't lose updates.
+ * The file holds one {@link LatencyHistogram} per name, a few hundred bytes each.
+ */
+@Slf4j
+@Service
+public class MetricsService {
+
+    private static final int MAGIC = 0x435a4d54; // "CZMT"
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final Path lockFile;
+    private final Map<String, LatencyHistogram> pending = new TreeMap<>();
+    // file locks are held per JVM, so daemon requests flushing at once need this too
+    private final Object fileMonitor = new Object();
+
+    public MetricsService() {
+        this(CmdzenPaths.stateDir());
+    }
+
+    MetricsService(Path directory) {
+        this.file = directory.resolve("metrics.bin");
+        this.lockFile = directory.resolve("metrics.lock");
+    }
+
+    /**
+     * Starts timing {@code phase}; the time is recorded when the returned timer is closed.
+     */
+    public Timer time(String phase) {
+        return new Timer(phase, System.nanoTime());
+    }
+
+    public synchronized void record(String name, long nanos) {
+        pending.computeIfAbsent(name, n -> new LatencyHistogram()).recordMicros(nanos / 1_000);
+    }
+
+    public synchronized void count(String name) {
+        pending.computeIfAbsent(name, n -> new LatencyHistogram()).increment(1);
+    }
+
+    /**
+     * Merges everything recorded since the last flush into the metrics file.
+     */
+    @PreDestroy
+    public void flush() {
+        Map<String, LatencyHistogram> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = new TreeMap<>(pending);
+            pending.clear();
+        }
+        synchronized (fileMonitor) {
+            merge(batch);
+        }
+    }
+
+    private void merge(Map<String, LatencyHistogram> batch) {
+        try (FileChannel lockChannel = openLockFile();
+             FileLock ignored = lockChannel.lock()) {
+            Map<String, LatencyHistogram> merged = read();
+            batch.forEach((name, histogram) ->
+                    merged.computeIfAbsent(name, n -> new LatencyHistogram()).add(histogram));
+            write(merged);
+        } catch (IOException e) {
+            log.debug("Failed to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Everything recorded so far, persisted and pending, by name.
+     */
+    public Map<String, LatencyHistogram> snapshot() {
+        Map<String, LatencyHistogram> all = read();
+        synchronized (this) {
+            pending.forEach((name, histogram) ->
+                    all.computeIfAbsent(name, n -> new LatencyHistogram()).add(histogram));
+        }
+        return all;
+    }
+
+    /**
+     * Drops everything recorded so far. Holds the same locks as a flush, so a flush that
+     * already read the old file can't write it back afterwards.
+     */
+    public void reset() throws IOException {
+        synchronized (this) {
+            pending.clear();
+        }
+        synchronized (fileMonitor) {
+            try (FileChannel lockChannel = openLockFile();
+                 FileLock ignored = lockChannel.lock()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        Files.createDirectories(file.getParent());
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private Map<String, LatencyHistogram> read() {
+        Map<String, LatencyHistogram> metrics = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                log.debug("Ignoring metrics file {} with an unknown format", file);
+                return metrics;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                metrics.put(name, LatencyHistogram.read(in));
+            }
+        } catch (NoSuchFileException e) {
+            // nothing recorded yet
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable metrics file {}: {}", file, e.getMessage());
+            metrics.clear();
+        }
+        return metrics;
+    }
+
+    private void write(Map<String, LatencyHistogram> metrics) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), "metrics", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(metrics.size());
+            for (Map.Entry<String, LatencyHistogram> entry : metrics.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public final class Timer implements AutoCloseable {
+
+        private final String phase;
+        private final long start;
+
+        private Timer(String phase, long start) {
+            this.phase = phase;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.AIConfig;
+import io.cmdzen.cli.model.ChatMessage;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * OpenRouter, or any hosted OpenAI-compatible API ({@code OPENROUTER_ENDPOINT}).
+ */
+@Lazy
+@Service
+@Order(2)
+public class OpenRouterProvider implements AIProvider {
+
+    private final AIConfig aiConfig;
+    private final ChatCompletionsClient client;
+
+    public OpenRouterProvider(AIConfig aiConfig, RestClient.Builder restClientBuilder) {
+        this.aiConfig = aiConfig;
+        this.client = new ChatCompletionsClient(restClientBuilder.build(), aiConfig.getEndpoint(),
+                aiConfig.getApiKey(), aiConfig.getModel(), Map.of());
+    }
+
+    @Override
+    public String getName() {
+        return "openrouter";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return aiConfig.getEndpoint() != null && !aiConfig.getEndpoint().isBlank();
+    }
+
+    @Override
+    public String complete(List<ChatMessage> messages) {
+        return client.complete(messages);
+    }
+
+    @Override
+    public String stream(List<ChatMessage> messages, Consumer<String> onToken) {
+        return client.stream(messages, onToken);
+    }
+}
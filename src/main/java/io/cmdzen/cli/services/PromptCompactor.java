@@ -0,0 +1,226 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.AIConfig;
+import io.cmdzen.cli.config.PromptConfig;
+import io.cmdzen.cli.model.CapturedRun;
+import io.cmdzen.cli.model.CompactedOutput;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shrinks captured output to a token budget in a single streaming pass.
+ * <p>
+ * Runs of identical or near-identical lines (differing only in numbers) are collapsed into
+ * one line with a {@code (×N)} marker. The first quarter of the budget keeps the head of the
+ * output, half keeps the tail in a ring buffer, and lines falling out of that ring are kept
+ * only if they look like errors, using the remaining quarter. Tokens are estimated at four
+ * characters each.
+ */
+@Slf4j
+@Service
+public class PromptCompactor {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final String[] ERROR_WORDS = {
+            "error", "fatal", "exception", "fail", "denied", "not found", "no such", "cannot", "can't",
+            "unable to", "panic", "traceback", "segmentation fault", "undefined", "err!", "refused", "timed out"
+    };
+
+    private final PromptConfig config;
+    private final AIConfig aiConfig;
+
+    public PromptCompactor(PromptConfig config, AIConfig aiConfig) {
+        this.config = config;
+        this.aiConfig = aiConfig;
+    }
+
+    /**
+     * Compacts to the budget of the configured model.
+     */
+    public CompactedOutput compact(String output) {
+        if (output == null) output = "";
+        return compact(new BufferedReader(new StringReader(output)), config.budgetFor(aiConfig.getModel()));
+    }
+
+    public CompactedOutput compact(BufferedReader reader, int tokenBudget) {
+        Pass pass = new Pass((long) tokenBudget * CHARS_PER_TOKEN, config.getMaxLineLength());
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                pass.accept(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        CompactedOutput result = pass.finish();
+        if (result.isCompacted()) {
+            log.debug("Compacted output: {}", result.summary());
+        }
+        return result;
+    }
+
+    static boolean looksLikeError(String line) {
+        String lower = line.toLowerCase(Locale.ROOT);
+        for (String word : ERROR_WORDS) {
+            if (lower.contains(word)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Key under which near-identical lines compare equal: digit runs become '#',
+     * whitespace runs a single space.
+     */
+    static String similarityKey(String line) {
+        StringBuilder sb = new StringBuilder(line.length());
+        boolean lastDigit = false;
+        boolean lastSpace = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isDigit(c)) {
+                if (!lastDigit) sb.append('#');
+                lastDigit = true;
+                lastSpace = false;
+            } else if (Character.isWhitespace(c)) {
+                if (!lastSpace) sb.append(' ');
+                lastSpace = true;
+                lastDigit = false;
+            } else {
+                sb.append(c);
+                lastDigit = false;
+                lastSpace = false;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static final class Pass {
+
+        private final long headBudget;
+        private final long tailBudget;
+        private final long errorBudget;
+        private final int maxLineLength;
+
+        private final List<String> head = new ArrayList<>();
+        private final ArrayDeque<Line> tail = new ArrayDeque<>();
+        private final List<Line> errors = new ArrayList<>();
+        private long headChars;
+        private long tailChars;
+        private long errorChars;
+        private boolean headFull;
+
+        private long originalLines;
+        private long originalChars;
+        private long droppedLines;
+        private long droppedChars;
+        private long collapsedLines;
+
+        private String runLine;
+        private String runKey;
+        private long runStart;
+        private int runCount;
+
+        Pass(long budgetChars, int maxLineLength) {
+            this.headBudget = budgetChars / 4;
+            this.tailBudget = budgetChars / 2;
+            this.errorBudget = budgetChars - headBudget - tailBudget;
+            this.maxLineLength = maxLineLength;
+        }
+
+        void accept(String line) {
+            if (CapturedRun.isMetadata(line)) return;
+            originalLines++;
+            originalChars += line.length() + 1;
+
+            String key = similarityKey(line);
+            if (runLine != null && key.equals(runKey)) {
+                runCount++;
+                return;
+            }
+            flushRun();
+            runLine = line;
+            runKey = key;
+            runStart = originalLines;
+            runCount = 1;
+        }
+
+        private void flushRun() {
+            if (runLine == null) return;
+            String text = clip(runLine);
+            if (runCount > 1) {
+                text = text + " (×" + runCount + ")";
+                collapsedLines += runCount - 1;
+            }
+            place(new Line(runStart, text));
+            runLine = null;
+        }
+
+        private String clip(String line) {
+            if (line.length() <= maxLineLength) return line;
+            int half = maxLineLength / 2;
+            return line.substring(0, half) + " …[" + (line.length() - maxLineLength) + " chars]… "
+                    + line.substring(line.length() - half);
+        }
+
+        private void place(Line line) {
+            int cost = line.text().length() + 1;
+            if (!headFull) {
+                if (headChars + cost <= headBudget) {
+                    head.add(line.text());
+                    headChars += cost;
+                    return;
+                }
+                headFull = true;
+            }
+
+            tail.addLast(line);
+            tailChars += cost;
+            while (tailChars > tailBudget && tail.size() > 1) {
+                Line evicted = tail.removeFirst();
+                int evictedCost = evicted.text().length() + 1;
+                tailChars -= evictedCost;
+                if (errorChars + evictedCost <= errorBudget && looksLikeError(evicted.text())) {
+                    errors.add(evicted);
+                    errorChars += evictedCost;
+                } else {
+                    droppedLines++;
+                    droppedChars += evictedCost;
+                }
+            }
+        }
+
+        CompactedOutput finish() {
+            flushRun();
+            StringBuilder sb = new StringBuilder();
+            head.forEach(l -> sb.append(l).append('\n'));
+
+            if (!errors.isEmpty() || droppedLines > 0) {
+                if (droppedLines > 0) {
+                    sb.append("... [").append(droppedLines).append(" lines omitted] ...\n");
+                }
+                for (Line error : errors) {
+                    sb.append("[line ").append(error.number()).append("] ").append(error.text()).append('\n');
+                }
+                if (!errors.isEmpty()) {
+                    sb.append("...\n");
+                }
+            }
+            tail.forEach(l -> sb.append(l.text()).append('\n'));
+
+            return new CompactedOutput(sb.toString().stripTrailing(), originalLines, originalChars,
+                    droppedLines, droppedChars, collapsedLines);
+        }
+    }
+
+    private record Line(long number, String text) {
+    }
+}
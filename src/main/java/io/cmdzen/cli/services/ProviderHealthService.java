@@ -0,0 +1,213 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CircuitConfig;
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.model.ProviderHealth;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Circuit breaker for AI providers that survives between invocations.
+ * <p>
+ * Every call's outcome updates the provider's latency and error-rate averages in
+ * {@code provider-health.properties} in the state directory. Repeated failures open the
+ * circuit: callers skip the provider for {@code cmdzen.ai.circuit.open-duration} instead of
+ * waiting for it to time out again. Afterwards a single invocation is let through as a probe
+ * (half-open); success closes the circuit, failure reopens it for twice as long. Reads and
+ * updates happen under an exclusive lock on {@code provider-health.lock}, so concurrent shells
+ * agree on who probes.
+ */
+@Slf4j
+@Service
+public class ProviderHealthService {
+
+    private final CircuitConfig config;
+    private final Path file;
+    private final Path lockFile;
+
+    @Autowired
+    public ProviderHealthService(CircuitConfig config) {
+        this(config, CmdzenPaths.stateDir());
+    }
+
+    ProviderHealthService(CircuitConfig config, Path directory) {
+        this.config = config;
+        this.file = directory.resolve("provider-health.properties");
+        this.lockFile = directory.resolve("provider-health.lock");
+    }
+
+    /**
+     * Whether a request may go to {@code provider} now. Claims the probe when an open
+     * circuit's waiting time is over.
+     */
+    public boolean allow(String provider) {
+        if (!config.isEnabled()) return true;
+        Boolean allowed = update(provider, health -> {
+            long now = System.currentTimeMillis();
+            if (health.getState() == ProviderHealth.State.CLOSED) return true;
+            if (now < health.getUntil()) return false;
+            log.info("Probing {} after its circuit was open for {} s", provider, health.getOpenMillis() / 1000);
+            health.setState(ProviderHealth.State.HALF_OPEN);
+            health.setUntil(now + config.getProbeTimeout().toMillis());
+            return true;
+        });
+        return allowed == null || allowed;
+    }
+
+    /**
+     * Records the outcome of one call to {@code provider}.
+     */
+    public void record(String provider, boolean success, long nanos) {
+        update(provider, health -> {
+            double alpha = config.getSmoothing();
+            health.setCalls(health.getCalls() + 1);
+            health.setErrorRate(health.getErrorRate() * (1 - alpha) + (success ? 0 : alpha));
+            if (success) {
+                double millis = nanos / 1_000_000.0;
+                health.setLatencyMillis(health.getLatencyMillis() == 0 ? millis
+                        : health.getLatencyMillis() * (1 - alpha) + millis * alpha);
+                health.setConsecutiveFailures(0);
+                if (health.getState() != ProviderHealth.State.CLOSED) {
+                    log.info("{} recovered, closing its circuit", provider);
+                    health.setState(ProviderHealth.State.CLOSED);
+                    health.setErrorRate(0);
+                    health.setOpenMillis(0);
+                }
+                return null;
+            }
+
+            health.setConsecutiveFailures(health.getConsecutiveFailures() + 1);
+            if (health.getState() == ProviderHealth.State.HALF_OPEN) {
+                open(provider, health, Math.min(health.getOpenMillis() * 2, config.getMaxOpenDuration().toMillis()));
+            } else if (health.getState() == ProviderHealth.State.CLOSED
+                    && (health.getConsecutiveFailures() >= config.getFailureThreshold()
+                    || health.getCalls() >= config.getMinCalls() && health.getErrorRate() >= config.getErrorRateThreshold())) {
+                open(provider, health, config.getOpenDuration().toMillis());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The health of every provider seen so far, by name.
+     */
+    public Map<String, ProviderHealth> snapshot() {
+        return read();
+    }
+
+    private void open(String provider, ProviderHealth health, long millis) {
+        log.warn("Opening the circuit for {} for {} s after {} consecutive failures", provider, millis / 1000,
+                health.getConsecutiveFailures());
+        health.setState(ProviderHealth.State.OPEN);
+        health.setOpenMillis(millis);
+        health.setUntil(System.currentTimeMillis() + millis);
+    }
+
+    // synchronized as well: the file lock is held per JVM, and daemon requests share this service
+    private synchronized <T> T update(String provider, Function<ProviderHealth, T> change) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                Map<String, ProviderHealth> all = read();
+                ProviderHealth health = all.computeIfAbsent(provider, p -> new ProviderHealth());
+                ProviderHealth before = copy(health);
+                T result = change.apply(health);
+                if (!health.equals(before)) {
+                    write(all);
+                }
+                return result;
+            }
+        } catch (IOException e) {
+            log.debug("Provider health unavailable in {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, ProviderHealth> read() {
+        Map<String, ProviderHealth> all = new TreeMap<>();
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return all;
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable provider health {}: {}", file, e.getMessage());
+            return all;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (dot <= 0) continue;
+            ProviderHealth health = all.computeIfAbsent(key.substring(0, dot), p -> new ProviderHealth());
+            String value = properties.getProperty(key);
+            try {
+                switch (key.substring(dot + 1)) {
+                    case "state" -> health.setState(ProviderHealth.State.valueOf(value));
+                    case "latency-ms" -> health.setLatencyMillis(Double.parseDouble(value));
+                    case "error-rate" -> health.setErrorRate(Double.parseDouble(value));
+                    case "consecutive-failures" -> health.setConsecutiveFailures(Integer.parseInt(value));
+                    case "calls" -> health.setCalls(Long.parseLong(value));
+                    case "until" -> health.setUntil(Long.parseLong(value));
+                    case "open-ms" -> health.setOpenMillis(Long.parseLong(value));
+                    default -> { }
+                }
+            } catch (IllegalArgumentException e) {
+                log.debug("Ignoring bad provider health entry {}={}", key, value);
+            }
+        }
+        return all;
+    }
+
+    private void write(Map<String, ProviderHealth> all) throws IOException {
+        Properties properties = new Properties();
+        all.forEach((provider, health) -> {
+            properties.setProperty(provider + ".state", health.getState().name());
+            properties.setProperty(provider + ".latency-ms", String.format(Locale.ROOT, "%.1f", health.getLatencyMillis()));
+            properties.setProperty(provider + ".error-rate", String.format(Locale.ROOT, "%.4f", health.getErrorRate()));
+            properties.setProperty(provider + ".consecutive-failures", Integer.toString(health.getConsecutiveFailures()));
+            properties.setProperty(provider + ".calls", Long.toString(health.getCalls()));
+            properties.setProperty(provider + ".until", Long.toString(health.getUntil()));
+            properties.setProperty(provider + ".open-ms", Long.toString(health.getOpenMillis()));
+        });
+        Path tmp = Files.createTempFile(file.getParent(), "provider-health", ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "cmdzen provider health");
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static ProviderHealth copy(ProviderHealth health) {
+        ProviderHealth copy = new ProviderHealth();
+        copy.setState(health.getState());
+        copy.setLatencyMillis(health.getLatencyMillis());
+        copy.setErrorRate(health.getErrorRate());
+        copy.setConsecutiveFailures(health.getConsecutiveFailures());
+        copy.setCalls(health.getCalls());
+        copy.setUntil(health.getUntil());
+        copy.setOpenMillis(health.getOpenMillis());
+        return copy;
+    }
+}
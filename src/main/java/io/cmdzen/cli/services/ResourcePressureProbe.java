@@ -0,0 +1,94 @@
+package io.cmdzen.cli.services;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Free disk space where the command ran and in {@code /tmp}, available memory and load. These
+ * change constantly, so they are never cached.
+ */
+@Service
+@Order(4)
+public class ResourcePressureProbe implements ContextProbe {
+
+    private static final Path TMP = Path.of("/tmp");
+    private static final Path MEMINFO = Path.of("/proc/meminfo");
+    private static final Path LOADAVG = Path.of("/proc/loadavg");
+
+    @Override
+    public String getName() {
+        return "resources";
+    }
+
+    @Override
+    public Duration getDeadline() {
+        return Duration.ofMillis(50);
+    }
+
+    @Override
+    public List<Path> getDependencies(Target target) {
+        return null;
+    }
+
+    @Override
+    public String collect(Target target) throws IOException {
+        List<String> parts = new ArrayList<>();
+        FileStore store = Files.getFileStore(target.directory());
+        parts.add("disk " + usage(store));
+        if (Files.isDirectory(TMP)) {
+            FileStore tmpStore = Files.getFileStore(TMP);
+            if (!tmpStore.equals(store)) {
+                parts.add("/tmp " + usage(tmpStore));
+            }
+        }
+
+        if (Files.isReadable(MEMINFO)) {
+            long total = -1;
+            long available = -1;
+            for (String line : Files.readAllLines(MEMINFO)) {
+                if (line.startsWith("MemTotal:")) total = kilobytes(line);
+                else if (line.startsWith("MemAvailable:")) available = kilobytes(line);
+            }
+            if (total > 0 && available >= 0) {
+                parts.add("memory " + size(available * 1024) + " available of " + size(total * 1024));
+            }
+        }
+
+        // not the OperatingSystemMXBean: initializing JMX alone takes longer than the budget
+        if (Files.isReadable(LOADAVG)) {
+            String[] fields = Files.readString(LOADAVG).trim().split("\\s+");
+            parts.add("load " + fields[0] + " on " + Runtime.getRuntime().availableProcessors() + " CPUs");
+        }
+        return "resources: " + String.join("; ", parts);
+    }
+
+    private static String usage(FileStore store) throws IOException {
+        long total = store.getTotalSpace();
+        long free = store.getUsableSpace();
+        long percent = total > 0 ? Math.round(100.0 * (total - free) / total) : 0;
+        return size(free) + " free of " + size(total) + " (" + percent + "% used)";
+    }
+
+    private static long kilobytes(String meminfoLine) {
+        String[] fields = meminfoLine.trim().split("\\s+");
+        try {
+            return Long.parseLong(fields[1]);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String size(long bytes) {
+        if (bytes >= 1L << 30) return String.format(Locale.ROOT, "%.1f GB", bytes / (double) (1L << 30));
+        return String.format(Locale.ROOT, "%d MB", bytes >> 20);
+    }
+}
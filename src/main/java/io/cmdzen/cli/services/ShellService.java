@@ -1,6 +1,8 @@
 package io.cmdzen.cli.services;
 
+import io.cmdzen.cli.model.CapturedRun;
 import io.cmdzen.cli.model.CommandHistory;
+import io.cmdzen.cli.model.OutputWindow;
 import io.cmdzen.cli.model.ShellEnvironment;
 
 import java.io.IOException;
@@ -12,8 +14,12 @@ public interface ShellService {
     CommandHistory getCommandHistory();
     CommandHistory getLocalCommandHistory() throws IOException;
     String getLastCommand();
+    String getLastCommand(CapturedRun capturedRun);
     Path getConfigPath();
+    String getShellPid();
+    CapturedRun getLastCapturedRun();
     String getLastCommandOutput();
+    OutputWindow getLastOutputWindow(int headBytes, int tailBytes);
     int getLastExitCode();
     boolean injectShellIntegration();
 
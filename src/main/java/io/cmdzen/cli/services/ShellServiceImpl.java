@@ -1,32 +1,45 @@
 package io.cmdzen.cli.services;
 
+import io.cmdzen.cli.daemon.RequestContext;
+import io.cmdzen.cli.model.CapturedRun;
 import io.cmdzen.cli.model.CommandHistory;
+import io.cmdzen.cli.model.OutputWindow;
 import io.cmdzen.cli.model.ShellEnvironment;
+import io.cmdzen.cli.util.HistoryReader;
 import lombok.extern.slf4j.Slf4j;
 import org.jline.reader.History;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class ShellServiceImpl implements ShellService {
 
+    private static final String INTEGRATION_START = "# CmdZen integration - Auto-generated";
+    private static final String INTEGRATION_END = "# End CmdZen integration";
+
     private final History jLineHistory;
-    private final ShellEnvironment shellEnvironment;
+    private final MetricsService metrics;
+    // keyed by $SHELL: a daemon serves clients running different shells
+    private final Map<String, ShellEnvironment> shellEnvironments = new ConcurrentHashMap<>();
 
-    public ShellServiceImpl(History jLineHistory) {
+    public ShellServiceImpl(History jLineHistory, MetricsService metrics) {
         this.jLineHistory = jLineHistory;
-        this.shellEnvironment = new ShellEnvironment();
+        this.metrics = metrics;
     }
 
     @Override
     public ShellEnvironment getShellEnvironment() {
-        return shellEnvironment;
+        String shell = RequestContext.getenv("SHELL");
+        return shellEnvironments.computeIfAbsent(shell == null ? "" : shell, ShellEnvironment::new);
     }
 
     @Override
@@ -41,22 +54,28 @@ public class ShellServiceImpl implements ShellService {
     @Override
     public CommandHistory getLocalCommandHistory() throws IOException {
         try {
-            Path path = shellEnvironment.getHistoryPath();
+            Path path = getShellEnvironment().getHistoryPath();
             List<String> historyLines = Files.readAllLines(path);
             return new CommandHistory(historyLines.size(), historyLines);
         } catch (IOException e) {
-            log.error("Failed to read shell history from file: {}", shellEnvironment.getHistoryPath(), e);
+            log.error("Failed to read shell history from file: {}", getShellEnvironment().getHistoryPath(), e);
             throw e;
         }
     }
 
-    private String resolveShellPid() {
-        String fromEnv = System.getenv("CMDZEN_SHELL_PID");
+    @Override
+    public String getShellPid() {
+        String fromEnv = RequestContext.getenv("CMDZEN_SHELL_PID");
         if (fromEnv != null && !fromEnv.isBlank()) {
             log.debug("Using CMDZEN_SHELL_PID from environment: {}", fromEnv);
             return fromEnv.trim();
         }
 
+        if (RequestContext.isDaemonRequest()) {
+            // our parent is whatever started the daemon, not the user's shell
+            log.debug("CMDZEN_SHELL_PID not set for daemon request");
+            return "unknown";
+        }
         String parent = getParentShellPid();
         log.debug("CMDZEN_SHELL_PID not set, falling back to parent PID: {}", parent);
         return parent;
@@ -64,87 +83,98 @@ public class ShellServiceImpl implements ShellService {
 
     @Override
     public String getLastCommand() {
-        String output = getLastCommandOutput();
-        if (output != null) {
-            String capturedCmd = output.lines()
-                    .filter(line -> line.startsWith("COMMAND:"))
-                    .map(line -> line.substring("COMMAND:".length()).trim())
-                    .filter(cmd -> !cmd.isEmpty())
-                    .findFirst()
-                    .orElse(null);
-
-            if (capturedCmd != null &&
-                    !capturedCmd.startsWith("cmdzen") &&
-                    !capturedCmd.startsWith("./cmdzen-cli")) {
-                return capturedCmd;
-            }
+        return getLastCommand(getLastCapturedRun());
+    }
+
+    @Override
+    public String getLastCommand(CapturedRun capturedRun) {
+        if (capturedRun != null && capturedRun.getCommand() != null && isUserCommand(capturedRun.getCommand())) {
+            return capturedRun.getCommand();
         }
 
-        try {
-            CommandHistory commandHistory = getLocalCommandHistory();
-            List<String> history = commandHistory.getHistory();
-            for (int i = history.size() - 1; i >= 0; i--) {
-                String cmd = history.get(i);
-                if (!cmd.isEmpty() && !cmd.startsWith("cmdzen") && !cmd.startsWith("./cmdzen-cli")) {
-                    return cmd;
-                }
+        ShellEnvironment shellEnvironment = getShellEnvironment();
+        try (var timer = metrics.time("history.read")) {
+            String cmd = HistoryReader.findLast(shellEnvironment.getHistoryPath(),
+                    HistoryReader.Format.forShell(shellEnvironment.getShellName()),
+                    ShellServiceImpl::isUserCommand);
+            if (cmd != null) {
+                return cmd;
             }
         } catch (IOException e) {
             log.error("Failed to read shell history from file: {}", shellEnvironment.getHistoryPath(), e);
         }
 
         if (jLineHistory != null && jLineHistory.size() > 0) {
-            for (int i = jLineHistory.size() - 1; i >= 0; i--) {
-                String cmd = jLineHistory.get(i);
-                if (!cmd.isEmpty() && !cmd.startsWith("cmdzen") && !cmd.startsWith("./cmdzen-cli")) {
-                    return cmd;
-                }
+            String cmd = lastUserCommand(getCommandHistory().getHistory());
+            if (cmd != null) {
+                return cmd;
             }
         }
 
         return "";
     }
 
+    /**
+     * Most recent non-empty history entry that isn't a cmdzen invocation, or null.
+     */
+    static String lastUserCommand(List<String> history) {
+        for (int i = history.size() - 1; i >= 0; i--) {
+            String cmd = history.get(i);
+            if (isUserCommand(cmd)) {
+                return cmd;
+            }
+        }
+        return null;
+    }
+
+    static boolean isUserCommand(String cmd) {
+        return !cmd.isEmpty() && !cmd.startsWith("cmdzen") && !cmd.startsWith("./cmdzen-cli");
+    }
+
     @Override
     public Path getConfigPath() {
-        return shellEnvironment.getConfigPath();
+        return getShellEnvironment().getConfigPath();
     }
 
     @Override
-    public String getLastCommandOutput() {
-        String shellPid = resolveShellPid();
+    public CapturedRun getLastCapturedRun() {
+        String shellPid = getShellPid();
         Path outputFile = Path.of("/tmp/cmdzen_last_output_" + shellPid + ".txt");
 
-        if (!Files.exists(outputFile)) {
+        try (var timer = metrics.time("capture.read")) {
+            CapturedRun run = CapturedRun.read(outputFile);
+            log.debug("Read output file: {}", outputFile);
+            return run;
+        } catch (NoSuchFileException e) {
             log.debug("No output file found at: {}", outputFile);
             return null;
-        }
-
-        try {
-            String content = Files.readString(outputFile);
-            log.debug("Read output file: {}", outputFile);
-            return content;
         } catch (IOException e) {
             log.error("Failed to read command output from: {}", outputFile, e);
             return null;
         }
     }
 
+    @Override
+    public String getLastCommandOutput() {
+        OutputWindow window = getLastOutputWindow(OutputWindow.DEFAULT_HEAD_BYTES, OutputWindow.DEFAULT_TAIL_BYTES);
+        return window == null ? null : window.getText();
+    }
+
+    @Override
+    public OutputWindow getLastOutputWindow(int headBytes, int tailBytes) {
+        CapturedRun run = getLastCapturedRun();
+        return run == null ? null : run.window(headBytes, tailBytes);
+    }
+
     @Override
     public int getLastExitCode() {
-        String output = getLastCommandOutput();
-        if (output == null) return 0;
-
-        return output.lines()
-                .filter(line -> line.startsWith("EXIT_CODE:"))
-                .map(line -> line.substring("EXIT_CODE:".length()).trim())
-                .mapToInt(Integer::parseInt)
-                .findFirst()
-                .orElse(0);
+        CapturedRun run = getLastCapturedRun();
+        return run == null ? 0 : run.getExitCode();
     }
 
     @Override
     public boolean injectShellIntegration() {
+        ShellEnvironment shellEnvironment = getShellEnvironment();
         Path configPath = shellEnvironment.getConfigPath();
         String shellName = shellEnvironment.getShellName();
 
@@ -153,15 +183,30 @@ public class ShellServiceImpl implements ShellService {
                     ? Files.readAllLines(configPath)
                     : new ArrayList<>();
 
-            boolean alreadyExists = lines.stream()
-                    .anyMatch(line -> line.contains("# CmdZen integration"));
+            List<String> integrationLines = getShellIntegrationCode(shellName);
+            int start = indexOf(lines, INTEGRATION_START, 0);
+            int end = start < 0 ? -1 : indexOf(lines, INTEGRATION_END, start);
+
+            if (start >= 0 && end >= 0) {
+                // replace an older block so existing installs pick up the current hooks
+                int from = start > 0 && lines.get(start - 1).isEmpty() ? start - 1 : start;
+                int to = end + 1 < lines.size() && lines.get(end + 1).isEmpty() ? end + 2 : end + 1;
+                if (lines.subList(from, to).equals(integrationLines)) {
+                    log.info("CmdZen integration already up to date in {}", configPath);
+                    return true;
+                }
+                lines.subList(from, to).clear();
+                lines.addAll(from, integrationLines);
+                Files.write(configPath, lines);
+                log.info("Updated CmdZen integration in {}", configPath);
+                return true;
+            }
 
-            if (alreadyExists) {
+            if (lines.stream().anyMatch(line -> line.contains("# CmdZen integration"))) {
                 log.info("CmdZen integration already exists in {}", configPath);
                 return true;
             }
 
-            List<String> integrationLines = getShellIntegrationCode(shellName);
             lines.addAll(integrationLines);
 
             Files.write(configPath, lines);
@@ -174,6 +219,13 @@ public class ShellServiceImpl implements ShellService {
         }
     }
 
+    private static int indexOf(List<String> lines, String marker, int from) {
+        for (int i = from; i < lines.size(); i++) {
+            if (lines.get(i).startsWith(marker)) return i;
+        }
+        return -1;
+    }
+
     private String getParentShellPid() {
         try {
             ProcessHandle current = ProcessHandle.current();
@@ -190,7 +242,7 @@ public class ShellServiceImpl implements ShellService {
     private List<String> getShellIntegrationCode(String shellName) {
         List<String> lines = new ArrayList<>();
         lines.add("");
-        lines.add("# CmdZen integration - Auto-generated");
+        lines.add(INTEGRATION_START);
         lines.add("# Capture last failed command + its output for 'cmdzen solve'");
 
         switch (shellName.toLowerCase()) {
@@ -200,7 +252,17 @@ public class ShellServiceImpl implements ShellService {
                         "export CMDZEN_SHELL_PID=$$",
                         "CMDZEN_SESSION_LOG=\"/tmp/cmdzen_session_$$.log\"",
                         "CMDZEN_OUTPUT_FILE=\"/tmp/cmdzen_last_output_$$.txt\"",
-                        "CMDZEN_IN_PROMPT=0",
+                        "CMDZEN_SPOOL_DIR=\"${XDG_STATE_HOME:-$HOME/.local/state}/cmdzen/failures/spool\"",
+                        "(umask 077; mkdir -p \"$CMDZEN_SPOOL_DIR\") 2>/dev/null",
+                        "CMDZEN_LOG_MAX=${CMDZEN_LOG_MAX:-8388608}",
+                        "CMDZEN_SPOOL_MAX=${CMDZEN_SPOOL_MAX:-1048576}",
+                        "CMDZEN_SPOOL_FILES=${CMDZEN_SPOOL_FILES:-200}",
+                        "CMDZEN_CMD_OFFSET=0",
+                        "CMDZEN_ARMED=1",
+                        "",
+                        "cmdzen_log_size() {",
+                        "    stat -c %s \"$CMDZEN_SESSION_LOG\" 2>/dev/null || stat -f %z \"$CMDZEN_SESSION_LOG\" 2>/dev/null || echo 0",
+                        "}",
                         "",
                         "# Start capturing all stdout+stderr of this shell",
                         "cmdzen_start_capture() {",
@@ -210,9 +272,35 @@ public class ShellServiceImpl implements ShellService {
                         "}",
                         "cmdzen_start_capture",
                         "",
-                        "# Mark the start of each (non-CmdZen) command in the session log",
+                        "# Remember the log size when a command starts; rotate the log once it exceeds CMDZEN_LOG_MAX",
+                        "cmdzen_mark() {",
+                        "    CMDZEN_CMD_START=${EPOCHSECONDS:-$(date +%s)}",
+                        "    CMDZEN_CMD_OFFSET=$(cmdzen_log_size)",
+                        "    if [ \"$CMDZEN_CMD_OFFSET\" -gt \"$CMDZEN_LOG_MAX\" ]; then",
+                        "        : > \"$CMDZEN_SESSION_LOG\"",
+                        "        CMDZEN_CMD_OFFSET=0",
+                        "    fi",
+                        "}",
+                        "",
+                        "# Keep a copy of each failure for 'cmdzen failures'; cmdzen moves it into its store.",
+                        "# Only the last CMDZEN_SPOOL_MAX bytes are kept, and none while CMDZEN_SPOOL_FILES wait",
+                        "cmdzen_spool() {",
+                        "    set -- \"$CMDZEN_SPOOL_DIR\"/*.txt",
+                        "    [ -e \"$1\" ] && [ $# -ge \"$CMDZEN_SPOOL_FILES\" ] && return",
+                        "    CMDZEN_SPOOL_FILE=\"$CMDZEN_SPOOL_DIR/$$.${CMDZEN_CMD_START:-0}.$RANDOM.txt\"",
+                        "    tail -c \"$CMDZEN_SPOOL_MAX\" \"$CMDZEN_OUTPUT_FILE\" > \"$CMDZEN_SPOOL_FILE.tmp\" 2>/dev/null &&",
+                        "        mv \"$CMDZEN_SPOOL_FILE.tmp\" \"$CMDZEN_SPOOL_FILE\"",
+                        "}",
+                        "",
+                        "# With CMDZEN_SPECULATE=1, start analyzing the failure right away so 'cmdzen solve' answers instantly",
+                        "cmdzen_speculate() {",
+                        "    [ \"$CMDZEN_SPECULATE\" = \"1\" ] || return 0",
+                        "    (nice -n 10 cmdzen speculate --capture \"$CMDZEN_OUTPUT_FILE\" </dev/null >/dev/null 2>&1 &)",
+                        "}",
+                        "",
+                        "# Mark the first (non-CmdZen) command after each prompt; cmdzen* also skips the prompt hook",
                         "cmdzen_debug_trap() {",
-                        "    if [ \"$CMDZEN_IN_PROMPT\" = \"1\" ]; then",
+                        "    if [ \"$CMDZEN_ARMED\" != \"1\" ]; then",
                         "       return",
                         "    fi",
                         "    case \"$BASH_COMMAND\" in",
@@ -220,39 +308,46 @@ public class ShellServiceImpl implements ShellService {
                         "            return",
                         "            ;;",
                         "    esac",
-                        "    echo \"__CMDZEN_CMD_START__ $(date +%s)\" >> \"$CMDZEN_SESSION_LOG\"",
+                        "    CMDZEN_ARMED=0",
+                        "    cmdzen_mark",
                         "}",
                         "trap cmdzen_debug_trap DEBUG",
                         "",
                         "# After each command, if it failed, snapshot its output into CMDZEN_OUTPUT_FILE",
+                        "# Stays disarmed through the rest of PROMPT_COMMAND (starship, direnv, ...) until cmdzen_arm",
                         "cmdzen_prompt_hook() {",
                         "    local exit_code=$?",
+                        "    local ran=$CMDZEN_ARMED",
+                        "    CMDZEN_ARMED=0",
+                        "    [ \"$ran\" = \"1\" ] && return  # nothing ran since the last prompt",
+                        "    [ $exit_code -eq 0 ] && return",
+                        "",
                         "    local last_cmd",
                         "    last_cmd=$(history 1 | sed 's/^[ ]*[0-9]\\+[ ]*//')",
+                        "    case \"$last_cmd\" in",
+                        "        ''|cmdzen*|./cmdzen-cli* )",
+                        "            return",
+                        "            ;;",
+                        "    esac",
                         "",
-                        "    if [ $exit_code -ne 0 ] &&",
-                        "       [ -n \"$last_cmd\" ] &&",
-                        "       [[ \"$last_cmd\" != cmdzen* ]] &&",
-                        "       [[ \"$last_cmd\" != ./cmdzen-cli* ]]; then",
-                        "",
-                        "        # Find the last marker and copy everything from there into OUTPUT_FILE",
-                        "        local last_line",
-                        "        last_line=$(grep -n \"__CMDZEN_CMD_START__\" \"$CMDZEN_SESSION_LOG\" 2>/dev/null | tail -n 1 | cut -d: -f1)",
-                        "",
-                        "        if [ -n \"$last_line\" ]; then",
-                        "            tail -n +\"$last_line\" \"$CMDZEN_SESSION_LOG\" > \"$CMDZEN_OUTPUT_FILE\"",
-                        "        else",
-                        "            cp \"$CMDZEN_SESSION_LOG\" \"$CMDZEN_OUTPUT_FILE\" 2>/dev/null || true",
-                        "        fi",
-                        "",
-                        "        {",
-                        "            echo \"EXIT_CODE: $exit_code\"",
-                        "            echo \"COMMAND: $last_cmd\"",
-                        "            echo \"TIMESTAMP: $(date)\"",
-                        "        } >> \"$CMDZEN_OUTPUT_FILE\"",
-                        "    fi",
+                        "    # Copy only what was written since the command started",
+                        "    {",
+                        "        echo \"__CMDZEN_CMD_START__ $CMDZEN_CMD_START\"",
+                        "        tail -c +$((CMDZEN_CMD_OFFSET + 1)) \"$CMDZEN_SESSION_LOG\" 2>/dev/null",
+                        "        echo",
+                        "        echo \"EXIT_CODE: $exit_code\"",
+                        "        echo \"COMMAND: $last_cmd\"",
+                        "        echo \"TIMESTAMP: $(date)\"",
+                        "    } > \"$CMDZEN_OUTPUT_FILE\"",
+                        "    cmdzen_spool",
+                        "    cmdzen_speculate",
                         "}",
-                        "PROMPT_COMMAND='CMDZEN_IN_PROMPT=1; cmdzen_prompt_hook; CMDZEN_IN_PROMPT=0'"
+                        "cmdzen_arm() {",
+                        "    CMDZEN_ARMED=1",
+                        "}",
+                        "# The hook goes first so it sees the command's exit status; arming goes last so the",
+                        "# DEBUG trap ignores the other PROMPT_COMMAND entries",
+                        "PROMPT_COMMAND=\"cmdzen_prompt_hook${PROMPT_COMMAND:+; $PROMPT_COMMAND}; cmdzen_arm\""
                 ));
                 break;
 
@@ -262,6 +357,19 @@ public class ShellServiceImpl implements ShellService {
                         "export CMDZEN_SHELL_PID=$$",
                         "CMDZEN_SESSION_LOG=\"/tmp/cmdzen_session_$$.log\"",
                         "CMDZEN_OUTPUT_FILE=\"/tmp/cmdzen_last_output_$$.txt\"",
+                        "CMDZEN_SPOOL_DIR=\"${XDG_STATE_HOME:-$HOME/.local/state}/cmdzen/failures/spool\"",
+                        "(umask 077; mkdir -p \"$CMDZEN_SPOOL_DIR\") 2>/dev/null",
+                        "CMDZEN_LOG_MAX=${CMDZEN_LOG_MAX:-8388608}",
+                        "CMDZEN_SPOOL_MAX=${CMDZEN_SPOOL_MAX:-1048576}",
+                        "CMDZEN_SPOOL_FILES=${CMDZEN_SPOOL_FILES:-200}",
+                        "CMDZEN_CMD_OFFSET=0",
+                        "",
+                        "zmodload zsh/datetime 2>/dev/null",
+                        "if zmodload -F zsh/stat b:zstat 2>/dev/null; then",
+                        "    cmdzen_log_size() { zstat +size \"$CMDZEN_SESSION_LOG\" 2>/dev/null || echo 0; }",
+                        "else",
+                        "    cmdzen_log_size() { stat -c %s \"$CMDZEN_SESSION_LOG\" 2>/dev/null || stat -f %z \"$CMDZEN_SESSION_LOG\" 2>/dev/null || echo 0; }",
+                        "fi",
                         "",
                         "# Start capturing all stdout+stderr of this shell",
                         "cmdzen_start_capture() {",
@@ -271,40 +379,68 @@ public class ShellServiceImpl implements ShellService {
                         "}",
                         "cmdzen_start_capture",
                         "",
+                        "# Remember the log size when a command starts; rotate the log once it exceeds CMDZEN_LOG_MAX",
+                        "cmdzen_mark() {",
+                        "    CMDZEN_CMD_START=${EPOCHSECONDS:-$(date +%s)}",
+                        "    CMDZEN_CMD_OFFSET=$(cmdzen_log_size)",
+                        "    if [ \"$CMDZEN_CMD_OFFSET\" -gt \"$CMDZEN_LOG_MAX\" ]; then",
+                        "        : > \"$CMDZEN_SESSION_LOG\"",
+                        "        CMDZEN_CMD_OFFSET=0",
+                        "    fi",
+                        "}",
+                        "",
+                        "# Keep a copy of each failure for 'cmdzen failures'; cmdzen moves it into its store.",
+                        "# Only the last CMDZEN_SPOOL_MAX bytes are kept, and none while CMDZEN_SPOOL_FILES wait",
+                        "cmdzen_spool() {",
+                        "    set -- \"$CMDZEN_SPOOL_DIR\"/*.txt(N)",
+                        "    [ -e \"$1\" ] && [ $# -ge \"$CMDZEN_SPOOL_FILES\" ] && return",
+                        "    CMDZEN_SPOOL_FILE=\"$CMDZEN_SPOOL_DIR/$$.${CMDZEN_CMD_START:-0}.$RANDOM.txt\"",
+                        "    tail -c \"$CMDZEN_SPOOL_MAX\" \"$CMDZEN_OUTPUT_FILE\" > \"$CMDZEN_SPOOL_FILE.tmp\" 2>/dev/null &&",
+                        "        mv \"$CMDZEN_SPOOL_FILE.tmp\" \"$CMDZEN_SPOOL_FILE\"",
+                        "}",
+                        "",
+                        "# With CMDZEN_SPECULATE=1, start analyzing the failure right away so 'cmdzen solve' answers instantly",
+                        "cmdzen_speculate() {",
+                        "    [ \"$CMDZEN_SPECULATE\" = \"1\" ] || return 0",
+                        "    (nice -n 10 cmdzen speculate --capture \"$CMDZEN_OUTPUT_FILE\" </dev/null >/dev/null 2>&1 &)",
+                        "}",
+                        "",
                         "# Mark the start of each command",
-                        "preexec() {",
+                        "cmdzen_preexec() {",
                         "    case \"$1\" in",
                         "        cmdzen*|./cmdzen-cli*|history* )",
                         "            return",
                         "            ;;",
                         "    esac",
                         "    CMDZEN_LAST_CMD=\"$1\"",
-                        "    echo \"__CMDZEN_CMD_START__ $(date +%s)\" >> \"$CMDZEN_SESSION_LOG\"",
+                        "    cmdzen_mark",
                         "}",
                         "",
                         "# After each command, capture failed output",
-                        "precmd() {",
+                        "cmdzen_precmd() {",
                         "    local exit_code=$?",
-                        "    if [ $exit_code -ne 0 ] && [ -n \"$CMDZEN_LAST_CMD\" ] &&",
-                        "       [[ \"$CMDZEN_LAST_CMD\" != cmdzen* ]] &&",
-                        "       [[ \"$CMDZEN_LAST_CMD\" != ./cmdzen-cli* ]]; then",
-                        "",
-                        "        local last_line",
-                        "        last_line=$(grep -n \"__CMDZEN_CMD_START__\" \"$CMDZEN_SESSION_LOG\" 2>/dev/null | tail -n 1 | cut -d: -f1)",
+                        "    local last_cmd=\"$CMDZEN_LAST_CMD\"",
+                        "    CMDZEN_LAST_CMD=\"\"",
+                        "    if [ $exit_code -eq 0 ] || [ -z \"$last_cmd\" ]; then",
+                        "        return",
+                        "    fi",
                         "",
-                        "        if [ -n \"$last_line\" ]; then",
-                        "            tail -n +\"$last_line\" \"$CMDZEN_SESSION_LOG\" > \"$CMDZEN_OUTPUT_FILE\"",
-                        "        else",
-                        "            cp \"$CMDZEN_SESSION_LOG\" \"$CMDZEN_OUTPUT_FILE\" 2>/dev/null || true",
-                        "        fi",
+                        "    # Copy only what was written since the command started",
+                        "    {",
+                        "        echo \"__CMDZEN_CMD_START__ $CMDZEN_CMD_START\"",
+                        "        tail -c +$((CMDZEN_CMD_OFFSET + 1)) \"$CMDZEN_SESSION_LOG\" 2>/dev/null",
+                        "        echo",
+                        "        echo \"EXIT_CODE: $exit_code\"",
+                        "        echo \"COMMAND: $last_cmd\"",
+                        "        echo \"TIMESTAMP: $(date)\"",
+                        "    } > \"$CMDZEN_OUTPUT_FILE\"",
+                        "    cmdzen_spool",
+                        "    cmdzen_speculate",
+                        "}",
                         "",
-                        "        {",
-                        "            echo \"EXIT_CODE: $exit_code\"",
-                        "            echo \"COMMAND: $CMDZEN_LAST_CMD\"",
-                        "            echo \"TIMESTAMP: $(date)\"",
-                        "        } >> \"$CMDZEN_OUTPUT_FILE\"",
-                        "    fi",
-                        "}"
+                        "autoload -Uz add-zsh-hook",
+                        "add-zsh-hook preexec cmdzen_preexec",
+                        "add-zsh-hook precmd cmdzen_precmd"
                 ));
                 break;
 
@@ -313,6 +449,10 @@ public class ShellServiceImpl implements ShellService {
                         "",
                         "set -gx CMDZEN_SHELL_PID $fish_pid",
                         "set -g CMDZEN_OUTPUT_FILE \"/tmp/cmdzen_last_output_$fish_pid.txt\"",
+                        "set -q XDG_STATE_HOME; and set -g CMDZEN_SPOOL_DIR $XDG_STATE_HOME/cmdzen/failures/spool",
+                        "set -q XDG_STATE_HOME; or set -g CMDZEN_SPOOL_DIR $HOME/.local/state/cmdzen/failures/spool",
+                        "mkdir -p -m 700 $CMDZEN_SPOOL_DIR 2>/dev/null",
+                        "set -q CMDZEN_SPOOL_FILES; or set -g CMDZEN_SPOOL_FILES 200",
                         "",
                         "# Fish: capture exit code + command only (no full output capture)",
                         "function cmdzen_capture --on-event fish_postexec",
@@ -324,6 +464,12 @@ public class ShellServiceImpl implements ShellService {
                         "        echo \"COMMAND: $argv\" >> $CMDZEN_OUTPUT_FILE",
                         "        echo \"TIMESTAMP: (date)\" >> $CMDZEN_OUTPUT_FILE",
                         "        echo \"Note: Fish shell - full output capture not available\" >> $CMDZEN_OUTPUT_FILE",
+                        "        # none while CMDZEN_SPOOL_FILES wait for cmdzen to store them",
+                        "        set -l spooled $CMDZEN_SPOOL_DIR/*.txt",
+                        "        if test (count $spooled) -lt $CMDZEN_SPOOL_FILES",
+                        "            set -l spool_file $CMDZEN_SPOOL_DIR/$fish_pid.(date +%s).(random).txt",
+                        "            cp $CMDZEN_OUTPUT_FILE $spool_file.tmp 2>/dev/null; and mv $spool_file.tmp $spool_file",
+                        "        end",
                         "    end",
                         "end"
                 ));
@@ -335,8 +481,18 @@ public class ShellServiceImpl implements ShellService {
                         "export CMDZEN_SHELL_PID=$$",
                         "CMDZEN_SESSION_LOG=\"/tmp/cmdzen_session_$$.log\"",
                         "CMDZEN_OUTPUT_FILE=\"/tmp/cmdzen_last_output_$$.txt\"",
+                        "CMDZEN_SPOOL_DIR=\"${XDG_STATE_HOME:-$HOME/.local/state}/cmdzen/failures/spool\"",
+                        "(umask 077; mkdir -p \"$CMDZEN_SPOOL_DIR\") 2>/dev/null",
+                        "CMDZEN_LOG_MAX=${CMDZEN_LOG_MAX:-8388608}",
+                        "CMDZEN_SPOOL_MAX=${CMDZEN_SPOOL_MAX:-1048576}",
+                        "CMDZEN_SPOOL_FILES=${CMDZEN_SPOOL_FILES:-200}",
+                        "CMDZEN_CMD_OFFSET=0",
+                        "",
+                        "cmdzen_log_size() {",
+                        "    stat -c %s \"$CMDZEN_SESSION_LOG\" 2>/dev/null || stat -f %z \"$CMDZEN_SESSION_LOG\" 2>/dev/null || echo 0",
+                        "}",
                         "",
-                        "# Start capturing all output",
+                        "# Start capturing all stdout+stderr of this shell",
                         "cmdzen_start_capture() {",
                         "    [ -n \"$CMDZEN_CAPTURE_ACTIVE\" ] && return",
                         "    CMDZEN_CAPTURE_ACTIVE=1",
@@ -344,28 +500,53 @@ public class ShellServiceImpl implements ShellService {
                         "}",
                         "cmdzen_start_capture",
                         "",
+                        "# Remember the log size when a command starts; rotate the log once it exceeds CMDZEN_LOG_MAX",
+                        "cmdzen_mark() {",
+                        "    CMDZEN_CMD_START=${EPOCHSECONDS:-$(date +%s)}",
+                        "    CMDZEN_CMD_OFFSET=$(cmdzen_log_size)",
+                        "    if [ \"$CMDZEN_CMD_OFFSET\" -gt \"$CMDZEN_LOG_MAX\" ]; then",
+                        "        : > \"$CMDZEN_SESSION_LOG\"",
+                        "        CMDZEN_CMD_OFFSET=0",
+                        "    fi",
+                        "}",
+                        "",
+                        "# Keep a copy of each failure for 'cmdzen failures'; cmdzen moves it into its store.",
+                        "# Only the last CMDZEN_SPOOL_MAX bytes are kept, and none while CMDZEN_SPOOL_FILES wait",
+                        "cmdzen_spool() {",
+                        "    set -- \"$CMDZEN_SPOOL_DIR\"/*.txt",
+                        "    [ -e \"$1\" ] && [ $# -ge \"$CMDZEN_SPOOL_FILES\" ] && return",
+                        "    CMDZEN_SPOOL_FILE=\"$CMDZEN_SPOOL_DIR/$$.${CMDZEN_CMD_START:-0}.$RANDOM.txt\"",
+                        "    tail -c \"$CMDZEN_SPOOL_MAX\" \"$CMDZEN_OUTPUT_FILE\" > \"$CMDZEN_SPOOL_FILE.tmp\" 2>/dev/null &&",
+                        "        mv \"$CMDZEN_SPOOL_FILE.tmp\" \"$CMDZEN_SPOOL_FILE\"",
+                        "}",
+                        "",
+                        "# With CMDZEN_SPECULATE=1, start analyzing the failure right away so 'cmdzen solve' answers instantly",
+                        "cmdzen_speculate() {",
+                        "    [ \"$CMDZEN_SPECULATE\" = \"1\" ] || return 0",
+                        "    (nice -n 10 cmdzen speculate --capture \"$CMDZEN_OUTPUT_FILE\" </dev/null >/dev/null 2>&1 &)",
+                        "}",
+                        "",
                         "# Mark command start",
-                        "trap 'case \"$_\" in cmdzen*|./cmdzen-cli*|history*) ;; *) echo \"__CMDZEN_CMD_START__ $(date +%s)\" >> \"$CMDZEN_SESSION_LOG\"; CMDZEN_LAST_CMD=\"$_\";; esac' DEBUG",
+                        "trap 'case \"$_\" in cmdzen*|./cmdzen-cli*|history*) ;; *) cmdzen_mark; CMDZEN_LAST_CMD=\"$_\";; esac' DEBUG",
                         "",
                         "# Capture on prompt",
                         "function cmdzen_capture {",
-                        "    local exit_code=$?",
+                        "    typeset exit_code=$?",
                         "    if [ $exit_code -ne 0 ] && [ -n \"$CMDZEN_LAST_CMD\" ] &&",
                         "       [[ \"$CMDZEN_LAST_CMD\" != cmdzen* ]] &&",
                         "       [[ \"$CMDZEN_LAST_CMD\" != ./cmdzen-cli* ]]; then",
                         "",
-                        "        local last_line",
-                        "        last_line=$(grep -n \"__CMDZEN_CMD_START__\" \"$CMDZEN_SESSION_LOG\" 2>/dev/null | tail -n 1 | cut -d: -f1)",
-                        "",
-                        "        if [ -n \"$last_line\" ]; then",
-                        "            tail -n +\"$last_line\" \"$CMDZEN_SESSION_LOG\" > \"$CMDZEN_OUTPUT_FILE\"",
-                        "        fi",
-                        "",
+                        "        # Copy only what was written since the command started",
                         "        {",
+                        "            echo \"__CMDZEN_CMD_START__ $CMDZEN_CMD_START\"",
+                        "            tail -c +$((CMDZEN_CMD_OFFSET + 1)) \"$CMDZEN_SESSION_LOG\" 2>/dev/null",
+                        "            echo",
                         "            echo \"EXIT_CODE: $exit_code\"",
                         "            echo \"COMMAND: $CMDZEN_LAST_CMD\"",
                         "            echo \"TIMESTAMP: $(date)\"",
-                        "        } >> \"$CMDZEN_OUTPUT_FILE\"",
+                        "        } > \"$CMDZEN_OUTPUT_FILE\"",
+                        "        cmdzen_spool",
+                        "        cmdzen_speculate",
                         "    fi",
                         "}",
                         "PS1=\"$(cmdzen_capture)$PS1\""
@@ -383,7 +564,7 @@ public class ShellServiceImpl implements ShellService {
                 break;
         }
 
-        lines.add("# End CmdZen integration");
+        lines.add(INTEGRATION_END);
         lines.add("");
 
         return lines;
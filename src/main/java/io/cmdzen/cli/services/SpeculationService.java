@@ -0,0 +1,237 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CmdzenPaths;
+import io.cmdzen.cli.config.PromptConfig;
+import io.cmdzen.cli.config.SpeculationConfig;
+import io.cmdzen.cli.model.CapturedRun;
+import io.cmdzen.cli.model.ErrorRule;
+import io.cmdzen.cli.util.FailureFingerprint;
+import io.cmdzen.cli.util.FailurePrompt;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Answers a failure in the background as soon as the shell hook captures it, so that
+ * {@code solve} finds the answer in the {@link AnswerCache}.
+ * <p>
+ * The answer is stored under the same {@link FailureFingerprint} {@code solve} computes for
+ * the capture. While a request is in flight, {@code speculation/<key>.pending} exists and holds
+ * the pid of the process making it. That dedupes repeated launches for the same failure and
+ * lets {@code solve} wait for the answer instead of asking again. Launches are capped at
+ * {@code cmdzen.speculation.max-requests} per window across all shells, so a burst of failures
+ * doesn't flood the provider.
+ */
+@Slf4j
+@Service
+public class SpeculationService {
+
+    private static final long POLL_MILLIS = 100;
+    // a marker is created empty and written right after; give the writer this long
+    private static final long UNWRITTEN_GRACE_MILLIS = 5_000;
+
+    private final SpeculationConfig config;
+    private final ShellService shellService;
+    private final ObjectProvider<AIService> aiService;
+    private final AnswerCache answerCache;
+    private final PromptCompactor promptCompactor;
+    private final PromptConfig promptConfig;
+    private final KnowledgeBaseService knowledgeBase;
+    private final MetricsService metrics;
+    private final ContextCollector contextCollector;
+    private final Path directory;
+
+    public SpeculationService(SpeculationConfig config, ShellService shellService, ObjectProvider<AIService> aiService,
+                              AnswerCache answerCache, PromptCompactor promptCompactor, PromptConfig promptConfig,
+                              KnowledgeBaseService knowledgeBase, MetricsService metrics,
+                              ContextCollector contextCollector) {
+        this.config = config;
+        this.shellService = shellService;
+        this.aiService = aiService;
+        this.answerCache = answerCache;
+        this.promptCompactor = promptCompactor;
+        this.promptConfig = promptConfig;
+        this.knowledgeBase = knowledgeBase;
+        this.metrics = metrics;
+        this.contextCollector = contextCollector;
+        this.directory = CmdzenPaths.stateDir().resolve("speculation");
+    }
+
+    /**
+     * Answers the failure in {@code captureFile} into the answer cache unless it is already
+     * answered, being answered, answered offline, or over the rate cap.
+     */
+    public void speculate(Path captureFile) throws IOException {
+        if (!config.isEnabled() || !answerCache.isEnabled()) return;
+        CapturedRun run;
+        try {
+            run = CapturedRun.read(captureFile);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        int code = run.getExitCode();
+        if (code == 0 || config.getIgnoredExitCodes().contains(code)) return;
+        String command = shellService.getLastCommand(run);
+        if (command == null || command.isEmpty()) return;
+
+        // the same inputs solve uses, so the fingerprints match
+        String output = run.window(promptConfig.getOutputHeadBytes(), promptConfig.getOutputTailBytes()).getText();
+        String key = FailureFingerprint.of(command, code, output, FailurePrompt.DEFAULT_QUESTION);
+        if (answerCache.get(key) != null) {
+            log.debug("Failure of {} is already answered", command);
+            return;
+        }
+        List<ErrorRule> rules = knowledgeBase.match(command, code, output);
+        if (rules.stream().anyMatch(rule -> rule.getMode() == ErrorRule.Mode.ANSWER)) {
+            log.debug("Failure of {} is answered offline", command);
+            return;
+        }
+
+        Path pending = pendingFile(key);
+        if (!claim(pending)) {
+            log.debug("Failure of {} is already being answered", command);
+            return;
+        }
+        try {
+            if (!acquireBudget()) {
+                log.info("Not speculating on {}: {} requests in the last {}", command, config.getMaxRequests(),
+                        config.getWindow());
+                metrics.count("speculation.capped");
+                return;
+            }
+            List<String> hints = rules.stream()
+                    .filter(rule -> rule.getMode() == ErrorRule.Mode.ANNOTATE)
+                    .map(rule -> rule.render(command, output))
+                    .toList();
+            String prompt = FailurePrompt.build(command, code, promptCompactor.compact(output),
+                    FailurePrompt.DEFAULT_QUESTION, true, hints, contextCollector.start(command).join());
+            log.info("Speculatively analyzing {}", command);
+            metrics.count("speculation.requested");
+            String answer = aiService.getObject().ask(prompt);
+            if (!AIService.isError(answer)) {
+                answerCache.put(key, answer);
+            }
+        } finally {
+            Files.deleteIfExists(pending);
+        }
+    }
+
+    /**
+     * Whether a speculative request for this fingerprint is in flight.
+     */
+    public boolean isPending(String cacheKey) {
+        Path pending = pendingFile(cacheKey);
+        return Files.exists(pending) && !isStale(pending);
+    }
+
+    /**
+     * Waits up to {@code cmdzen.speculation.join-timeout} for the in-flight request and returns
+     * its answer, or null if it failed, its process died, or it is still running.
+     */
+    public String await(String cacheKey) {
+        Path pending = pendingFile(cacheKey);
+        long deadline = System.currentTimeMillis() + config.getJoinTimeout().toMillis();
+        try {
+            while (Files.exists(pending) && !isStale(pending) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        String answer = answerCache.get(cacheKey);
+        if (answer != null) {
+            metrics.count("speculation.joined");
+        }
+        return answer;
+    }
+
+    /**
+     * Creates the pending marker, or returns false if another live request holds it. A marker
+     * left by a process that died is taken over.
+     */
+    private boolean claim(Path pending) throws IOException {
+        Files.createDirectories(directory);
+        try {
+            Files.writeString(pending, Long.toString(ProcessHandle.current().pid()), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            if (!isStale(pending)) return false;
+            Files.deleteIfExists(pending);
+            return claim(pending);
+        }
+    }
+
+    /**
+     * Takes one request from the shared budget: launch times within the window are kept in
+     * {@code speculation/requests}, updated under a file lock.
+     */
+    private synchronized boolean acquireBudget() throws IOException {
+        Path requests = directory.resolve("requests");
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            long now = System.currentTimeMillis();
+            long since = now - config.getWindow().toMillis();
+            List<String> recent = new ArrayList<>();
+            if (Files.exists(requests)) {
+                for (String line : Files.readAllLines(requests, StandardCharsets.UTF_8)) {
+                    try {
+                        if (Long.parseLong(line.trim()) > since) recent.add(line.trim());
+                    } catch (NumberFormatException e) {
+                        // ignore a torn line
+                    }
+                }
+            }
+            if (recent.size() >= config.getMaxRequests()) {
+                return false;
+            }
+            recent.add(Long.toString(now));
+            Files.write(requests, recent, StandardCharsets.UTF_8);
+            return true;
+        }
+    }
+
+    /**
+     * Whether the process that wrote the marker is gone. Requests can take minutes (the local
+     * provider allows five), so the marker's age says nothing; its pid does. A pid reused by a
+     * process started after the marker was written doesn't count as the owner (start times are
+     * derived from the boot time in whole seconds, so they err early, on the owner's side).
+     */
+    private boolean isStale(Path pending) {
+        try {
+            long written = Files.getLastModifiedTime(pending).toMillis();
+            long pid;
+            try {
+                pid = Long.parseLong(Files.readString(pending, StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException e) {
+                return System.currentTimeMillis() - written > UNWRITTEN_GRACE_MILLIS;
+            }
+            return ProcessHandle.of(pid)
+                    .filter(ProcessHandle::isAlive)
+                    .map(owner -> owner.info().startInstant()
+                            .map(started -> started.toEpochMilli() > written)
+                            .orElse(false))
+                    .orElse(true);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private Path pendingFile(String cacheKey) {
+        return directory.resolve(cacheKey + ".pending");
+    }
+}
@@ -0,0 +1,85 @@
+package io.cmdzen.cli.services;
+
+/**
+ * Incremental counterpart of {@code ChatCompletionsClient.sanitize}: drops {@code <think>...</think>}
+ * blocks from a stream of chunks, even when a tag is split across chunk boundaries,
+ * and suppresses leading whitespace so streamed and buffered answers look the same.
+ */
+public class ThinkTagFilter {
+
+    private static final String OPEN = "<think>";
+    private static final String CLOSE = "</think>";
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean inThink;
+    private boolean started;
+
+    /**
+     * Feeds the next chunk and returns the text that is safe to print now.
+     */
+    public String accept(String chunk) {
+        if (chunk == null || chunk.isEmpty()) return "";
+        pending.append(chunk);
+        StringBuilder out = new StringBuilder();
+
+        while (true) {
+            if (inThink) {
+                int end = pending.indexOf(CLOSE);
+                if (end < 0) {
+                    // keep only what could still turn into "</think>"
+                    pending.delete(0, pending.length() - partialTagLength(CLOSE));
+                    break;
+                }
+                pending.delete(0, end + CLOSE.length());
+                inThink = false;
+            } else {
+                int start = pending.indexOf(OPEN);
+                if (start < 0) {
+                    int keep = partialTagLength(OPEN);
+                    emit(out, pending.substring(0, pending.length() - keep));
+                    pending.delete(0, pending.length() - keep);
+                    break;
+                }
+                emit(out, pending.substring(0, start));
+                pending.delete(0, start + OPEN.length());
+                inThink = true;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Flushes whatever was held back waiting for a possible tag. An unterminated
+     * {@code <think>} block is dropped, as {@code sanitize} drops it from a buffered answer.
+     */
+    public String finish() {
+        StringBuilder out = new StringBuilder();
+        if (!inThink) {
+            emit(out, pending.toString());
+        }
+        pending.setLength(0);
+        return out.toString();
+    }
+
+    private void emit(StringBuilder out, String text) {
+        if (!started) {
+            text = text.stripLeading();
+            if (text.isEmpty()) return;
+            started = true;
+        }
+        out.append(text);
+    }
+
+    /**
+     * Length of the longest suffix of {@code pending} that is a proper prefix of {@code tag}.
+     */
+    private int partialTagLength(String tag) {
+        int max = Math.min(tag.length() - 1, pending.length());
+        for (int len = max; len > 0; len--) {
+            if (pending.substring(pending.length() - len).equals(tag.substring(0, len))) {
+                return len;
+            }
+        }
+        return 0;
+    }
+}
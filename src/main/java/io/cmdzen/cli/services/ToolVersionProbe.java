@@ -0,0 +1,97 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.ContextConfig;
+import io.cmdzen.cli.util.CommandLines;
+import io.cmdzen.cli.util.ProbeCommand;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The version of the tool the failed command ran, for the tools in
+ * {@code cmdzen.context.version-arguments} only: running an arbitrary program with
+ * {@code --version} could do anything.
+ */
+@Service
+@Order(2)
+public class ToolVersionProbe implements ContextProbe {
+
+    private static final int MAX_OUTPUT_BYTES = 4096;
+
+    private final ContextConfig config;
+
+    public ToolVersionProbe(ContextConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return "version";
+    }
+
+    // the real path changes when a package upgrade or version manager switches the binary
+    @Override
+    public List<Path> getDependencies(Target target) {
+        Path executable = executable(target);
+        if (executable == null) return List.of();
+        try {
+            return List.of(executable.toRealPath());
+        } catch (IOException e) {
+            return List.of(executable);
+        }
+    }
+
+    @Override
+    public String collect(Target target) throws IOException, InterruptedException {
+        Path executable = executable(target);
+        if (executable == null) return null;
+        String tool = tool(target.command());
+
+        String arguments = config.getVersionArguments().get(tool).trim();
+        List<String> command = new ArrayList<>();
+        command.add(executable.toString());
+        command.addAll(List.of(arguments.split("\\s+")));
+        String output = ProbeCommand.run(command, target.directory(), target.environment(),
+                config.getCommandTimeout(), MAX_OUTPUT_BYTES);
+        if (output == null) return null;
+        return output.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty())
+                .findFirst()
+                .map(line -> tool + " " + arguments + ": " + line)
+                .orElse(null);
+    }
+
+    /**
+     * The executable of a tool with known version arguments, or null.
+     */
+    private Path executable(Target target) {
+        String word = CommandLines.program(target.command());
+        if (word == null || !config.getVersionArguments().containsKey(tool(target.command()))) return null;
+        if (word.contains("/")) {
+            Path path = target.directory().resolve(word);
+            return Files.isExecutable(path) ? path : null;
+        }
+        String searchPath = target.getenv("PATH");
+        if (searchPath == null) return null;
+        for (String dir : searchPath.split(File.pathSeparator)) {
+            if (dir.isEmpty()) continue;
+            Path path = Path.of(dir, word);
+            if (Files.isRegularFile(path) && Files.isExecutable(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private static String tool(String command) {
+        String word = CommandLines.program(command);
+        return word == null ? null : word.substring(word.lastIndexOf('/') + 1);
+    }
+}
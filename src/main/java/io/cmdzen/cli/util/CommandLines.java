@@ -0,0 +1,29 @@
+package io.cmdzen.cli.util;
+
+import java.util.Set;
+
+/**
+ * Helpers for the command lines captured by the shell hooks.
+ */
+public final class CommandLines {
+
+    private static final Set<String> WRAPPERS = Set.of("sudo", "env", "time", "nohup", "nice", "command", "exec");
+
+    private CommandLines() {
+    }
+
+    /**
+     * The program a command line runs, as typed: skips {@code sudo}-style wrappers, their
+     * options and variable assignments. Null if there is none.
+     */
+    public static String program(String command) {
+        if (command == null) return null;
+        for (String word : command.trim().split("\\s+")) {
+            if (word.isEmpty() || WRAPPERS.contains(word) || word.startsWith("-") || word.matches("\\w+=.*")) {
+                continue;
+            }
+            return word;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package io.cmdzen.cli.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Identifies "the same failure" across runs: the output is normalized so that volatile
+ * details (timestamps, PIDs, addresses, directories) don't change the hash, then digested
+ * with SHA-256 together with the exit code and the command and question as typed, only
+ * whitespace aside. Scrubbing the command too would make {@code rm /srv/a/x} and
+ * {@code rm /tmp/x}, or {@code sleep 5s} and {@code sleep 10m}, the same failure.
+ */
+public final class FailureFingerprint {
+
+    private static final Pattern ANSI = Pattern.compile("\u001B\\[[0-9;?]*[ -/]*[@-~]");
+    private static final Pattern METADATA = Pattern.compile(
+            "(?m)^(__CMDZEN_CMD_START__|EXIT_CODE:|COMMAND:|TIMESTAMP:).*$");
+    private static final Pattern ISO_TIMESTAMP = Pattern.compile(
+            "\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}(:\\d{2}([.,]\\d+)?)?(Z|[+-]\\d{2}:?\\d{2})?");
+    private static final Pattern CLOCK = Pattern.compile("\\b\\d{1,2}:\\d{2}:\\d{2}([.,]\\d+)?\\b");
+    private static final Pattern EPOCH = Pattern.compile("\\b1\\d{9}(\\d{3})?\\b");
+    private static final Pattern DURATION = Pattern.compile("\\b\\d+(\\.\\d+)?\\s?(ms|s|sec|secs|seconds|m|min|mins)\\b");
+    private static final Pattern PID = Pattern.compile("(?i)\\b(pid|process)[ =:#]*\\d+|\\[\\d+]");
+    private static final Pattern HEX = Pattern.compile("\\b0x[0-9a-fA-F]+\\b|\\b[0-9a-f]{12,}\\b");
+    private static final Pattern UUID = Pattern.compile(
+            "\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b");
+    private static final Pattern PATH = Pattern.compile("(?<![\\w.])(~|\\.{1,2})?(/[\\w.@+-]+)+/(?=[\\w.@+-])");
+    private static final Pattern WHITESPACE = Pattern.compile("[ \\t]+");
+    private static final Pattern ANY_WHITESPACE = Pattern.compile("\\s+");
+
+    private FailureFingerprint() {
+    }
+
+    public static String of(String command, int exitCode, String output, String question) {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(collapseWhitespace(command)).append('\n');
+        canonical.append(exitCode).append('\n');
+        canonical.append(collapseWhitespace(question)).append('\n');
+        canonical.append(normalize(output));
+        return sha256(canonical.toString());
+    }
+
+    /**
+     * Scrubs volatile tokens. Directories are dropped but file names kept, so
+     * {@code /home/a/proj/run.sh} and {@code /srv/b/run.sh} normalize the same.
+     */
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String s = ANSI.matcher(text).replaceAll("");
+        s = METADATA.matcher(s).replaceAll("");
+        s = UUID.matcher(s).replaceAll("<uuid>");
+        s = ISO_TIMESTAMP.matcher(s).replaceAll("<ts>");
+        s = CLOCK.matcher(s).replaceAll("<time>");
+        s = EPOCH.matcher(s).replaceAll("<ts>");
+        s = DURATION.matcher(s).replaceAll("<dur>");
+        s = PID.matcher(s).replaceAll("<pid>");
+        s = HEX.matcher(s).replaceAll("<hex>");
+        s = PATH.matcher(s).replaceAll("<dir>/");
+        s = WHITESPACE.matcher(s).replaceAll(" ");
+        return s.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty())
+                .reduce(new StringBuilder(), (sb, line) -> sb.append(line).append('\n'), StringBuilder::append)
+                .toString();
+    }
+
+    private static String collapseWhitespace(String text) {
+        return text == null ? "" : ANY_WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
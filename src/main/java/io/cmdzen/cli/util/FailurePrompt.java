@@ -0,0 +1,64 @@
+package io.cmdzen.cli.util;
+
+import io.cmdzen.cli.model.CompactedOutput;
+
+import java.util.List;
+
+/**
+ * The prompt sent to the AI for one failure, shared by {@code solve} and batch solving.
+ */
+public final class FailurePrompt {
+
+    public static final String DEFAULT_QUESTION = "Help me fix this error";
+
+    private FailurePrompt() {
+    }
+
+    public static String build(String command,
+                               int exitCode,
+                               CompactedOutput compacted,
+                               String userPrompt,
+                               boolean fromCapture,
+                               List<String> hints,
+                               List<String> context) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("A Linux command ");
+        sb.append(exitCode != 0 ? "failed and I need help fixing it.\n\n"
+                : "was run and I need an explanation.\n\n");
+
+        sb.append("COMMAND: ").append(command).append("\n");
+        sb.append("EXIT CODE: ").append(exitCode).append("\n\n");
+
+        sb.append(fromCapture ? "CAPTURED ERROR INFO:\n" : "COMMAND OUTPUT:\n");
+        if (compacted.isCompacted()) {
+            sb.append(compacted.summary()).append("\n");
+        }
+        sb.append(compacted.getText()).append("\n\n");
+
+        if (!context.isEmpty()) {
+            sb.append("ENVIRONMENT:\n");
+            context.forEach(entry -> sb.append("- ").append(entry.replace("\n", "\n  ")).append("\n"));
+            sb.append("\n");
+        }
+
+        if (!hints.isEmpty()) {
+            sb.append("KNOWN ISSUE HINTS:\n");
+            hints.forEach(hint -> sb.append("- ").append(hint).append("\n"));
+            sb.append("\n");
+        }
+
+        sb.append("USER QUESTION: ").append(userPrompt).append("\n\n");
+
+        if (exitCode != 0) {
+            sb.append("Please:\n");
+            sb.append("1. Explain what went wrong\n");
+            sb.append("2. Provide the corrected command\n");
+            sb.append("3. Explain why the fix works\n");
+        } else {
+            sb.append("Please explain what this command does and the output.\n");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package io.cmdzen.cli.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Finds the most recent matching entry of a shell history file without reading all of it.
+ * <p>
+ * The file is memory-mapped and walked backwards line by line from the end, so the cost
+ * depends on how far back the entry is, not on the size of the history. Understands plain
+ * bash/ksh histories (skipping {@code #<epoch>} timestamp lines), zsh histories with or
+ * without EXTENDED_HISTORY ({@code : <ts>:<dur>;cmd}, backslash-continued multi-line
+ * entries, metafied bytes) and fish's YAML-like {@code - cmd: ...} records.
+ * {@link #readFrom} is the forward counterpart used to index newly appended entries.
+ */
+public final class HistoryReader {
+
+    public enum Format {
+        PLAIN, ZSH, FISH;
+
+        public static Format forShell(String shellName) {
+            if (shellName == null) return PLAIN;
+            return switch (shellName) {
+                case "zsh" -> ZSH;
+                case "fish" -> FISH;
+                default -> PLAIN;
+            };
+        }
+    }
+
+    private static final byte ZSH_META = (byte) 0x83;
+    private static final String FISH_CMD = "- cmd: ";
+
+    private HistoryReader() {
+    }
+
+    /**
+     * Returns the newest entry accepted by {@code accept}, or null if there is none.
+     * Histories beyond 2 GB are only searched in their last 2 GB.
+     */
+    public static String findLast(Path file, Format format, Predicate<String> accept) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) return null;
+            long start = Math.max(0, size - Integer.MAX_VALUE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size - start);
+            ReverseLines lines = new ReverseLines(buffer);
+            return switch (format) {
+                case PLAIN -> findPlain(lines, accept);
+                case ZSH -> findZsh(lines, accept);
+                case FISH -> findFish(lines, accept);
+            };
+        }
+    }
+
+    /**
+     * Reads the entries that start at or after byte {@code from}, oldest first, and returns
+     * the offset just past the last complete entry so the next call can resume there. A
+     * final line without its newline (still being written) is left for the next call.
+     */
+    public static long readFrom(Path file, long from, Format format, Consumer<String> entries) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= from) return from;
+            long end = Math.min(size, from + Integer.MAX_VALUE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, end - from);
+
+            int consumed = 0;
+            StringBuilder pending = null; // zsh entry continued on the next line
+            int lineStart = 0;
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) != '\n') continue;
+                int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] bytes = new byte[lineEnd - lineStart];
+                buffer.get(lineStart, bytes);
+                lineStart = i + 1;
+
+                switch (format) {
+                    case PLAIN -> {
+                        String line = new String(bytes, StandardCharsets.UTF_8).replace("\0", "");
+                        if (!isBashTimestamp(line)) entries.accept(line);
+                        consumed = lineStart;
+                    }
+                    case ZSH -> {
+                        String line = new String(ReverseLines.unmetafy(bytes), StandardCharsets.UTF_8);
+                        if (line.endsWith("\\")) {
+                            if (pending == null) pending = new StringBuilder();
+                            pending.append(line, 0, line.length() - 1).append('\n');
+                            continue;
+                        }
+                        String entry = pending == null ? line : pending.append(line).toString();
+                        pending = null;
+                        entries.accept(stripZshHeader(entry));
+                        consumed = lineStart;
+                    }
+                    case FISH -> {
+                        String line = new String(bytes, StandardCharsets.UTF_8);
+                        if (line.startsWith(FISH_CMD)) {
+                            entries.accept(unescapeFish(line.substring(FISH_CMD.length())));
+                        }
+                        consumed = lineStart;
+                    }
+                }
+            }
+            return from + consumed;
+        }
+    }
+
+    private static String findPlain(ReverseLines lines, Predicate<String> accept) {
+        while (lines.previous()) {
+            String line = lines.text(false).replace("\0", "");
+            if (isBashTimestamp(line)) continue;
+            if (accept.test(line)) return line;
+        }
+        return null;
+    }
+
+    private static String findZsh(ReverseLines lines, Predicate<String> accept) {
+        String continuation = null;
+        while (lines.previous()) {
+            String line = lines.text(true);
+            if (continuation != null) {
+                // this line ended with the backslash that joined it to the following one
+                line = line.substring(0, line.length() - 1) + "\n" + continuation;
+            }
+            if (lines.previousEndsWith((byte) '\\')) {
+                continuation = line;
+                continue;
+            }
+            continuation = null;
+            String command = stripZshHeader(line);
+            if (accept.test(command)) return command;
+        }
+        return null;
+    }
+
+    private static String findFish(ReverseLines lines, Predicate<String> accept) {
+        while (lines.previous()) {
+            String line = lines.text(false);
+            if (!line.startsWith(FISH_CMD)) continue;
+            String command = unescapeFish(line.substring(FISH_CMD.length()));
+            if (accept.test(command)) return command;
+        }
+        return null;
+    }
+
+    private static boolean isBashTimestamp(String line) {
+        if (line.length() < 2 || line.charAt(0) != '#') return false;
+        for (int i = 1; i < line.length(); i++) {
+            if (!Character.isDigit(line.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@code : 1700000000:0;git status} becomes {@code git status}; other lines are
+     * returned unchanged.
+     */
+    static String stripZshHeader(String line) {
+        if (!line.startsWith(": ")) return line;
+        int i = 2;
+        while (i < line.length() && Character.isDigit(line.charAt(i))) i++;
+        if (i == 2 || i >= line.length() || line.charAt(i) != ':') return line;
+        int j = ++i;
+        while (j < line.length() && Character.isDigit(line.charAt(j))) j++;
+        if (j == i || j >= line.length() || line.charAt(j) != ';') return line;
+        return line.substring(j + 1);
+    }
+
+    static String unescapeFish(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Cursor over the lines of a buffer from last to first. A trailing newline does not
+     * produce an empty last line; carriage returns are dropped.
+     */
+    private static final class ReverseLines {
+
+        private final MappedByteBuffer buffer;
+        private int cursor;
+        private boolean exhausted;
+        private int start;
+        private int end;
+
+        ReverseLines(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            int limit = buffer.limit();
+            this.cursor = limit > 0 && buffer.get(limit - 1) == '\n' ? limit - 1 : limit;
+        }
+
+        /**
+         * Moves to the previous line; false once the first line has been returned.
+         */
+        boolean previous() {
+            if (exhausted) return false;
+            end = cursor;
+            int i = end - 1;
+            while (i >= 0 && buffer.get(i) != '\n') i--;
+            start = i + 1;
+            if (start == 0) {
+                exhausted = true;
+            } else {
+                cursor = start - 1;
+            }
+            return true;
+        }
+
+        /**
+         * Whether the line before the current one ends with {@code b}.
+         */
+        boolean previousEndsWith(byte b) {
+            int last = start - 2;
+            if (last >= 0 && buffer.get(last) == '\r') last--;
+            return last >= 0 && buffer.get(last) == b;
+        }
+
+        String text(boolean unmetafy) {
+            int length = end - start;
+            if (length > 0 && buffer.get(end - 1) == '\r') length--;
+            byte[] bytes = new byte[length];
+            buffer.get(start, bytes);
+            if (unmetafy) bytes = unmetafy(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static byte[] unmetafy(byte[] bytes) {
+            int n = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == ZSH_META && i + 1 < bytes.length) {
+                    bytes[n++] = (byte) (bytes[++i] ^ 32);
+                } else {
+                    bytes[n++] = bytes[i];
+                }
+            }
+            return n == bytes.length ? bytes : Arrays.copyOf(bytes, n);
+        }
+    }
+}
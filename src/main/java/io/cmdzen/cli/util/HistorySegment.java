@@ -0,0 +1,440 @@
+package io.cmdzen.cli.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Immutable on-disk inverted index over a range of a shell history file.
+ * <p>
+ * Layout: a header, a table of distinct commands (use count, last sequence number), a
+ * table of tokens sorted by their UTF-8 bytes, a string heap and the postings (command
+ * numbers per token). The file is memory-mapped and queried in place: prefix lookups are
+ * a binary search over the token table, fuzzy lookups a scan of it with a bounded edit
+ * distance, and only matching commands are decoded.
+ */
+public final class HistorySegment {
+
+    private static final int MAGIC = 0x435a4849; // "CZHI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int ENTRY_SIZE = 20;
+    private static final int TOKEN_SIZE = 16;
+    private static final int MAX_TOKENS_PER_COMMAND = 64;
+
+    private static final int RANK_FUZZY = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_EXACT = 2;
+    // match weight by rank: a typo, a token prefix, a whole token
+    private static final float[] WEIGHTS = {0.5f, 0.8f, 1.0f};
+
+    private final MappedByteBuffer buffer;
+    private final long sourceOffset;
+    private final long sourceTailHash;
+    private final long nextSeq;
+    private final int entryCount;
+    private final int tokenCount;
+    private final int tokensStart;
+
+    private HistorySegment(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.sourceOffset = buffer.getLong(8);
+        this.sourceTailHash = buffer.getLong(16);
+        this.nextSeq = buffer.getLong(24);
+        this.entryCount = buffer.getInt(32);
+        this.tokenCount = buffer.getInt(36);
+        this.tokensStart = HEADER_SIZE + entryCount * ENTRY_SIZE;
+    }
+
+    /**
+     * Maps an index file, or returns null if it is missing or not a valid segment.
+     */
+    public static HistorySegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null;
+            HistorySegment segment = new HistorySegment(buffer);
+            long tables = HEADER_SIZE + (long) segment.entryCount * ENTRY_SIZE + (long) segment.tokenCount * TOKEN_SIZE;
+            return tables <= buffer.limit() && segment.end() <= buffer.limit() ? segment : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Where the last part written ends: the last token's postings, or the last command's bytes
+     * when there are no tokens. Beyond the file's size means the file is torn.
+     */
+    private long end() {
+        if (tokenCount > 0) {
+            int base = tokensStart + (tokenCount - 1) * TOKEN_SIZE;
+            return Integer.toUnsignedLong(buffer.getInt(base + 8)) + 4L * buffer.getInt(base + 12);
+        }
+        if (entryCount > 0) {
+            int base = HEADER_SIZE + (entryCount - 1) * ENTRY_SIZE;
+            return Integer.toUnsignedLong(buffer.getInt(base)) + buffer.getInt(base + 4);
+        }
+        return HEADER_SIZE;
+    }
+
+    /** Bytes of the history file covered by this segment. */
+    public long sourceOffset() {
+        return sourceOffset;
+    }
+
+    /** Checksum of the history bytes just before {@link #sourceOffset()}. */
+    public long sourceTailHash() {
+        return sourceTailHash;
+    }
+
+    public long nextSeq() {
+        return nextSeq;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * The {@code limit} best-scoring commands containing every term, either as a token or a
+     * token prefix (or, when {@code fuzzy}, within a small edit distance). A hit's weight is
+     * that of its weakest term. Only the returned commands are decoded.
+     */
+    public List<Hit> search(List<String> terms, boolean fuzzy, int limit, Scorer scorer) {
+        long[] result = null; // entry number << 2 | weight rank, ascending
+        for (String term : terms) {
+            long[] termHits = termHits(term.getBytes(StandardCharsets.UTF_8), fuzzy);
+            result = result == null ? termHits : intersect(result, termHits);
+            if (result.length == 0) break;
+        }
+        if (result == null || limit <= 0) return List.of();
+
+        PriorityQueue<Candidate> top = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+        for (long packed : result) {
+            int entry = (int) (packed >>> 2);
+            int base = HEADER_SIZE + entry * ENTRY_SIZE;
+            float weight = WEIGHTS[(int) (packed & 3)];
+            double score = scorer.score(buffer.getInt(base + 8), buffer.getLong(base + 12), weight);
+            if (top.size() < limit) {
+                top.add(new Candidate(entry, weight, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new Candidate(entry, weight, score));
+            }
+        }
+        List<Hit> hits = new ArrayList<>(top.size());
+        for (Candidate candidate : top) {
+            int base = HEADER_SIZE + candidate.entry() * ENTRY_SIZE;
+            hits.add(new Hit(string(buffer.getInt(base), buffer.getInt(base + 4)),
+                    buffer.getInt(base + 8), buffer.getLong(base + 12), candidate.weight()));
+        }
+        return hits;
+    }
+
+    /**
+     * Adds all commands of this segment to {@code builder}, for merging segments.
+     */
+    public void copyInto(Builder builder) {
+        for (int i = 0; i < entryCount; i++) {
+            int base = HEADER_SIZE + i * ENTRY_SIZE;
+            builder.add(string(buffer.getInt(base), buffer.getInt(base + 4)),
+                    buffer.getInt(base + 8), buffer.getLong(base + 12));
+        }
+    }
+
+    private long[] termHits(byte[] key, boolean fuzzy) {
+        LongList hits = new LongList();
+        for (int t = lowerBound(key); t < tokenCount && startsWith(t, key); t++) {
+            addPostings(t, tokenLength(t) == key.length ? RANK_EXACT : RANK_PREFIX, hits);
+        }
+        if (fuzzy) {
+            int maxEdits = key.length <= 4 ? 1 : 2;
+            int[][] rows = new int[2][key.length + 1];
+            for (int t = 0; t < tokenCount; t++) {
+                if (Math.abs(tokenLength(t) - key.length) > maxEdits || startsWith(t, key)) continue;
+                if (withinEdits(t, key, maxEdits, rows)) addPostings(t, RANK_FUZZY, hits);
+            }
+        }
+        // sorted by entry, then rank: keep the last (best) hit of each entry
+        long[] sorted = hits.toSortedArray();
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i + 1 < sorted.length && sorted[i + 1] >>> 2 == sorted[i] >>> 2) continue;
+            sorted[n++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] both = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            long x = a[i] >>> 2;
+            long y = b[j] >>> 2;
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                both[n++] = x << 2 | Math.min(a[i] & 3, b[j] & 3);
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, n);
+    }
+
+    private void addPostings(int token, int rank, LongList hits) {
+        int base = tokensStart + token * TOKEN_SIZE;
+        int offset = buffer.getInt(base + 8);
+        int count = buffer.getInt(base + 12);
+        for (int i = 0; i < count; i++) {
+            hits.add((long) buffer.getInt(offset + i * 4) << 2 | rank);
+        }
+    }
+
+    private int lowerBound(byte[] key) {
+        int lo = 0;
+        int hi = tokenCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareToken(mid, key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int compareToken(int token, byte[] key) {
+        int base = tokensStart + token * TOKEN_SIZE;
+        int offset = buffer.getInt(base);
+        int length = buffer.getInt(base + 4);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private boolean startsWith(int token, byte[] key) {
+        int base = tokensStart + token * TOKEN_SIZE;
+        int offset = buffer.getInt(base);
+        if (buffer.getInt(base + 4) < key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private int tokenLength(int token) {
+        return buffer.getInt(tokensStart + token * TOKEN_SIZE + 4);
+    }
+
+    /**
+     * Levenshtein distance with a band of {@code maxEdits}, abandoned as soon as a whole
+     * row exceeds it.
+     */
+    private boolean withinEdits(int token, byte[] key, int maxEdits, int[][] rows) {
+        int base = tokensStart + token * TOKEN_SIZE;
+        int offset = buffer.getInt(base);
+        int length = buffer.getInt(base + 4);
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= key.length; j++) previous[j] = j;
+        for (int i = 1; i <= length; i++) {
+            current[0] = i;
+            int rowMin = i;
+            byte c = buffer.get(offset + i - 1);
+            for (int j = 1; j <= key.length; j++) {
+                int cost = c == key[j - 1] ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) return false;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[key.length] <= maxEdits;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lower-cased search tokens of a command: runs of letters, digits and {@code . _ - @},
+     * at least two characters long. Paths, URLs and options are split into their parts.
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            boolean tokenChar = Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '-' || c == '@';
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                String token = trimPunctuation(lower.substring(start, i));
+                if (token.length() >= 2) tokens.add(token);
+                start = -1;
+                if (tokens.size() >= MAX_TOKENS_PER_COMMAND) break;
+            }
+        }
+        return tokens;
+    }
+
+    private static String trimPunctuation(String token) {
+        int from = 0;
+        int to = token.length();
+        while (from < to && (token.charAt(from) == '.' || token.charAt(from) == '-')) from++;
+        while (to > from && token.charAt(to - 1) == '.') to--;
+        return token.substring(from, to);
+    }
+
+    /**
+     * A matching command from one segment.
+     */
+    public record Hit(String command, int count, long lastSeq, float weight) {
+    }
+
+    /**
+     * Ranks a match by the command's use count, last use and match weight.
+     */
+    @FunctionalInterface
+    public interface Scorer {
+        double score(int count, long lastSeq, float weight);
+    }
+
+    private record Candidate(int entry, float weight, double score) {
+    }
+
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * In-memory commands to be written as a new segment.
+     */
+    public static final class Builder {
+
+        private final Map<String, long[]> commands = new LinkedHashMap<>(); // {count, lastSeq}
+        private long nextSeq;
+
+        public Builder(long nextSeq) {
+            this.nextSeq = nextSeq;
+        }
+
+        /** Records one more use of {@code command}, as the most recent history entry. */
+        public void add(String command) {
+            String trimmed = command.strip();
+            if (trimmed.isEmpty()) return;
+            long[] stats = commands.computeIfAbsent(trimmed, k -> new long[2]);
+            stats[0]++;
+            stats[1] = nextSeq++;
+        }
+
+        void add(String command, int count, long lastSeq) {
+            long[] stats = commands.computeIfAbsent(command, k -> new long[2]);
+            stats[0] += count;
+            stats[1] = Math.max(stats[1], lastSeq);
+        }
+
+        public int size() {
+            return commands.size();
+        }
+
+        public void write(Path file, long sourceOffset, long sourceTailHash) throws IOException {
+            List<String> entries = new ArrayList<>(commands.keySet());
+            Map<String, List<Integer>> postings = new HashMap<>();
+            for (int i = 0; i < entries.size(); i++) {
+                for (String token : tokenize(entries.get(i))) {
+                    postings.computeIfAbsent(token, k -> new ArrayList<>()).add(i);
+                }
+            }
+            byte[][] tokens = postings.keySet().stream()
+                    .map(t -> t.getBytes(StandardCharsets.UTF_8))
+                    .sorted(Arrays::compareUnsigned)
+                    .toArray(byte[][]::new);
+
+            int heapStart = HEADER_SIZE + entries.size() * ENTRY_SIZE + tokens.length * TOKEN_SIZE;
+            ByteArrayOutputStream heap = new ByteArrayOutputStream();
+            ByteBuffer header = ByteBuffer.allocate(heapStart);
+            header.putInt(MAGIC).putInt(VERSION).putLong(sourceOffset).putLong(sourceTailHash)
+                    .putLong(nextSeq).putInt(entries.size()).putInt(tokens.length);
+
+            for (String command : entries) {
+                byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+                long[] stats = commands.get(command);
+                header.putInt(heapStart + heap.size()).putInt(bytes.length)
+                        .putInt((int) Math.min(stats[0], Integer.MAX_VALUE)).putLong(stats[1]);
+                heap.write(bytes);
+            }
+            int[] tokenOffsets = new int[tokens.length];
+            for (int t = 0; t < tokens.length; t++) {
+                tokenOffsets[t] = heapStart + heap.size();
+                heap.write(tokens[t]);
+            }
+            int postingsStart = heapStart + heap.size();
+            ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+            DataOutputStream postingOut = new DataOutputStream(postingBytes);
+            for (int t = 0; t < tokens.length; t++) {
+                List<Integer> ids = postings.get(new String(tokens[t], StandardCharsets.UTF_8));
+                header.putInt(tokenOffsets[t]).putInt(tokens[t].length)
+                        .putInt(postingsStart + postingBytes.size()).putInt(ids.size());
+                for (int id : ids) postingOut.writeInt(id);
+            }
+
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                for (ByteBuffer part : new ByteBuffer[]{header.flip(), ByteBuffer.wrap(heap.toByteArray()),
+                        ByteBuffer.wrap(postingBytes.toByteArray())}) {
+                    while (part.hasRemaining()) out.write(part);
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
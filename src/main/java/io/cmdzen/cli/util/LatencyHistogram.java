@@ -0,0 +1,112 @@
+package io.cmdzen.cli.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Log-linear histogram of durations in microseconds: each power of two is split into 8
+ * buckets, so any percentile is within 12.5% of the true value, from 1 µs to days, in at
+ * most a few hundred counters. Only non-empty buckets are serialized. Also used for plain
+ * counters, which simply never record a value.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sumMicros;
+
+    public void recordMicros(long micros) {
+        counts[bucket(Math.max(0, micros))]++;
+        count++;
+        sumMicros += micros;
+    }
+
+    /** Adds to the count without a value, for counters. */
+    public void increment(long n) {
+        count += n;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sumMicros += other.sumMicros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getRecorded() {
+        long recorded = 0;
+        for (long c : counts) recorded += c;
+        return recorded;
+    }
+
+    public long getMeanMicros() {
+        long recorded = getRecorded();
+        return recorded == 0 ? 0 : sumMicros / recorded;
+    }
+
+    /**
+     * The value at quantile {@code q} (0..1), as the midpoint of its bucket.
+     */
+    public long percentileMicros(double q) {
+        long recorded = getRecorded();
+        if (recorded == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return (lowerBound(i) + lowerBound(i + 1)) / 2;
+        }
+        return lowerBound(BUCKETS - 1);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (1L << magnitude) + (sub << (magnitude - SUB_BUCKET_BITS));
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(sumMicros);
+        int used = 0;
+        for (long c : counts) if (c != 0) used++;
+        out.writeShort(used);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    public static LatencyHistogram read(DataInputStream in) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.count = in.readLong();
+        histogram.sumMicros = in.readLong();
+        int used = in.readUnsignedShort();
+        for (int i = 0; i < used; i++) {
+            int bucket = in.readUnsignedShort();
+            long c = in.readLong();
+            if (bucket < BUCKETS) histogram.counts[bucket] = c;
+        }
+        return histogram;
+    }
+}
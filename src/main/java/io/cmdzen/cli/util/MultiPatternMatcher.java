@@ -0,0 +1,163 @@
+package io.cmdzen.cli.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Case-insensitive Aho-Corasick automaton over a fixed set of literal patterns.
+ * Built once, then finds every pattern occurring in a text in a single left-to-right
+ * pass, independent of how many patterns there are.
+ */
+public final class MultiPatternMatcher {
+
+    private static final int ROOT = 0;
+
+    private final int patternCount;
+    // per-node transitions kept as small parallel arrays; most nodes have one or two children
+    private char[][] keys = new char[16][];
+    private int[][] children = new int[16][];
+    private int[] fail = new int[16];
+    private int[] dictLink = new int[16];
+    private int[][] outputs = new int[16][];
+    private int nodeCount = 1;
+
+    public MultiPatternMatcher(List<String> patterns) {
+        this.patternCount = patterns.size();
+        keys[ROOT] = new char[0];
+        children[ROOT] = new int[0];
+        outputs[ROOT] = new int[0];
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            if (pattern == null || pattern.isEmpty()) continue;
+            insert(pattern, i);
+        }
+        link();
+    }
+
+    public int size() {
+        return patternCount;
+    }
+
+    /**
+     * Returns the indexes (in constructor order) of every pattern found in {@code text}.
+     */
+    public BitSet match(CharSequence text) {
+        BitSet found = new BitSet(patternCount);
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int next;
+            while ((next = child(state, c)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (int s = state; s != ROOT; s = dictLink[s]) {
+                for (int pattern : outputs[s]) {
+                    found.set(pattern);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Whether any pattern occurs in {@code text}; stops at the first one found.
+     */
+    public boolean matchesAny(CharSequence text) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int next;
+            while ((next = child(state, c)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next < 0 ? ROOT : next;
+            if (outputs[state].length > 0 || dictLink[state] != ROOT) return true;
+        }
+        return false;
+    }
+
+    private void insert(String pattern, int index) {
+        int state = ROOT;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = fold(pattern.charAt(i));
+            int next = child(state, c);
+            if (next < 0) {
+                next = newNode();
+                addChild(state, c, next);
+            }
+            state = next;
+        }
+        int[] out = outputs[state];
+        out = Arrays.copyOf(out, out.length + 1);
+        out[out.length - 1] = index;
+        outputs[state] = out;
+    }
+
+    /**
+     * Breadth-first computation of failure links, plus dictionary links that skip
+     * straight to the next suffix state that actually ends a pattern.
+     */
+    private void link() {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : children[ROOT]) {
+            fail[child] = ROOT;
+            dictLink[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int k = 0; k < keys[state].length; k++) {
+                char c = keys[state][k];
+                int child = children[state][k];
+                int f = fail[state];
+                int target;
+                while ((target = child(f, c)) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = target < 0 || target == child ? ROOT : target;
+                int suffix = fail[child];
+                dictLink[child] = outputs[suffix].length > 0 ? suffix : dictLink[suffix];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int child(int state, char c) {
+        char[] k = keys[state];
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] == c) return children[state][i];
+        }
+        return -1;
+    }
+
+    private void addChild(int state, char c, int child) {
+        int n = keys[state].length;
+        keys[state] = Arrays.copyOf(keys[state], n + 1);
+        children[state] = Arrays.copyOf(children[state], n + 1);
+        keys[state][n] = c;
+        children[state][n] = child;
+    }
+
+    private int newNode() {
+        if (nodeCount == keys.length) {
+            int capacity = nodeCount * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            children = Arrays.copyOf(children, capacity);
+            fail = Arrays.copyOf(fail, capacity);
+            dictLink = Arrays.copyOf(dictLink, capacity);
+            outputs = Arrays.copyOf(outputs, capacity);
+        }
+        int node = nodeCount++;
+        keys[node] = new char[0];
+        children[node] = new int[0];
+        outputs[node] = new int[0];
+        return node;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,56 @@
+package io.cmdzen.cli.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a short read-only command for a context probe and returns the start of its output.
+ * <p>
+ * stdin is closed and stderr is merged into stdout. Output past {@code maxBytes} is read and
+ * discarded, so a chatty command can't block on a full pipe. The command is killed at the
+ * timeout, which also ends the read.
+ */
+public final class ProbeCommand {
+
+    private ProbeCommand() {
+    }
+
+    /**
+     * The output, or null if the command failed to start, exited non-zero or was killed.
+     */
+    public static String run(List<String> command, Path directory, Map<String, String> environment,
+                             Duration timeout, int maxBytes) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true);
+        pb.environment().clear();
+        pb.environment().putAll(environment);
+        pb.environment().put("LC_ALL", "C");
+
+        Process process = pb.start();
+        process.getOutputStream().close();
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (process.isAlive()) process.destroyForcibly();
+        });
+
+        byte[] head;
+        try (InputStream in = process.getInputStream()) {
+            head = in.readNBytes(maxBytes);
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            return null;
+        }
+        if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS) || process.exitValue() != 0) {
+            return null;
+        }
+        return new String(head, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,57 @@
+package io.cmdzen.cli.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ring buffer keeping the last {@code capacity} bytes written to it.
+ */
+public final class TailBuffer {
+
+    private final byte[] ring;
+    private long written;
+
+    public TailBuffer(int capacity) {
+        this.ring = new byte[capacity];
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        if (length >= ring.length) {
+            offset += length - ring.length;
+            written += length - ring.length;
+            length = ring.length;
+        }
+        int position = (int) (written % ring.length);
+        int first = Math.min(length, ring.length - position);
+        System.arraycopy(bytes, offset, ring, position, first);
+        System.arraycopy(bytes, offset + first, ring, 0, length - first);
+        written += length;
+    }
+
+    /** Total bytes written, including those no longer kept. */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public synchronized long getDropped() {
+        return Math.max(0, written - ring.length);
+    }
+
+    /**
+     * The kept bytes as text. Once bytes were dropped, the partial first line is left out.
+     */
+    public synchronized String text() {
+        int size = (int) Math.min(written, ring.length);
+        byte[] bytes = new byte[size];
+        int start = (int) ((written - size) % ring.length);
+        int first = Math.min(size, ring.length - start);
+        System.arraycopy(ring, start, bytes, 0, first);
+        System.arraycopy(ring, 0, bytes, first, size - first);
+
+        int from = 0;
+        if (getDropped() > 0) {
+            while (from < size && bytes[from] != '\n') from++;
+            from = from < size ? from + 1 : 0;
+        }
+        return new String(bytes, from, size - from, StandardCharsets.UTF_8);
+    }
+}
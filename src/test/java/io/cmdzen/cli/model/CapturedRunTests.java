@@ -0,0 +1,150 @@
+package io.cmdzen.cli.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CapturedRunTests {
+
+    private static final String TRAILER = "EXIT_CODE: 2\nCOMMAND: make -j4\nTIMESTAMP: 2024-05-01T12:00:00Z\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesTheTrailerAtTheEndOfALargeCapture() throws IOException {
+        String body = "__CMDZEN_CMD_START__\n" + lines(0, 50_000);
+        Path file = write(body + TRAILER);
+
+        CapturedRun run = CapturedRun.read(file);
+
+        assertThat(run.getExitCode()).isEqualTo(2);
+        assertThat(run.getCommand()).isEqualTo("make -j4");
+        assertThat(run.getTimestamp()).isEqualTo("2024-05-01T12:00:00Z");
+        assertThat(run.getBodyLength()).isEqualTo(body.length());
+        assertThat(run.getSize()).isEqualTo(body.length() + TRAILER.length());
+        assertThat(run.getOutput()).isEqualTo(lines(0, 50_000).stripTrailing());
+    }
+
+    @Test
+    void ignoresMetadataOutsideTheLast8Kb() throws IOException {
+        String body = "TIMESTAMP: from the output\n" + lines(0, 2_000);
+        Path file = write(body + "EXIT_CODE: 1\nCOMMAND: make\n");
+
+        CapturedRun run = CapturedRun.read(file);
+
+        assertThat(run.getCommand()).isEqualTo("make");
+        assertThat(run.getExitCode()).isEqualTo(1);
+        assertThat(run.getTimestamp()).isNull();
+        assertThat(run.getBodyLength()).isEqualTo(body.length());
+    }
+
+    @Test
+    void ignoresAPartialLineAtTheStartOfTheTrailerWindow() throws IOException {
+        // the 8 KB window starts right at "EXIT_CODE: 9", in the middle of an output line
+        String trailer = "COMMAND: make\n";
+        String rest = "EXIT_CODE: 9\n";
+        String filler = "y".repeat(8 * 1024 - rest.length() - trailer.length() - 1) + "\n";
+        String body = lines(0, 100) + "noise " + rest + filler;
+        Path file = write(body + trailer);
+
+        CapturedRun run = CapturedRun.read(file);
+
+        assertThat(run.getSize() - 8 * 1024).isEqualTo(body.indexOf(rest));
+        assertThat(run.getCommand()).isEqualTo("make");
+        assertThat(run.getExitCode()).isZero();
+        assertThat(run.getBodyLength()).isEqualTo(body.length());
+    }
+
+    @Test
+    void parsesAnInMemoryRun() {
+        CapturedRun run = CapturedRun.of(("__CMDZEN_CMD_START__\nboom\n" + TRAILER).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(run.getExitCode()).isEqualTo(2);
+        assertThat(run.getCommand()).isEqualTo("make -j4");
+        assertThat(run.getOutput()).isEqualTo("boom");
+        assertThat(run.window(1024, 1024).getText()).isEqualTo("boom");
+    }
+
+    @Test
+    void cutsTheWindowAtLineBoundaries() throws IOException {
+        // 1000 lines of 10 bytes each
+        String body = lines(0, 1_000);
+        CapturedRun fromFile = CapturedRun.read(write(body + TRAILER));
+        CapturedRun inMemory = CapturedRun.of((body + TRAILER).getBytes(StandardCharsets.UTF_8));
+
+        for (CapturedRun run : new CapturedRun[]{fromFile, inMemory}) {
+            OutputWindow window = run.window(105, 205);
+
+            assertThat(window.getHead()).isEqualTo(lines(0, 10).stripTrailing());
+            assertThat(window.getTail()).isEqualTo(lines(980, 1_000).stripTrailing());
+            assertThat(window.getLineCount()).isEqualTo(1_000);
+            assertThat(window.getOmittedBytes()).isEqualTo(10_000 - 100 - 200);
+            assertThat(window.getOmittedLines()).isEqualTo(1_000 - 10 - 20);
+            assertThat(window.isComplete()).isFalse();
+            assertThat(window.getText()).contains("... [970 lines / 9700 bytes omitted] ...");
+        }
+        assertThat(fromFile.window(105, 205).getTotalBytes()).isEqualTo(10_000);
+    }
+
+    @Test
+    void keepsEverythingWhenTheWindowCoversTheOutput() throws IOException {
+        String body = lines(0, 20);
+        OutputWindow window = CapturedRun.read(write(body + TRAILER)).window(100, 100);
+
+        assertThat(window.isComplete()).isTrue();
+        assertThat(window.getText()).isEqualTo(body.stripTrailing());
+        assertThat(window.getLineCount()).isEqualTo(20);
+    }
+
+    @Test
+    void neverCutsThroughAMultiByteCharacter() throws IOException {
+        // lines of 3-byte characters; neither window size lands on a line or character boundary
+        String line = "€".repeat(9) + "\n";
+        String body = line.repeat(100);
+        CapturedRun fromFile = CapturedRun.read(write(body + TRAILER));
+        CapturedRun inMemory = CapturedRun.of((body + TRAILER).getBytes(StandardCharsets.UTF_8));
+
+        for (CapturedRun run : new CapturedRun[]{fromFile, inMemory}) {
+            OutputWindow window = run.window(70, 71);
+
+            assertThat(window.getHead()).isEqualTo(line.repeat(2).stripTrailing());
+            assertThat(window.getTail()).isEqualTo(line.repeat(2).stripTrailing());
+            assertThat(window.getOmittedBytes()).isEqualTo(96 * 28);
+            assertThat(window.getOmittedLines()).isEqualTo(96);
+        }
+    }
+
+    @Test
+    void cutsAnOverlongLineAtCharacterBoundaries() throws IOException {
+        // a single 300-byte line: the head would end and the tail start inside a "€"
+        String body = "€".repeat(100);
+        CapturedRun fromFile = CapturedRun.read(write(body + "\n" + TRAILER));
+        CapturedRun inMemory = CapturedRun.of(body.getBytes(StandardCharsets.UTF_8));
+
+        for (CapturedRun run : new CapturedRun[]{fromFile, inMemory}) {
+            OutputWindow window = run.window(10, 20);
+
+            assertThat(window.getHead()).isEqualTo("€€€");
+            assertThat(window.getTail()).startsWith("€").doesNotContain("\uFFFD");
+            assertThat(window.getText()).doesNotContain("\uFFFD");
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(dir.resolve("capture.log"), content);
+    }
+
+    // "line 0042\n" for each number in the range
+    private static String lines(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> String.format("line %04d\n", i)).collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,106 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.CircuitConfig;
+import io.cmdzen.cli.config.HedgeConfig;
+import io.cmdzen.cli.config.LocalAIConfig;
+import io.cmdzen.cli.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AIServiceTests {
+
+    @TempDir
+    Path stateDir;
+
+    @Test
+    void streamBreakingOffMidAnswerEndsWithThePlaceholder() {
+        FakeProvider first = new FakeProvider("first", List.of("Run make ", "clean"), new IllegalStateException("reset"));
+        FakeProvider second = new FakeProvider("second", List.of("never"), null);
+        List<String> tokens = new ArrayList<>();
+
+        String answer = service(first, second).askStreaming("why?", tokens::add);
+
+        assertThat(answer).isEqualTo("AI Error: first stopped mid-answer: reset");
+        assertThat(AIService.isError(answer)).isTrue();
+        assertThat(tokens).containsExactly("Run make ", "clean", "\nAI Error: first stopped mid-answer: reset");
+        assertThat(second.calls).isZero();
+    }
+
+    @Test
+    void streamFailingBeforeTheFirstTokenFallsBackToTheNextProvider() {
+        FakeProvider first = new FakeProvider("first", List.of(), new IllegalStateException("refused"));
+        FakeProvider second = new FakeProvider("second", List.of("Run ", "make"), null);
+        List<String> tokens = new ArrayList<>();
+
+        String answer = service(first, second).askStreaming("why?", tokens::add);
+
+        assertThat(answer).isEqualTo("Run make");
+        assertThat(tokens).containsExactly("Run ", "make");
+        assertThat(first.calls).isEqualTo(1);
+        assertThat(second.calls).isEqualTo(1);
+    }
+
+    @Test
+    void everyProviderFailingBeforeTheFirstTokenReportsTheLastFailure() {
+        FakeProvider first = new FakeProvider("first", List.of(), new IllegalStateException("refused"));
+        FakeProvider second = new FakeProvider("second", List.of(), new IllegalStateException("timed out"));
+        List<String> tokens = new ArrayList<>();
+
+        String answer = service(first, second).askStreaming("why?", tokens::add);
+
+        assertThat(answer).isEqualTo("AI Error: timed out");
+        assertThat(tokens).containsExactly("AI Error: timed out");
+    }
+
+    private AIService service(AIProvider... providers) {
+        return new AIService(List.of(providers), new HedgeConfig(), new LocalAIConfig(),
+                new MetricsService(stateDir), new ProviderHealthService(new CircuitConfig(), stateDir));
+    }
+
+    /**
+     * Streams {@code chunks}, then throws {@code failure} if there is one.
+     */
+    private static final class FakeProvider implements AIProvider {
+
+        private final String name;
+        private final List<String> chunks;
+        private final RuntimeException failure;
+        private int calls;
+
+        FakeProvider(String name, List<String> chunks, RuntimeException failure) {
+            this.name = name;
+            this.chunks = chunks;
+            this.failure = failure;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isConfigured() {
+            return true;
+        }
+
+        @Override
+        public String complete(List<ChatMessage> messages) {
+            return stream(messages, chunk -> { });
+        }
+
+        @Override
+        public String stream(List<ChatMessage> messages, Consumer<String> onToken) {
+            calls++;
+            chunks.forEach(onToken);
+            if (failure != null) throw failure;
+            return String.join("", chunks);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.FailureStoreConfig;
+import io.cmdzen.cli.model.CapturedRun;
+import io.cmdzen.cli.model.FailureRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FailureStoreTests {
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    private FailureStore store;
+    private int spooled;
+
+    @BeforeEach
+    void setUp() {
+        FailureStoreConfig config = new FailureStoreConfig();
+        config.setMaxEntries(4);
+        store = new FailureStore(config, directory);
+    }
+
+    @Test
+    void storesSpooledFailuresAsGzipMembersBehindTheHeader() throws IOException {
+        spool(101, "make", 2, "make: *** [all] Error 2");
+        spool(202, "npm test", 1, "1 failing");
+        spool(101, "cargo build", 101, "error[E0425]: cannot find value `x`");
+
+        List<FailureRecord> records = store.recent(10, 0);
+
+        assertThat(records).extracting(FailureRecord::getId).containsExactly(3L, 2L, 1L);
+        assertThat(records).extracting(FailureRecord::getCommand).containsExactly("cargo build", "npm test", "make");
+        assertThat(store.recent(10, 101)).extracting(FailureRecord::getId).containsExactly(3L, 1L);
+        assertThat(directory.resolve("spool")).isEmptyDirectory();
+
+        byte[] data = Files.readAllBytes(directory.resolve("failures.dat"));
+        long expectedOffset = HEADER_SIZE;
+        for (FailureRecord record : records.reversed()) {
+            assertThat(record.getOffset()).isEqualTo(expectedOffset);
+            byte[] member = Arrays.copyOfRange(data, (int) record.getOffset(),
+                    (int) record.getOffset() + record.getLength());
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(member))) {
+                assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).contains("COMMAND: " + record.getCommand());
+            }
+            expectedOffset += record.getLength();
+        }
+        assertThat(data).hasSize((int) expectedOffset);
+
+        CapturedRun run = store.load(2);
+        assertThat(run.getExitCode()).isEqualTo(1);
+        assertThat(run.getCommand()).isEqualTo("npm test");
+        assertThat(run.getOutput()).contains("1 failing");
+        assertThat(store.load(4)).isNull();
+        assertThat(store.load(0)).isNull();
+    }
+
+    @Test
+    void dropsATornTrailingIndexRecord() throws IOException {
+        spool(101, "make", 2, "Error 2");
+        spool(101, "make install", 2, "Permission denied");
+        store.recent(10, 0);
+        Path index = directory.resolve("failures.idx");
+        Files.write(index, new byte[RECORD_SIZE / 3], StandardOpenOption.APPEND);
+
+        spool(101, "make check", 2, "FAIL: test_parse");
+
+        assertThat(store.recent(10, 0)).extracting(FailureRecord::getId).containsExactly(3L, 2L, 1L);
+        assertThat(Files.size(index)).isEqualTo(HEADER_SIZE + 3L * RECORD_SIZE);
+        assertThat(store.load(3).getOutput()).contains("FAIL: test_parse");
+    }
+
+    @Test
+    void compactsToTheNewestEntriesOnceTheLimitIsExceededByAQuarter() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            spool(101, "step " + i, 1, "failed " + i);
+            store.recent(1, 0);
+        }
+        assertThat(store.recent(10, 0)).hasSize(5);
+
+        spool(101, "step 6", 1, "failed 6");
+        List<FailureRecord> records = store.recent(10, 0);
+
+        assertThat(records).extracting(FailureRecord::getId).containsExactly(6L, 5L, 4L, 3L);
+        assertThat(store.load(2)).isNull();
+        assertThat(store.load(3).getOutput()).contains("failed 3");
+        assertThat(store.load(6).getOutput()).contains("failed 6");
+        long dataBytes = records.stream().mapToLong(FailureRecord::getLength).sum();
+        assertThat(Files.size(directory.resolve("failures.dat"))).isEqualTo(HEADER_SIZE + dataBytes);
+        assertThat(directory.resolve("failures.dat.tmp")).doesNotExist();
+        assertThat(directory.resolve("failures.idx.tmp")).doesNotExist();
+    }
+
+    @Test
+    void ingestsOnlyTheNewestOfASpoolBacklogLargerThanTheStore() throws IOException {
+        for (int i = 1; i <= 6; i++) {
+            spool(101, "step " + i, 1, "failed " + i);
+        }
+
+        assertThat(store.recent(10, 0)).extracting(FailureRecord::getCommand)
+                .containsExactly("step 6", "step 5", "step 4", "step 3");
+        assertThat(directory.resolve("spool")).isEmptyDirectory();
+    }
+
+    @Test
+    void finishesACompactionInterruptedBetweenTheTwoRenames() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            spool(101, "step " + i, 1, "failed " + i);
+            store.recent(1, 0);
+        }
+        store.recent(10, 0);
+        Path index = directory.resolve("failures.idx");
+        byte[] beforeCompaction = Files.readAllBytes(index);
+        spool(101, "step 6", 1, "failed 6");
+        store.recent(10, 0);
+
+        // the state after a crash right after the data file was renamed
+        Files.move(index, directory.resolve("failures.idx.tmp"), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(index, beforeCompaction);
+
+        assertThat(store.recent(10, 0)).extracting(FailureRecord::getId).containsExactly(6L, 5L, 4L, 3L);
+        assertThat(store.load(4).getOutput()).contains("failed 4");
+        assertThat(directory.resolve("failures.idx.tmp")).doesNotExist();
+    }
+
+    @Test
+    void startsOverWhenTheFilesDoNotBelongTogether() throws IOException {
+        spool(101, "make", 2, "Error 2");
+        store.recent(10, 0);
+        Files.delete(directory.resolve("failures.dat"));
+
+        assertThat(store.recent(10, 0)).isEmpty();
+
+        spool(101, "make", 2, "Error 2 again");
+        assertThat(store.recent(10, 0)).extracting(FailureRecord::getId).containsExactly(1L);
+        assertThat(store.load(1).getOutput()).contains("Error 2 again");
+    }
+
+    /**
+     * Drops a capture into the spool the way the shell hooks do, one second after the previous one.
+     */
+    private void spool(long pid, String command, int exitCode, String output) throws IOException {
+        Path spool = Files.createDirectories(directory.resolve("spool"));
+        Path file = spool.resolve(pid + "." + (1_700_000_000 + spooled) + "." + spooled + ".txt");
+        Files.writeString(file, "__CMDZEN_CMD_START__ 1700000000\n" + output + "\n\nEXIT_CODE: " + exitCode
+                + "\nCOMMAND: " + command + "\nTIMESTAMP: Tue Nov 14 22:13:20 UTC 2023\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_700_000_000_000L + spooled * 1000L));
+        spooled++;
+    }
+}
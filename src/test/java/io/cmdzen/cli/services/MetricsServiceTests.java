@@ -0,0 +1,66 @@
+package io.cmdzen.cli.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsServiceTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mergesFlushesFromSeveralInvocations() {
+        MetricsService first = new MetricsService(directory);
+        MetricsService second = new MetricsService(directory);
+
+        first.count("provider.fallback");
+        first.record("solve", 5_000_000);
+        first.flush();
+        second.count("provider.fallback");
+        second.flush();
+
+        assertThat(new MetricsService(directory).snapshot())
+                .hasEntrySatisfying("provider.fallback", histogram -> assertThat(histogram.getCount()).isEqualTo(2))
+                .hasEntrySatisfying("solve", histogram -> assertThat(histogram.getCount()).isEqualTo(1));
+    }
+
+    @Test
+    void resetDropsPersistedAndPendingMetrics() throws IOException {
+        MetricsService metrics = new MetricsService(directory);
+        metrics.count("persisted");
+        metrics.flush();
+        metrics.count("pending");
+
+        metrics.reset();
+
+        assertThat(metrics.snapshot()).isEmpty();
+        assertThat(directory.resolve("metrics.bin")).doesNotExist();
+        assertThat(directory.resolve("metrics.lock")).exists();
+    }
+
+    @Test
+    void flushesRacingAResetNeverResurrectTheOldFile() throws Exception {
+        MetricsService metrics = new MetricsService(directory);
+        metrics.count("old");
+        metrics.flush();
+
+        Thread flusher = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                metrics.count("new");
+                metrics.flush();
+            }
+        });
+        flusher.start();
+        metrics.reset();
+        flusher.join();
+
+        assertThat(metrics.snapshot()).doesNotContainKey("old");
+        assertThat(Files.list(directory)).noneMatch(path -> path.getFileName().toString().endsWith(".tmp"));
+    }
+}
@@ -0,0 +1,117 @@
+package io.cmdzen.cli.services;
+
+import io.cmdzen.cli.config.AIConfig;
+import io.cmdzen.cli.config.PromptConfig;
+import io.cmdzen.cli.model.CompactedOutput;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptCompactorTests {
+
+    // 100 tokens are 400 chars: 100 for the head, 200 for the tail and 100 for errors
+    private static final int BUDGET = 100;
+
+    private final PromptCompactor compactor = new PromptCompactor(new PromptConfig(), new AIConfig());
+
+    @Test
+    void keepsOutputWithinTheBudgetAsIs() {
+        String output = "make: Entering directory\ncc -c main.c\nmake: Leaving directory";
+
+        CompactedOutput result = compact(output);
+
+        assertThat(result.getText()).isEqualTo(output);
+        assertThat(result.isCompacted()).isFalse();
+        assertThat(result.getOriginalLines()).isEqualTo(3);
+        assertThat(result.getOriginalChars()).isEqualTo(output.length() + 1);
+    }
+
+    @Test
+    void skipsMetadataLines() {
+        CompactedOutput result = compact("__CMDZEN_CMD_START__\nboom\nEXIT_CODE: 1\nCOMMAND: make");
+
+        assertThat(result.getText()).isEqualTo("boom");
+        assertThat(result.getOriginalLines()).isEqualTo(1);
+    }
+
+    @Test
+    void collapsesRunsOfLinesDifferingOnlyInNumbersAndWhitespace() {
+        List<String> lines = new ArrayList<>();
+        IntStream.rangeClosed(1, 300).forEach(i -> lines.add("Downloading part " + i + (i % 2 == 0 ? "  of" : " of") + " 300"));
+        lines.add("Done");
+
+        CompactedOutput result = compact(String.join("\n", lines));
+
+        assertThat(result.getText()).isEqualTo("Downloading part 1 of 300 (×300)\nDone");
+        assertThat(result.getCollapsedLines()).isEqualTo(299);
+        assertThat(result.getDroppedLines()).isZero();
+        assertThat(result.getOriginalLines()).isEqualTo(301);
+        assertThat(result.isCompacted()).isTrue();
+    }
+
+    @Test
+    void onlyCollapsesAdjacentLines() {
+        CompactedOutput result = compact("retry 1\nwaiting\nretry 2\nretry 3");
+
+        assertThat(result.getText()).isEqualTo("retry 1\nwaiting\nretry 2 (×2)");
+        assertThat(result.getCollapsedLines()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsHeadTailAndErrorsWithinTheirBudgetsAndCountsTheRest() {
+        // 9 chars per info line including the newline, 21 per error line
+        List<String> lines = new ArrayList<>();
+        IntStream.range(0, 100).forEach(i -> lines.add(info(i)));
+        IntStream.range(0, 10).forEach(i -> lines.add("ERROR: quota on vol" + (char) ('a' + i)));
+        IntStream.range(100, 200).forEach(i -> lines.add(info(i)));
+
+        CompactedOutput result = compact(String.join("\n", lines));
+
+        // 11 head lines fill 99 of 100 chars, 22 tail lines 198 of 200, 4 errors 84 of 100
+        StringBuilder expected = new StringBuilder();
+        IntStream.range(0, 11).forEach(i -> expected.append(info(i)).append('\n'));
+        expected.append("... [173 lines omitted] ...\n");
+        IntStream.range(0, 4).forEach(i -> expected.append("[line ").append(101 + i)
+                .append("] ERROR: quota on vol").append((char) ('a' + i)).append('\n'));
+        expected.append("...\n");
+        IntStream.range(178, 200).forEach(i -> expected.append(info(i)).append('\n'));
+
+        assertThat(result.getText()).isEqualTo(expected.toString().stripTrailing());
+        assertThat(result.getOriginalLines()).isEqualTo(210);
+        assertThat(result.getOriginalChars()).isEqualTo(200 * 9 + 10 * 21);
+        assertThat(result.getDroppedLines()).isEqualTo(210 - 11 - 22 - 4);
+        assertThat(result.getDroppedChars()).isEqualTo(167 * 9 + 6 * 21);
+        assertThat(result.getCollapsedLines()).isZero();
+        assertThat(result.summary()).contains("210 lines", "173 lines omitted");
+    }
+
+    @Test
+    void clipsOverlongLinesInTheMiddle() {
+        PromptConfig config = new PromptConfig();
+        config.setMaxLineLength(10);
+        PromptCompactor clipping = new PromptCompactor(config, new AIConfig());
+
+        CompactedOutput result = clipping.compact(new BufferedReader(new StringReader("abcdefghijklmnopqrstuvwxyz")), BUDGET);
+
+        assertThat(result.getText()).isEqualTo("abcde …[16 chars]… vwxyz");
+    }
+
+    private CompactedOutput compact(String output) {
+        return compactor.compact(new BufferedReader(new StringReader(output)), BUDGET);
+    }
+
+    // distinct lines that never look alike or like errors: digits spelled as letters a-j
+    private static String info(int i) {
+        StringBuilder sb = new StringBuilder("info ");
+        for (char c : String.format("%03d", i).toCharArray()) {
+            sb.append((char) ('a' + c - '0'));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package io.cmdzen.cli.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThinkTagFilterTests {
+
+    private static final List<String> ANSWERS = List.of(
+            "Hello <think>plan</think>world",
+            "<think>reasoning\nover lines</think>\n\n  Run `make clean` first.",
+            "a <think>x</think> b <think>y</think> c",
+            "Use 1 < 2 and </thin> as text",
+            "Answer first <think>never closed",
+            "<thin",
+            "   ");
+
+    @Test
+    void dropsTagsSplitAcrossChunks() {
+        ThinkTagFilter filter = new ThinkTagFilter();
+
+        String out = filter.accept("Hello <thi") + filter.accept("nk>plan</th") + filter.accept("ink>world")
+                + filter.finish();
+
+        assertThat(out).isEqualTo("Hello world");
+    }
+
+    @Test
+    void holdsBackAPartialTagUntilItIsDecided() {
+        ThinkTagFilter filter = new ThinkTagFilter();
+
+        assertThat(filter.accept("x <thin")).isEqualTo("x ");
+        assertThat(filter.accept("g>")).isEqualTo("<thing>");
+    }
+
+    @Test
+    void finishFlushesAPartialTagThatNeverCompleted() {
+        ThinkTagFilter filter = new ThinkTagFilter();
+
+        String out = filter.accept("cost a <thin");
+
+        assertThat(out + filter.finish()).isEqualTo("cost a <thin");
+    }
+
+    @Test
+    void finishDropsAnUnclosedThinkBlock() {
+        ThinkTagFilter filter = new ThinkTagFilter();
+
+        String out = filter.accept("Answer <think>still reason") + filter.accept("ing </thi");
+
+        assertThat(out + filter.finish()).isEqualTo("Answer ");
+    }
+
+    @Test
+    void stripsLeadingWhitespaceEvenAcrossChunks() {
+        ThinkTagFilter filter = new ThinkTagFilter();
+
+        assertThat(filter.accept("  \n")).isEmpty();
+        assertThat(filter.accept("<think>x</think>\n ")).isEmpty();
+        assertThat(filter.accept(" ok  then")).isEqualTo("ok  then");
+    }
+
+    @Test
+    void matchesSanitizeForEveryChunking() {
+        for (String answer : ANSWERS) {
+            String expected = ChatCompletionsClient.sanitize(answer);
+            for (int size = 1; size <= answer.length(); size++) {
+                assertThat(filtered(answer, size)).as("%s in chunks of %d", answer, size).isEqualTo(expected);
+            }
+            for (int a = 0; a <= answer.length(); a++) {
+                for (int b = a; b <= answer.length(); b++) {
+                    ThinkTagFilter filter = new ThinkTagFilter();
+                    String out = filter.accept(answer.substring(0, a)) + filter.accept(answer.substring(a, b))
+                            + filter.accept(answer.substring(b)) + filter.finish();
+                    assertThat(out.stripTrailing()).as("%s split at %d and %d", answer, a, b).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    private static String filtered(String answer, int chunkSize) {
+        ThinkTagFilter filter = new ThinkTagFilter();
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < answer.length(); i += chunkSize) {
+            out.append(filter.accept(answer.substring(i, Math.min(answer.length(), i + chunkSize))));
+        }
+        // sanitize also trims the end; the stream can't know which whitespace is the last
+        return out.append(filter.finish()).toString().stripTrailing();
+    }
+}
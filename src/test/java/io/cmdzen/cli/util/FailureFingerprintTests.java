@@ -0,0 +1,90 @@
+package io.cmdzen.cli.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FailureFingerprintTests {
+
+    @Test
+    void durationsDoNotChangeTheFingerprint() {
+        assertSameFailure("Tests failed after 1.24s", "Tests failed after 310ms");
+        assertSameFailure("timeout: gave up after 30 seconds", "timeout: gave up after 5 seconds");
+        assertSameFailure("step took 2 min", "step took 14 min");
+    }
+
+    @Test
+    void directoriesDoNotChangeTheFingerprintButFileNamesDo() {
+        assertSameFailure("error: /home/alice/proj/src/main.c: not found", "error: /srv/ci/work/src/main.c: not found");
+        assertSameFailure("bash: ./scripts/run.sh: Permission denied", "bash: ~/bin/run.sh: Permission denied");
+        assertDifferentFailure("error: /home/alice/src/main.c: not found", "error: /home/alice/src/util.c: not found");
+    }
+
+    @Test
+    void processIdsDoNotChangeTheFingerprint() {
+        assertSameFailure("worker pid 42 crashed", "worker pid 4711 crashed");
+        assertSameFailure("sshd[1234]: Connection refused", "sshd[98]: Connection refused");
+        assertSameFailure("Killed process=311", "Killed process=7");
+    }
+
+    @Test
+    void addressesAndLongHashesDoNotChangeTheFingerprint() {
+        assertSameFailure("segfault at 0x7ffd1234 ip 0x55aa01", "segfault at 0x10 ip 0xDEAD");
+        assertSameFailure("bad object 3f2a9c8d1e0b4a5f", "bad object 9b8c7d6e5f4a3b2c");
+        assertSameFailure("request 123e4567-e89b-12d3-a456-426614174000 failed",
+                "request 00000000-0000-0000-0000-000000000000 failed");
+        assertDifferentFailure("bad object deadbeef", "bad object deadbeee");
+    }
+
+    @Test
+    void timestampsColorsAndMetadataDoNotChangeTheFingerprint() {
+        assertSameFailure("2024-05-01T12:00:00Z build failed", "2025-11-30 08:15:02.123+02:00 build failed");
+        assertSameFailure("[12:00:01] build failed at 1714564800", "[23:59:59.5] build failed at 1714564800123");
+        assertSameFailure("\u001B[1;31merror:\u001B[0m boom", "error: boom");
+        assertSameFailure("__CMDZEN_CMD_START__\nerror:   boom\n\nEXIT_CODE: 1\n", "error: boom");
+    }
+
+    @Test
+    void otherNumbersStillChangeTheFingerprint() {
+        assertDifferentFailure("make: *** [all] Error 2", "make: *** [all] Error 127");
+        assertDifferentFailure("src/main.c:12:5: error", "src/main.c:13:5: error");
+        assertDifferentFailure("need 1.5 GB free", "need 2 GB free");
+    }
+
+    @Test
+    void commandIsOnlyWhitespaceNormalized() {
+        String output = "No such file or directory";
+
+        assertThat(FailureFingerprint.of("rm  /tmp/x ", 1, output, null))
+                .isEqualTo(FailureFingerprint.of("rm /tmp/x", 1, output, null));
+        assertThat(FailureFingerprint.of("rm /srv/a/x", 1, output, null))
+                .isNotEqualTo(FailureFingerprint.of("rm /tmp/x", 1, output, null));
+        assertThat(FailureFingerprint.of("sleep 5s", 1, output, null))
+                .isNotEqualTo(FailureFingerprint.of("sleep 10m", 1, output, null));
+    }
+
+    @Test
+    void exitCodeAndQuestionChangeTheFingerprint() {
+        String output = "error: boom";
+
+        assertThat(FailureFingerprint.of("make", 1, output, null))
+                .isNotEqualTo(FailureFingerprint.of("make", 2, output, null));
+        assertThat(FailureFingerprint.of("make", 1, output, "why?"))
+                .isNotEqualTo(FailureFingerprint.of("make", 1, output, "how do I fix it?"));
+        assertThat(FailureFingerprint.of("make", 1, output, " why\n now? "))
+                .isEqualTo(FailureFingerprint.of("make", 1, output, "why now?"));
+        assertThat(FailureFingerprint.of("make", 1, output, ""))
+                .isEqualTo(FailureFingerprint.of("make", 1, output, null));
+    }
+
+    private static void assertSameFailure(String output, String other) {
+        assertThat(FailureFingerprint.normalize(output)).isEqualTo(FailureFingerprint.normalize(other));
+        assertThat(FailureFingerprint.of("make", 1, output, null))
+                .isEqualTo(FailureFingerprint.of("make", 1, other, null));
+    }
+
+    private static void assertDifferentFailure(String output, String other) {
+        assertThat(FailureFingerprint.of("make", 1, output, null))
+                .isNotEqualTo(FailureFingerprint.of("make", 1, other, null));
+    }
+}
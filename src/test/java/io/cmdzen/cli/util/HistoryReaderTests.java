@@ -0,0 +1,135 @@
+package io.cmdzen.cli.util;
+
+import io.cmdzen.cli.util.HistoryReader.Format;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryReaderTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsTheNewestMatchingPlainEntryAndSkipsTimestamps() throws IOException {
+        Path file = write("#1700000000\ngit status\n#1700000001\nmake test\r\n#1700000002\nls\0 -la\n");
+
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> true)).isEqualTo("ls -la");
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> line.startsWith("make"))).isEqualTo("make test");
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> line.startsWith("git"))).isEqualTo("git status");
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> line.startsWith("#"))).isNull();
+    }
+
+    @Test
+    void readsTheLastPlainEntryWithoutATrailingNewline() throws IOException {
+        Path file = write("git status\nmake");
+
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> true)).isEqualTo("make");
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> line.startsWith("git"))).isEqualTo("git status");
+        assertThat(HistoryReader.findLast(file, Format.PLAIN, line -> line.startsWith("rm"))).isNull();
+    }
+
+    @Test
+    void emptyHistoryHasNoEntries() throws IOException {
+        Path file = write("");
+
+        for (Format format : Format.values()) {
+            assertThat(HistoryReader.findLast(file, format, line -> true)).isNull();
+        }
+    }
+
+    @Test
+    void stripsZshExtendedHistoryHeaders() throws IOException {
+        Path file = write(": 1700000000:0;git status\nls -la\n: 1700000002:12;make test\n");
+
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> true)).isEqualTo("make test");
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.startsWith("ls"))).isEqualTo("ls -la");
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.startsWith("git"))).isEqualTo("git status");
+    }
+
+    @Test
+    void joinsBackslashContinuedZshEntries() throws IOException {
+        Path file = write(": 1700000000:0;for f in *; do\\\n  echo $f\\\ndone\n"
+                + ": 1700000001:0;git status\n"
+                + ": 1700000002:0;echo one\\\ntwo\n");
+
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> true)).isEqualTo("echo one\ntwo");
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.contains("echo $f")))
+                .isEqualTo("for f in *; do\n  echo $f\ndone");
+        // continuation lines are never matched on their own
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.equals("done"))).isNull();
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.equals("two"))).isNull();
+    }
+
+    @Test
+    void unmetafiesZshEntries() throws IOException {
+        // zsh stores the 0xA9 of "é" as 0x83 followed by 0xA9 ^ 32
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(": 1700000000:0;echo caf".getBytes(StandardCharsets.US_ASCII));
+        bytes.writeBytes(new byte[]{(byte) 0xC3, (byte) 0x83, (byte) (0xA9 ^ 32)});
+        bytes.writeBytes("\n: 1700000001:0;ls\n".getBytes(StandardCharsets.US_ASCII));
+        Path file = Files.write(directory.resolve("history"), bytes.toByteArray());
+
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.startsWith("echo"))).isEqualTo("echo café");
+    }
+
+    @Test
+    void readsFishCommandsAndUnescapesThem() throws IOException {
+        Path file = write("- cmd: git status\n  when: 1700000000\n"
+                + "- cmd: echo one\\ntwo\n  when: 1700000001\n  paths:\n    - src\n"
+                + "- cmd: echo a\\\\b\n  when: 1700000002\n");
+
+        assertThat(HistoryReader.findLast(file, Format.FISH, line -> true)).isEqualTo("echo a\\b");
+        assertThat(HistoryReader.findLast(file, Format.FISH, line -> line.startsWith("echo one")))
+                .isEqualTo("echo one\ntwo");
+        assertThat(HistoryReader.findLast(file, Format.FISH, line -> line.startsWith("git"))).isEqualTo("git status");
+        assertThat(HistoryReader.findLast(file, Format.FISH, line -> line.contains("when"))).isNull();
+    }
+
+    @Test
+    void findsEveryEntryThatReadFromReturns() throws IOException {
+        String[] histories = {
+                "#1700000000\ngit status\nmake\n",
+                ": 1700000000:0;for f in *; do\\\n  echo $f\\\ndone\nls\n: 1700000001:0;make\n",
+                "- cmd: git status\n  when: 1700000000\n- cmd: echo one\\ntwo\n  when: 1700000001\n"
+        };
+        Format[] formats = {Format.PLAIN, Format.ZSH, Format.FISH};
+
+        for (int i = 0; i < formats.length; i++) {
+            Path file = write(histories[i]);
+            List<String> entries = new ArrayList<>();
+            assertThat(HistoryReader.readFrom(file, 0, formats[i], entries::add)).isEqualTo(histories[i].length());
+
+            assertThat(entries).isNotEmpty();
+            for (String entry : entries) {
+                assertThat(HistoryReader.findLast(file, formats[i], entry::equals)).isEqualTo(entry);
+            }
+            assertThat(HistoryReader.findLast(file, formats[i], line -> true)).isEqualTo(entries.get(entries.size() - 1));
+        }
+    }
+
+    @Test
+    void findsAnOldEntryInALongHistory() throws IOException {
+        StringBuilder history = new StringBuilder(": 1600000000:0;ssh deploy@old-host\n");
+        for (int i = 0; i < 100_000; i++) {
+            history.append(": ").append(1700000000 + i).append(":0;make target-").append(i).append('\n');
+        }
+        Path file = write(history.toString());
+
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.startsWith("ssh"))).isEqualTo("ssh deploy@old-host");
+        assertThat(HistoryReader.findLast(file, Format.ZSH, line -> line.startsWith("make"))).isEqualTo("make target-99999");
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(directory.resolve("history"), content);
+    }
+}
@@ -0,0 +1,144 @@
+package io.cmdzen.cli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class HistorySegmentTests {
+
+    private static final HistorySegment.Scorer BY_RECENCY = (count, lastSeq, weight) -> lastSeq;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsCommandsWithTheirUseCountAndLastUse() throws IOException {
+        HistorySegment.Builder builder = new HistorySegment.Builder(10);
+        builder.add("git status");
+        builder.add("git commit -m 'fix parser'");
+        builder.add("  docker compose up -d  ");
+        builder.add("git status");
+        builder.add("   ");
+        HistorySegment segment = write(builder, 4096, 42);
+
+        assertThat(segment.sourceOffset()).isEqualTo(4096);
+        assertThat(segment.sourceTailHash()).isEqualTo(42);
+        assertThat(segment.nextSeq()).isEqualTo(14);
+        assertThat(segment.entryCount()).isEqualTo(3);
+        assertThat(segment.search(List.of("git"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command, HistorySegment.Hit::count, HistorySegment.Hit::lastSeq)
+                .containsExactlyInAnyOrder(tuple("git status", 2, 13L), tuple("git commit -m 'fix parser'", 1, 11L));
+        assertThat(segment.search(List.of("compose"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command).containsExactly("docker compose up -d");
+
+        HistorySegment.Builder merged = new HistorySegment.Builder(segment.nextSeq());
+        segment.copyInto(merged);
+        merged.add("git status");
+        HistorySegment copy = write(merged, 8192, 7);
+        assertThat(copy.search(List.of("status"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::count, HistorySegment.Hit::lastSeq)
+                .containsExactly(tuple(3, 14L));
+    }
+
+    @Test
+    void weighsExactTokensOverPrefixesOverTypos() throws IOException {
+        HistorySegment.Builder builder = new HistorySegment.Builder(0);
+        builder.add("kubectl get pods -n prod");
+        builder.add("kubectx staging");
+        HistorySegment segment = write(builder, 0, 0);
+
+        assertThat(segment.search(List.of("kubectl"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command, HistorySegment.Hit::weight)
+                .containsExactly(tuple("kubectl get pods -n prod", 1.0f));
+        assertThat(segment.search(List.of("kube"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::weight).containsOnly(0.8f);
+        assertThat(segment.search(List.of("kubctl"), false, 10, BY_RECENCY)).isEmpty();
+        assertThat(segment.search(List.of("kubctl"), true, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command, HistorySegment.Hit::weight)
+                .contains(tuple("kubectl get pods -n prod", 0.5f));
+        // every term must match; the hit is as strong as its weakest term
+        assertThat(segment.search(List.of("kubectl", "pro"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::weight).containsExactly(0.8f);
+        assertThat(segment.search(List.of("kubectl", "staging"), false, 10, BY_RECENCY)).isEmpty();
+    }
+
+    @Test
+    void findsTokensSortedByUnsignedBytes() throws IOException {
+        HistorySegment.Builder builder = new HistorySegment.Builder(0);
+        builder.add("echo zeta");
+        builder.add("echo été");
+        builder.add("echo café");
+        builder.add("echo cafe");
+        HistorySegment segment = write(builder, 0, 0);
+
+        assertThat(segment.search(List.of("été"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command).containsExactly("echo été");
+        assertThat(segment.search(List.of("zeta"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command).containsExactly("echo zeta");
+        assertThat(segment.search(List.of("caf"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command).containsExactlyInAnyOrder("echo café", "echo cafe");
+    }
+
+    @Test
+    void keepsTheBestScoringHitsOfALongPostingList() throws IOException {
+        HistorySegment.Builder builder = new HistorySegment.Builder(0);
+        for (int i = 0; i < 100; i++) {
+            builder.add("make target-" + i);
+        }
+        HistorySegment segment = write(builder, 0, 0);
+
+        assertThat(segment.search(List.of("make"), false, 1000, BY_RECENCY)).hasSize(100);
+        assertThat(segment.search(List.of("make"), false, 3, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command)
+                .containsExactlyInAnyOrder("make target-99", "make target-98", "make target-97");
+        assertThat(segment.search(List.of("target-42"), false, 10, BY_RECENCY))
+                .extracting(HistorySegment.Hit::command).containsExactly("make target-42");
+    }
+
+    @Test
+    void rejectsTornAndForeignFiles() throws IOException {
+        HistorySegment.Builder builder = new HistorySegment.Builder(0);
+        for (int i = 0; i < 50; i++) {
+            builder.add("ssh host-" + i + ".example.com");
+        }
+        Path file = directory.resolve("segment.idx");
+        builder.write(file, 0, 0);
+        long size = Files.size(file);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size / 2);
+        }
+        assertThat(HistorySegment.open(file)).isNull();
+
+        Files.write(file, new byte[8]);
+        assertThat(HistorySegment.open(file)).isNull();
+        Files.write(file, new byte[4096]);
+        assertThat(HistorySegment.open(file)).isNull();
+        assertThat(HistorySegment.open(directory.resolve("missing.idx"))).isNull();
+    }
+
+    @Test
+    void tokenizesPathsOptionsAndUrlsIntoTheirParts() {
+        assertThat(HistorySegment.tokenize("ls -la /var/log/syslog --color=auto"))
+                .containsExactly("ls", "la", "var", "log", "syslog", "color", "auto");
+        assertThat(HistorySegment.tokenize("curl https://api.example.com/v1/users..."))
+                .containsExactly("curl", "https", "api.example.com", "v1", "users");
+        assertThat(HistorySegment.tokenize("Git PUSH origin HEAD")).containsExactly("git", "push", "origin", "head");
+    }
+
+    private HistorySegment write(HistorySegment.Builder builder, long sourceOffset, long sourceTailHash)
+            throws IOException {
+        Path file = Files.createTempFile(directory, "segment", ".idx");
+        builder.write(file, sourceOffset, sourceTailHash);
+        return HistorySegment.open(file);
+    }
+}
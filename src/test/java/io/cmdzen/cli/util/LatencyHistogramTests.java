@@ -0,0 +1,126 @@
+package io.cmdzen.cli.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+class LatencyHistogramTests {
+
+    @Test
+    void bucketsSmallValuesExactlyAndLargerOnesWithinAnEighth() {
+        for (long value = 0; value < 8; value++) {
+            assertThat(LatencyHistogram.bucket(value)).isEqualTo((int) value);
+            assertThat(LatencyHistogram.lowerBound((int) value)).isEqualTo(value);
+        }
+        for (long value = 1; value < 1L << 40; value = value * 3 / 2 + 1) {
+            for (long v : new long[]{value - 1, value, value + 1}) {
+                int bucket = LatencyHistogram.bucket(v);
+                long lower = LatencyHistogram.lowerBound(bucket);
+                long upper = LatencyHistogram.lowerBound(bucket + 1);
+                assertThat(v).isBetween(lower, upper - 1);
+                assertThat(upper - lower).isLessThanOrEqualTo(Math.max(1, lower / 8));
+                assertThat(LatencyHistogram.bucket(v + 1)).isBetween(bucket, bucket + 1);
+            }
+        }
+        assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.bucket(Long.MAX_VALUE / 2) + 8);
+    }
+
+    @Test
+    void percentilesStayWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertThat(histogram.getRecorded()).isEqualTo(1000);
+        assertThat(histogram.getMeanMicros()).isEqualTo(500);
+        assertThat(histogram.percentileMicros(0)).isEqualTo(1);
+        assertThat(histogram.percentileMicros(0.5)).isCloseTo(500L, withinPercentage(12.5));
+        assertThat(histogram.percentileMicros(0.95)).isCloseTo(950L, withinPercentage(12.5));
+        assertThat(histogram.percentileMicros(0.99)).isCloseTo(990L, withinPercentage(12.5));
+        assertThat(histogram.percentileMicros(1)).isCloseTo(1000L, withinPercentage(12.5));
+        assertThat(histogram.percentileMicros(0.5)).isLessThanOrEqualTo(histogram.percentileMicros(0.95));
+    }
+
+    @Test
+    void emptyHistogramsAndCountersHaveNoPercentiles() {
+        LatencyHistogram counter = new LatencyHistogram();
+        assertThat(counter.percentileMicros(0.99)).isZero();
+
+        counter.increment(3);
+        assertThat(counter.getCount()).isEqualTo(3);
+        assertThat(counter.getRecorded()).isZero();
+        assertThat(counter.getMeanMicros()).isZero();
+        assertThat(counter.percentileMicros(0.5)).isZero();
+    }
+
+    @Test
+    void mergesCountsAndBuckets() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) fast.recordMicros(1_000);
+        for (int i = 0; i < 10; i++) slow.recordMicros(1_000_000);
+        slow.increment(5);
+
+        fast.add(slow);
+
+        assertThat(fast.getCount()).isEqualTo(105);
+        assertThat(fast.getRecorded()).isEqualTo(100);
+        assertThat(fast.percentileMicros(0.5)).isCloseTo(1_000L, withinPercentage(12.5));
+        assertThat(fast.percentileMicros(0.91)).isCloseTo(1_000_000L, withinPercentage(12.5));
+    }
+
+    @Test
+    void roundTripsOnlyTheUsedBuckets() throws IOException {
+        LatencyHistogram original = new LatencyHistogram();
+        for (long micros : new long[]{3, 250, 250, 4_000, 90_000, 2_500_000}) {
+            original.recordMicros(micros);
+        }
+        original.increment(2);
+        LatencyHistogram other = new LatencyHistogram();
+        other.recordMicros(42);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            original.write(out);
+            other.write(out);
+        }
+        // count, sum and bucket count, then index and count per used bucket
+        assertThat(bytes.size()).isEqualTo((8 + 8 + 2 + 5 * 10) + (8 + 8 + 2 + 10));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LatencyHistogram copy = LatencyHistogram.read(in);
+        assertThat(copy.getCount()).isEqualTo(original.getCount());
+        assertThat(copy.getRecorded()).isEqualTo(original.getRecorded());
+        assertThat(copy.getMeanMicros()).isEqualTo(original.getMeanMicros());
+        for (double q : new double[]{0, 0.25, 0.5, 0.75, 0.99, 1}) {
+            assertThat(copy.percentileMicros(q)).isEqualTo(original.percentileMicros(q));
+        }
+        assertThat(LatencyHistogram.read(in).percentileMicros(0.5)).isEqualTo(42);
+    }
+
+    @Test
+    void failsOnATornTrailingBucket() throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(10);
+        histogram.recordMicros(10_000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            histogram.write(out);
+        }
+        byte[] torn = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+
+        assertThatThrownBy(() -> LatencyHistogram.read(new DataInputStream(new ByteArrayInputStream(torn))))
+                .isInstanceOf(EOFException.class);
+    }
+}